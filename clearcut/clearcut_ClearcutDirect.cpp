@@ -0,0 +1,202 @@
+#include "jni.h"
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+#include <float.h>
+#include "clearcut_Clearcut.h"
+#include "clearcut_nj.h"
+#include "common.h"
+#include "clearcut.h"
+#include "cmdargs.h"
+#include "prng.h"
+#include "getopt_long.h"
+#include "nj_tree.h"
+
+
+/* from nj_tree.cpp */
+int count_nodes(NJ_TREE *tree);
+void tree_to_edges(NJ_TREE *tree, DMAT *dmat, jfloat *v1, jfloat *v2, jfloat *d, int *edge_index, int *internal_node_name_gen, jfloat root_name);
+
+DMAT * create_dmat(jfloat * distances, long int size);
+
+
+/**
+ * JNI interface implementation that doesn`t use the text input.
+ *
+ * input: distances (direct buffer, lower triangle without the diagonal stored by rows:
+ *                   the distance of taxa i > j is at index i*(i-1)/2 + j),
+ *        the number of taxa, list of arguments, arguments` count
+ * output: linearized NJ tree (described in: nj_tree.cpp) written to a direct buffer that consists of three blocks
+ *         of (2*size - 2) floats: the first vertices of the edges, the second vertices of the edges, the edges` lengths
+ *
+ * The taxa are named s0, s1, .. according to their index in the distance matrix,
+ * i.e. the leaf vertices of the NJ tree have names 0, 1, ..
+ *
+ * @return the number of edges or -1 (error)
+ * */
+JNIEXPORT jint JNICALL Java_clearcut_Clearcut_clearcutDirect
+  (JNIEnv *env, jobject obj, jobject jdistances, jint jsize, jstring jarg, jint jarg_count, jobject jnj_tree){
+
+	long int size = (long int)jsize;
+	long int block = 2*size - 2;
+
+	/* no taxa: the Java program checks whether the library contains this method (nothing is computed) */
+	if (size == 0){
+		return 0;
+	}
+
+	if (size < 2){
+		printf("clearcut: Error, at least two taxa are needed..");
+		return -1;
+	}
+
+	/* get the input and output buffers */
+	jfloat * distances = (jfloat *)(*env).GetDirectBufferAddress(jdistances);
+	jfloat * nj_tree = (jfloat *)(*env).GetDirectBufferAddress(jnj_tree);
+	if ((distances == NULL) || (nj_tree == NULL)){
+		printf("clearcut: Error, direct buffers expected..");
+		return -1;
+	}
+	if (((*env).GetDirectBufferCapacity(jdistances) < (size*(size - 1))/2)
+			|| ((*env).GetDirectBufferCapacity(jnj_tree) < 3*block)){
+		printf("clearcut: Error, buffers are too small..");
+		return -1;
+	}
+
+	/* get arguments */
+	const char * arg = (*env).GetStringUTFChars(jarg, NULL);
+	if (arg == NULL) {
+		printf("clearcut: Failed to get arguments.. (OutOfMemoryError)");
+		return -1;
+	}
+
+	/* parse arguments (as in clearcut_nj.cpp) */
+	int arg_count = (int)jarg_count;
+	char * arg_copy = to_string((char *)arg);
+	char ** argv = (char **)malloc(sizeof(char*)*arg_count);
+	int idx_start = 0;
+	int idx_end = 0;
+	for (int i=0; i<arg_count; i++){
+		while ((arg_copy[idx_end] != '\0') && (arg_copy[idx_end] != ' ')){
+			idx_end++;
+		}
+		arg_copy[idx_end] = '\0';
+		argv[i] = to_string(arg_copy + idx_start);
+		idx_start = ++idx_end;
+		idx_end++;
+	}
+	free(arg_copy);
+	(*env).ReleaseStringUTFChars(jarg, arg);
+
+	//set this to 0, s.t. arguments` parsing will be OK if the library is called consecutively
+	optind = 0;
+	NJ_ARGS * nj_args = NJ_handle_args(arg_count, argv);
+
+	for (int i=0; i<arg_count; i++){
+		free(argv[i]);
+	}
+	free(argv);
+
+	if (!nj_args){
+		fprintf(stderr, "Clearcut: Error processing command-line arguments.\n");
+		return -1;
+	}
+
+	/* Initialize Mersenne Twister PRNG */
+	init_genrand(nj_args->seed);
+
+	/* the distance matrix is copied, "Clearcut" stores the upper triangle and the NJ alg. changes it */
+	DMAT * dmat = create_dmat(distances, size);
+	if (dmat == NULL){
+		fprintf(stderr, "Clearcut: Memory allocation error in create_dmat()\n");
+		return -1;
+	}
+
+	if (nj_args->shuffle){
+		NJ_shuffle_distance_matrix(dmat);
+	}
+
+	NJ_TREE * tree;
+	if (nj_args->neighbor){
+		tree = NJ_neighbor_joining(nj_args, dmat);
+	} else {
+		tree = NJ_relaxed_nj(nj_args, dmat);
+	}
+
+	if (!tree){
+		fprintf(stderr, "Clearcut: Failed to construct tree.\n");
+		NJ_free_dmat(dmat);
+		return -1;
+	}
+
+	/* linearize the tree directly to the output buffer */
+	int edge_count = count_nodes(tree) - 1;
+	int edge_index = -1;
+	int internal_node_name_gen = -2;
+
+	if (edge_count > block){
+		printf("tree linearization: weird edge count!");
+		edge_index = -2;
+	} else {
+		tree_to_edges(tree, dmat, nj_tree, nj_tree + block, nj_tree + 2*block, &edge_index,
+			&internal_node_name_gen, (jfloat)internal_node_name_gen);
+	}
+
+	NJ_free_tree(tree);
+	NJ_free_dmat(dmat);
+
+	return edge_index + 1;
+}
+
+
+/**
+ * Create the distance matrix of "Clearcut" (upper triangle with the diagonal)
+ * from the lower triangle without the diagonal.
+ * */
+DMAT * create_dmat(jfloat * distances, long int size){
+
+	DMAT * dmat = (DMAT *)calloc(1, sizeof(DMAT));
+	if (dmat == NULL){
+		return NULL;
+	}
+
+	dmat->ntaxa = size;
+	dmat->size = size;
+	dmat->val = (float *)calloc(NJ_NCELLS(size), sizeof(float));
+	dmat->taxaname = (char **)calloc(size, sizeof(char *));
+	dmat->r  = (float *)calloc(size, sizeof(float));
+	dmat->r2 = (float *)calloc(size, sizeof(float));
+
+	/* track some memory addresses */
+	dmat->valhandle = dmat->val;
+	dmat->rhandle   = dmat->r;
+	dmat->r2handle  = dmat->r2;
+
+	if (!dmat->val || !dmat->taxaname || !dmat->r || !dmat->r2){
+		NJ_free_dmat(dmat);
+		return NULL;
+	}
+
+	/* taxa names s0, s1, .. (see tree_to_edges in nj_tree.cpp) */
+	char name[32];
+	for (long int i=0; i<size; i++){
+		sprintf(name, "s%ld", i);
+		dmat->taxaname[i] = to_string(name);
+		if (!dmat->taxaname[i]){
+			NJ_free_dmat(dmat);
+			return NULL;
+		}
+	}
+
+	/* distances, row i of the input is column i of the "Clearcut" matrix */
+	jfloat * row = distances;
+	for (long int i=1; i<size; i++){
+		for (long int j=0; j<i; j++){
+			dmat->val[NJ_MAP(j, i, size)] = row[j];
+		}
+		row += i;
+	}
+
+	return dmat;
+}
@@ -1,11 +1,16 @@
 package clearcut;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.StringTokenizer;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import nj.NJVertex;
+import nj.RapidNJAlgorithm;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,13 +20,21 @@ import org.apache.commons.logging.LogFactory;
 
 import common.Configuration;
 
+import dmatrix.FloatTriangularStorage;
+
 
 /**
  * Provides access to the "Clearcut" C library that computes the NJ tree.
  * NJ alg. can be standard or relaxed. Jukes-Cantor or Kimura correction can be used 
  * (if we provide the sequences, not only the distance matrix).
  * The "Clearcut" library can be used only mutually exclusive which is handled by this class
- * (there is a lock).
+ * (there is a lock). If the library is used by another thread, the NJ tree can be computed by 
+ * {@link RapidNJAlgorithm} instead of waiting (see {@link Configuration#getNjContendedFallback()}).
+ *
+ * The distance matrix is passed to the library either as a text (distance matrix in fasta format)
+ * or in binary form as a direct buffer, see {@link #createDistanceBuffer(int)}. The libraries built
+ * before the binary input was added don`t support it (checked once when the library is loaded), 
+ * then the distances are kept in a heap buffer that is transformed to the text.
  * */
 public class Clearcut {
 
@@ -29,10 +42,14 @@ public class Clearcut {
 	
 	/* to handle access to the "Clearcut" library */
 	private static Lock lock = new ReentrantLock();
+	
+	/* whether the library supports the binary input (see clearcutDirect) */
+	private static final boolean directInputSupported;
 
 	/* loads the library */
 	static {
 		System.loadLibrary("Clearcut");
+		directInputSupported = checkDirectInput();
 	}
 	
 	/** We can`t create Clearcut instance outside of this class. */
@@ -53,6 +70,65 @@ public class Clearcut {
 	private native float[][] clearcutMain(String fastaFile, String arguments, int argumentCount);
 	
 	
+	/**
+	 * Native method that calls method of the "Clearcut" library (see clearcut_Clearcut.h).
+	 * The distance matrix isn`t parsed, it is read directly from the buffer.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa (the taxa are named s0, s1, ..)
+	 * @param arguments arguments that are passed to clearcut
+	 * @param argumentCount number of arguments
+	 * @param njTree output: direct buffer of size 3*(2*size - 2) that represents an NJ tree, 
+	 * it contains three blocks of (2*size - 2) floats, the same as the first three rows of {@link #clearcutMain}
+	 * 
+	 * @return number of edges of the NJ tree or -1 (error)
+	 * */
+	private native int clearcutDirect(FloatBuffer distances, int size, String arguments, int argumentCount, FloatBuffer njTree);
+	
+	
+	/**
+	 * Check whether the library contains method {@link #clearcutDirect} (calls it for zero taxa).
+	 * */
+	private static boolean checkDirectInput(){
+		try {
+			new Clearcut().clearcutDirect(null, 0, "", 0, null);
+			return true;
+		} catch (UnsatisfiedLinkError e){
+			log.info("The \"Clearcut\" library doesn`t support the binary input, the distance matrix is passed as a text" 
+					+ " (see howToCreateClearcutLibrary.txt).");
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Allocate a buffer for a distance matrix that is passed to the "Clearcut" library.
+	 * The buffer contains the lower triangle without the diagonal stored by rows,
+	 * i.e. the distance of taxa (i,j) where j < i is at index i*(i-1)/2 + j, 
+	 * see {@link dmatrix.TriangularStorage}.
+	 * The buffer is direct if the library supports the binary input, otherwise it is a heap buffer
+	 * (the distances are transformed to the text).
+	 * 
+	 * @param size number of taxa
+	 * */
+	public static FloatBuffer createDistanceBuffer(int size){
+		
+		long cellCount = (((long)size)*(size - 1)) >>> 1;
+		
+		if (cellCount > (Integer.MAX_VALUE >>> 2)){
+			log.error("The distance matrix of " + size + " taxa is too big for the \"Clearcut\" library," 
+					+ " use other NJ implementation (njImplementation).");
+			System.exit(-1);
+		}
+		
+		if (!directInputSupported){
+			return FloatBuffer.allocate((int)cellCount);
+		}
+		
+		return ByteBuffer.allocateDirect((int)(cellCount << 2)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+	
+	
 	/**
 	 * Computes an NJ tree using the "Clearcut" library.
 	 * 
@@ -79,10 +155,10 @@ public class Clearcut {
 	 * @param fastaFile file that represents either dna sequences or a distance matrix in fasta format (see {@link Test#main(String[])})
 	 * @param config configuration
 	 * @param matrixOutputSize size of the output matrix (number of leafs of the NJ tree ~ original sequences)
-	 * 
-	 * @return distance matrix that corresponds to the distances in the NJ tree 
+	 * @param distance_matrix output: distance matrix that corresponds to the distances in the NJ tree
 	 * */
-	public static float[][] computeNJMatrix(String fastaFile, Configuration config, short matrixOutputSize){
+	public static void computeNJMatrix(String fastaFile, Configuration config, int matrixOutputSize, 
+			FloatTriangularStorage distance_matrix){
 	
 		//System.out.println("before run clearcut");
 		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
@@ -90,11 +166,247 @@ public class Clearcut {
 		//System.out.println("after run clearcut");
 		//printOutputEdges(clearcut_matrix);
 		/* compute an NJ matrix from a NJ tree */
-		float[][] distance_matrix = new Clearcut().computeNJMatrix(clearcut_matrix, matrixOutputSize);
-		return distance_matrix;
+		new Clearcut().computeNJMatrix(clearcut_matrix, matrixOutputSize, distance_matrix);
 	}
 
 	
+	/**
+	 * Computes an NJ tree using the "Clearcut" library.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa
+	 * @param config the configuration
+	 * 
+	 * @return the root of the NJ tree
+	 * */
+	public static NJVertex computeNJTree(FloatBuffer distances, int size, Configuration config){
+		
+		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
+		float njTree[][] = runClearcut(distances, size, config);
+		
+		if (njTree == null){
+			
+			/* the library is used by another thread */
+			return new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJTree(toRows(distances, size));
+		}
+		
+		/* transform the NJ tree given as a matrix (linearized tree) to an NJ tree */
+		NJVertex root = new Clearcut().clearcutNjTreeToGraph(njTree);
+		
+		return root;
+	}
+	
+	
+	/**
+	 * Computes the NJ matrix using the "Clearcut" library.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa (the size of the output matrix)
+	 * @param config configuration
+	 * @param distance_matrix output: distance matrix that corresponds to the distances in the NJ tree
+	 * */
+	public static void computeNJMatrix(FloatBuffer distances, int size, Configuration config, 
+			FloatTriangularStorage distance_matrix){
+		
+		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
+		float clearcut_matrix[][] = runClearcut(distances, size, config);
+		
+		if (clearcut_matrix == null){
+			
+			/* the library is used by another thread */
+			new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJMatrix(toRows(distances, size), distance_matrix);
+			return;
+		}
+		
+		/* compute an NJ matrix from a NJ tree (doesn`t need the library) */
+		new Clearcut().computeNJMatrix(clearcut_matrix, size, distance_matrix);
+	}
+	
+	
+	/**
+	 * Computes the NJ tree given by the parents of its vertices using the "Clearcut" library.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa
+	 * @param config configuration
+	 * @param parent output: the parent of each vertex (leafs 0..size-1, internal vertices size..), -1 ~ the root;
+	 * the length of the array must be at least 2*size-1
+	 * @param length output: the length of the edge from a vertex to its parent
+	 * 
+	 * @return the number of vertices of the NJ tree
+	 * */
+	public static int computeNJParents(FloatBuffer distances, int size, Configuration config, int parent[], float length[]){
+		
+		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
+		float clearcut_matrix[][] = runClearcut(distances, size, config);
+		
+		if (clearcut_matrix == null){
+			
+			/* the library is used by another thread */
+			return new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJParents(toRows(distances, size), 
+					parent, length);
+		}
+		
+		int edgeCount = (int)clearcut_matrix[3][0];
+		if (edgeCount == 0){
+			return 0;
+		}
+		
+		/* the first vertex of the first edge is the root */
+		int vertex = toVertex(clearcut_matrix[0][0], size);
+		parent[vertex] = -1;
+		length[vertex] = 0.0f;
+		for (int i=0; i<edgeCount; i++){
+			vertex = toVertex(clearcut_matrix[1][i], size);
+			parent[vertex] = toVertex(clearcut_matrix[0][i], size);
+			length[vertex] = clearcut_matrix[2][i];
+		}
+		
+		return edgeCount + 1;
+	}
+	
+	
+	/**
+	 * Get the vertex of a name from the linearized NJ tree: the leafs have names 0, 1, .. (vertices 0, 1, ..), 
+	 * the internal vertices have names -2, -3, .. (vertices size, size + 1, ..).
+	 * */
+	private static int toVertex(float name, int size){
+		int n = (int)name;
+		return (n >= 0) ? n : size - n - 2;
+	}
+	
+	
+	/**
+	 * Get the lock of the "Clearcut" library. If the fallback is allowed in the configuration, 
+	 * the method doesn`t wait for the lock when the library is used by another thread.
+	 * 
+	 * @return true ~ the lock has been acquired (must be released), false ~ the library is used by another thread
+	 * */
+	private static boolean acquireLock(Configuration config){
+		
+		if (config.getNjContendedFallback()){
+			if (lock.tryLock()){
+				return true;
+			}
+			log.debug("Clearcut is used by another thread, java RapidNJ is used.");
+			return false;
+		} else {
+			lock.lock();
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Copy the distance matrix from a buffer to rows (row i contains i distances) as expected by the java NJ implementations.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa
+	 * */
+	private static float[][] toRows(FloatBuffer distances, int size){
+		
+		float rows[][] = new float[size][];
+		FloatBuffer buffer = distances.duplicate();
+		buffer.position(0);
+		for (int i=0; i<size; i++){
+			rows[i] = new float[i];
+			buffer.get(rows[i]);
+		}
+		return rows;
+	}
+	
+	
+	/**
+	 * Runs "Clearcut" to get a linearized NJ tree, the distance matrix is passed in binary form if the library
+	 * supports it, otherwise it is transformed to the text. The input and output of the library are prepared 
+	 * before the lock is acquired, the lock is held only while the library computes the tree.
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa
+	 * @param config configuration
+	 * 
+	 * @return linearized NJ tree or null if the library is used by another thread (see {@link #acquireLock(Configuration)})
+	 * */
+	private static float[][] runClearcut(FloatBuffer distances, int size, Configuration config){
+		
+		Clearcut c = new Clearcut();
+		String arguments = getArguments(config);
+		int argumentCount = new StringTokenizer(arguments).countTokens();
+		int edgesMax = 2*size - 2;
+		FloatBuffer njTree = null;
+		String fastaFile = null;
+		
+		if (directInputSupported){
+			njTree = ByteBuffer.allocateDirect(3*edgesMax << 2).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		} else {
+			fastaFile = toText(distances, size);
+		}
+		
+		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
+		float clearcut_matrix[][] = null;
+		int edgeCount = -1;
+		
+		/* call native method (must be mutually exclusive) */
+		if (!acquireLock(config)){
+			return null;
+		}
+		try {
+			if (directInputSupported){
+				edgeCount = c.clearcutDirect(distances, size, arguments, argumentCount, njTree);
+			} else {
+				clearcut_matrix = c.clearcutMain(fastaFile, arguments, argumentCount);
+			}
+		} catch (Exception e){
+			log.error("An exception...",e); 
+		} finally {
+			lock.unlock();
+		}
+		
+		if (!directInputSupported){
+			return clearcut_matrix;
+		}
+		
+		if (edgeCount < 0){
+			log.error("The \"Clearcut\" library failed to compute the NJ tree.");
+			System.exit(-1);
+		}
+		
+		/* the same form as the output of clearcutMain */
+		clearcut_matrix = new float[4][];
+		for (int i=0; i<3; i++){
+			clearcut_matrix[i] = new float[edgeCount];
+			njTree.position(i*edgesMax);
+			njTree.get(clearcut_matrix[i]);
+		}
+		clearcut_matrix[3] = new float[]{edgeCount};
+		
+		return clearcut_matrix;
+	}
+	
+	
+	/**
+	 * Transform the distance matrix to the text (distance matrix in fasta format).
+	 * 
+	 * @param distances the distance matrix, see {@link #createDistanceBuffer(int)}
+	 * @param size number of taxa
+	 * */
+	private static String toText(FloatBuffer distances, int size){
+		
+		StringBuilder buf = new StringBuilder((int)Math.min(((long)size)*size*3, Integer.MAX_VALUE >>> 1));
+		buf.append(size + " \n");
+		int cell = 0;
+		for (int i=0; i<size; i++){
+			buf.append(" s").append(i);
+			for (int j=0; j<i; j++){
+				buf.append(" ").append(distances.get(cell++));
+			}
+			buf.append(" \n");
+		}
+		
+		return buf.toString();
+	}
+	
+	
 	/**
 	 * Runs "Clearcut" to get a linearized NJ tree.
 	 * 
@@ -114,6 +426,32 @@ public class Clearcut {
 		//System.out.println("nj relaxed version: " + config.getNjRelaxedVersion());
 		
 		Clearcut c = new Clearcut();
+		String arguments = getArguments(config);
+		
+		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
+		float clearcut_matrix[][] = null;
+		
+		/* call native method (must be mutually exclusive) */
+		lock.lock();
+		try {
+			//System.out.println("arg: " + arguments + "\n fastaFile: " + fastaFile);
+			clearcut_matrix = c.clearcutMain(fastaFile, arguments, new StringTokenizer(arguments).countTokens());
+		} catch (Exception e){
+			log.error("An exception...",e); 
+		} finally {
+			lock.unlock();
+		}
+		
+		return clearcut_matrix;
+	}
+	
+	
+	/**
+	 * Get the arguments of the "Clearcut" alg. (separated by spaces).
+	 * 
+	 * @param config configuration
+	 * */
+	private static String getArguments(Configuration config){
 		
 		/* arguments of the "Clearcut" alg. 
 		 * clearcut01.exe ~ name of the program (is not considered can be anything)
@@ -124,12 +462,10 @@ public class Clearcut {
 		 * -D ~ input alignment are DNA sequences
 		 * */
 		StringBuffer arg = new StringBuffer("clearcut01.exe --in=alignment1.dist --out=output.txt");
-		int argCount = 3;
 		
 		//if (config.getComputeDmInJava() && (config.getNjCorrection() == 0)){
 			/* the input of clearcut is DM */
 			arg.append(" -d");
-			argCount++;
 			//System.out.println("Compute in java");
 		/*} else {
 			// the input of clearcut is a list of DNA sequences  
@@ -157,31 +493,15 @@ public class Clearcut {
 			
 			/* use traditional Neighbor-Joining algorithm (not relaxed NJ) */
 			arg.append(" -N");
-			argCount++;
 		}
 		
 		if (config.getVerbose() == 1){
 			
 			/* verbose output (more printings) */
 			arg.append(" -v");
-			argCount++;
-		}
-		
-		/* matrix returned by clearcut (linearized NJ tree, not distance matrix!) */
-		float clearcut_matrix[][] = null;
-		
-		/* call native method (must be mutually exclusive) */
-		lock.lock();
-		try {
-			//System.out.println("arg: " + arg.toString() + "\n argc:" + argCount + "\n fastaFile: " + fastaFile);
-			clearcut_matrix = c.clearcutMain(fastaFile, arg.toString(), argCount);
-		} catch (Exception e){
-			log.error("An exception...",e); 
-		} finally {
-			lock.unlock();
 		}
 		
-		return clearcut_matrix;
+		return arg.toString();
 	}
 	
 	
@@ -190,21 +510,12 @@ public class Clearcut {
 	 * 
 	 * @param njTree linearized NJ tree returned from the "Clearcut"
 	 * @param matrixSize the size of the output matrix (~number of leafs==number of clearcut`s input sequences)
+	 * @param matrix the output matrix
 	 * */
-	private float[][] computeNJMatrix(float njTree[][], int matrixSize){
-		
-		/* allocate the output matrix */
-		float matrix[][] = new float[matrixSize][];
-		for (int i=0; i<matrixSize; i++){
-			matrix[i] = new float[i];
-		}
+	private void computeNJMatrix(float njTree[][], int matrixSize, FloatTriangularStorage matrix){
 		  
 		/* initialize the output matrix (with max values) */ 
-		for (int i=0; i<matrixSize; i++){
-			for (int j=0; j<matrix[i].length; j++){
-				matrix[i][j] = Float.MAX_VALUE;
-			}
-		}
+		matrix.fill(matrixSize, Float.MAX_VALUE);
 		  
 		/* compute a graph from a NJ tree */
 		GCVertex root = clearcutNjTreeToGraph(njTree);
@@ -237,8 +548,6 @@ public class Clearcut {
 		}
 		  
 		//printMatrix(matrix);//print the matrix
-		
-		return matrix;
 	}
 
 
@@ -377,7 +686,7 @@ public class Clearcut {
 	/**
 	 * Set the distance of two leafs in a NJ tree.
 	 * */  
-	private void setDistance(GCVertex leaf, GCVertex node, GCVertex pnode, float matrix[][]){
+	private void setDistance(GCVertex leaf, GCVertex node, GCVertex pnode, FloatTriangularStorage matrix){
 		  
 		GCVertex tempNode;
 		  
@@ -392,7 +701,7 @@ public class Clearcut {
 		  
 		if (node.isLeaf){
 			  
-			matrix[Math.max(node.number,leaf.number)][Math.min(node.number,leaf.number)] = node.tempDistance;
+			matrix.set(Math.max(node.number,leaf.number), Math.min(node.number,leaf.number), node.tempDistance);
 			node.tempDistance = 0.0f;
 			return;
 		}
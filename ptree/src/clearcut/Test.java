@@ -1,9 +1,10 @@
 package clearcut;
 
 import common.Configuration;
+import dmatrix.FloatTriangularStorage;
 
 /**
- * Test of the method {@link Clearcut#computeNJMatrix(String, Configuration, short)}.
+ * Test of the method {@link Clearcut#computeNJMatrix(String, Configuration, int, FloatTriangularStorage)}.
  */
 public class Test {
 
@@ -21,17 +22,18 @@ public class Test {
 					
 		short matrixOutputSize = 4;
 			
-		float[][] output_matrix = Clearcut.computeNJMatrix(fastaFile, config, matrixOutputSize);
+		FloatTriangularStorage output_matrix = FloatTriangularStorage.create(matrixOutputSize, false, null);
+		Clearcut.computeNJMatrix(fastaFile, config, matrixOutputSize, output_matrix);
 	
-		print(output_matrix);
+		print(output_matrix, matrixOutputSize);
 		
 	}
 	
 	
-	public static void print(float[][] matrix){
-		for (int i=0; i<matrix.length; i++){
-			for (int j=0; j<matrix[i].length; j++){
-				System.out.print(matrix[i][j] + " ");
+	public static void print(FloatTriangularStorage matrix, int size){
+		for (int i=0; i<size; i++){
+			for (int j=0; j<i; j++){
+				System.out.print(matrix.get(i, j) + " ");
 			}
 			System.out.println();
 		}
@@ -15,6 +15,14 @@ extern "C" {
 JNIEXPORT jobjectArray JNICALL Java_clearcut_Clearcut_clearcutMain
   (JNIEnv *, jobject, jstring, jstring, jint);
 
+/*
+ * Class:     clearcut_Clearcut
+ * Method:    clearcutDirect
+ * Signature: (Ljava/nio/FloatBuffer;ILjava/lang/String;ILjava/nio/FloatBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_clearcut_Clearcut_clearcutDirect
+  (JNIEnv *, jobject, jobject, jint, jstring, jint, jobject);
+
 #ifdef __cplusplus
 }
 #endif
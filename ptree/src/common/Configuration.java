@@ -60,6 +60,10 @@ public class Configuration {
 	private int samplingIterCount = 0;     // <ptree><samplingIterCount>0</samplingIterCount> <!-- default 20 -->
 	private int threadCount = 1;
 	private int skipDatasetNum = 0;
+	private boolean interleavedInput = false; // <ptree><interleavedInput>false</interleavedInput> <!-- the PHYLIP input is interleaved -->
+	private int chainCount = 1; // <ptree><chainCount>1</chainCount> <!-- the number of search chains of one dataset that run in parallel -->
+	private int chainExchangeIterCount = 10; // <ptree><chainExchangeIterCount>10</chainExchangeIterCount> <!-- how often the chains exchange the best tree -->
+	private boolean compressSitePatterns = false; // <ptree><compressSitePatterns>false</compressSitePatterns> <!-- identical columns are processed as one weighted column -->
 	private double deleteIntCoef = 0.1; //?
 	
 	private int intMaxProcess = 5000;
@@ -69,12 +73,27 @@ public class Configuration {
 	private int intStrategyMinIntAtNode = 1;
 	private boolean intFilterViaLocalTopology = true;
 	private double intFilterViaLocalTopologyThreshold = 0.1;
+	private int intThreadCount = 1; // <ptree><intermediates><intThreadCount>1</intThreadCount> <!-- the number of threads that infer intermediates at the internal nodes -->
+	
+	//distance matrix
+	private int dmThreadCount = 1; // <distanceMatrix><dmThreadCount>1</dmThreadCount> <!-- the number of threads used to compute the distance matrix -->
+	
+	public static final int DM_STORAGE_HEAP = 0;
+	public static final int DM_STORAGE_MAPPED = 1;
+	
+	private int dmStorage = DM_STORAGE_HEAP; // <distanceMatrix><dmStorage>0</dmStorage> <!-- 0 ~ Java heap, 1 ~ memory-mapped file -->
+	private int dmMappedMinSize = 2000; // <distanceMatrix><dmMappedMinSize>2000</dmMappedMinSize> <!-- smaller matrices are always stored in the heap -->
+	private File dmMappedDirectory = null; // <distanceMatrix><dmMappedDirectory></dmMappedDirectory> <!-- directory of the memory-mapped files, empty ~ default temp. directory -->
 	
 	//??
 	private int mstImplementationThreshold = 50; // if the dataset has more than "threshold" vertices, the Jarnik/Prim implementation that is good for smaller datasets (up to approx 1000) switches to Boruvka that is good from approx 250
 	private int mstOptimizationThresholdVertexCount = 30; // if the number of vertices is bigger than "threshold" optimization can be used 
 	private double mstOptimizationThresholdDeletedPart = 0.01; // if less than (threshold)*100% vertices were deleted optimization can be used
+	private double mstInsertThresholdAddedPart = 0.1; // if less than (threshold)*100% vertices were added to an MST, the MST is extended instead of recomputed (0 ~ always recomputed)
 	private boolean usePrimOptimization = true; // optimization for complete graphs (recommended)
+	private int mstThreadCount = 1; // the number of threads of the Prim algorithm for complete graphs
+	private int mstParallelThreshold = 5000; // if the dataset has more than "threshold" vertices (and mstThreadCount > 1), the Prim algorithm for complete graphs runs in parallel
+	private int mstBucketMaxDistance = 1024; // the sequential Prim algorithm for complete graphs keeps the vertices whose distance to the tree is lower than "threshold" in buckets (Dial), 0 ~ no buckets
 	
 	boolean testDnaCharRepresentation = true;
 	boolean testOutputTreeStructure = true;
@@ -87,10 +106,12 @@ public class Configuration {
 	public static final byte JC_CORRECTION = 1;
 	public static final byte KIMURA_CORRECTION = 2;
 	
-	private byte vnjImplementation = 1; // 0 ~ java; 1 ~ clearcut
+	private byte vnjImplementation = 1; // 0 ~ java; 1 ~ clearcut; 2 ~ java RapidNJ
 	private byte vnjCorrection = NO_CORRECTION;
 	private byte vnjRelaxedVersion = 1;// 0 ~ normal version; 1 ~ relaxed version
 	private byte vnjVerbose = 0; //0~false 1~true
+	private boolean vnjContendedFallback = true; // <njAlg><contendedFallback>true <!-- use java RapidNJ if clearcut is used by another thread -->
+	private boolean vnjLcaDistances = true; // <njAlg><lcaDistances>true <!-- the distances of the NJ tree are computed from the tree, the NJ matrix is not stored -->
 	
 	private boolean computeFitchCost = true;
 	private boolean reconstructOutputTree = false;
@@ -363,6 +384,15 @@ public class Configuration {
 		return this.intFilterViaLocalTopologyThreshold;
 	}
 	
+	public void setIntThreadCount(int i){
+		this.intThreadCount = i;
+		//System.out.println("this.intThreadCount: " + i);
+	}
+	
+	public int getIntThreadCount(){
+		return this.intThreadCount;
+	}
+	
 	public void setIntFilterViaLocalTopology(boolean b){
 		this.intFilterViaLocalTopology = b;
 		//System.out.println("this.intFilterViaLocalTopology: " + b);
@@ -428,6 +458,33 @@ public class Configuration {
 	public int getMstImplementationThreshold(){
 		return mstImplementationThreshold;
 	}
+	
+	public void setMstThreadCount(int i){
+		this.mstThreadCount = i;
+		//System.out.println("this.mstThreadCount: " + this.mstThreadCount);
+	}
+	
+	public int getMstThreadCount(){
+		return this.mstThreadCount;
+	}
+	
+	public void setMstParallelThreshold(int i){
+		this.mstParallelThreshold = i;
+		//System.out.println("this.mstParallelThreshold: " + this.mstParallelThreshold);
+	}
+	
+	public int getMstParallelThreshold(){
+		return this.mstParallelThreshold;
+	}
+	
+	public void setMstBucketMaxDistance(int i){
+		this.mstBucketMaxDistance = i;
+		//System.out.println("this.mstBucketMaxDistance: " + this.mstBucketMaxDistance);
+	}
+	
+	public int getMstBucketMaxDistance(){
+		return this.mstBucketMaxDistance;
+	}
 
 	public void setMstOptimizationThresholdVertexCount(int s){
 		 this.mstOptimizationThresholdVertexCount = s;
@@ -447,6 +504,15 @@ public class Configuration {
 		return mstOptimizationThresholdDeletedPart;
 	}
 	
+	public void setMstInsertThresholdAddedPart(double s){
+		this.mstInsertThresholdAddedPart = s;
+		//System.out.println("this.mstInsertThresholdAddedPart " + s);
+	}
+	
+	public double getMstInsertThresholdAddedPart(){
+		return mstInsertThresholdAddedPart;
+	}
+	
 	 
 	public void setIntMaxProcess(int i){
 		this.intMaxProcess = i;
@@ -484,6 +550,65 @@ public class Configuration {
 		return this.skipDatasetNum;
 	}
 	
+	public void setInterleavedInput(boolean b){
+		this.interleavedInput = b;
+		//System.out.println("this.interleavedInput: " + this.interleavedInput);
+	}
+	
+	public boolean getInterleavedInput(){
+		return this.interleavedInput;
+	}
+	
+	public void setDmThreadCount(int i){
+		this.dmThreadCount = i;
+		//System.out.println("this.dmThreadCount: " + this.dmThreadCount);
+	}
+	
+	public int getDmThreadCount(){
+		return this.dmThreadCount;
+	}
+	
+	public void setDmStorage(int i){
+		this.dmStorage = i;
+		//System.out.println("this.dmStorage: " + this.dmStorage);
+	}
+	
+	public int getDmStorage(){
+		return this.dmStorage;
+	}
+	
+	public void setDmMappedMinSize(int i){
+		this.dmMappedMinSize = i;
+		//System.out.println("this.dmMappedMinSize: " + this.dmMappedMinSize);
+	}
+	
+	public int getDmMappedMinSize(){
+		return this.dmMappedMinSize;
+	}
+	
+	public void setDmMappedDirectory(String dir){
+		if ((dir == null) || (dir.trim().length() == 0)){
+			this.dmMappedDirectory = null;
+		} else {
+			this.dmMappedDirectory = new File(dir.trim());
+		}
+		//System.out.println("this.dmMappedDirectory: " + this.dmMappedDirectory);
+	}
+	
+	/**
+	 * @return the directory of the memory-mapped files or null (~ default temporary directory)
+	 * */
+	public File getDmMappedDirectory(){
+		return this.dmMappedDirectory;
+	}
+	
+	/**
+	 * Whether a matrix with the given number of rows should be stored in a memory-mapped file.
+	 * */
+	public boolean useMappedMatrix(int size){
+		return (this.dmStorage == DM_STORAGE_MAPPED) && (size >= this.dmMappedMinSize);
+	}
+	
 	public void setImplementation(int n){
 		this.vnjImplementation = (byte)n;
 		//System.out.println("impl" + n);
@@ -499,6 +624,16 @@ public class Configuration {
 		//System.out.println("rel" + n);
 	}
 	
+	public void setContendedFallback(boolean b){
+		this.vnjContendedFallback = b;
+		//System.out.println("contendedFallback" + b);
+	}
+	
+	public void setLcaDistances(boolean b){
+		this.vnjLcaDistances = b;
+		//System.out.println("lcaDistances" + b);
+	}
+	
 	
 	public byte getNjImplementation(){
 		return this.vnjImplementation;
@@ -512,6 +647,14 @@ public class Configuration {
 		return this.vnjRelaxedVersion;
 	}
 	
+	public boolean getNjContendedFallback(){
+		return this.vnjContendedFallback;
+	}
+	
+	public boolean getNjLcaDistances(){
+		return this.vnjLcaDistances;
+	}
+	
 	public byte getVerbose(){
 		return this.vnjVerbose;
 	}
@@ -599,6 +742,33 @@ public class Configuration {
 		return threadCount;
 	}
 	
+	public void setChainCount(int i){
+		this.chainCount = i;
+		//System.out.println("this.chainCount: " + this.chainCount);
+	}
+	
+	public int getChainCount(){
+		return this.chainCount;
+	}
+	
+	public void setChainExchangeIterCount(int i){
+		this.chainExchangeIterCount = i;
+		//System.out.println("this.chainExchangeIterCount: " + this.chainExchangeIterCount);
+	}
+	
+	public int getChainExchangeIterCount(){
+		return this.chainExchangeIterCount;
+	}
+	
+	public void setCompressSitePatterns(boolean b){
+		this.compressSitePatterns = b;
+		//System.out.println("this.compressSitePatterns: " + this.compressSitePatterns);
+	}
+	
+	public boolean getCompressSitePatterns(){
+		return this.compressSitePatterns;
+	}
+	
 	/*public int getMaskingSitesCount(){
 		return maskingSitesCount;
 	}*/
@@ -798,6 +968,10 @@ public class Configuration {
             digester.addBeanPropertySetter("configuration/ptree/samplingIterCount");
             digester.addBeanPropertySetter("configuration/ptree/threadCount");
             digester.addBeanPropertySetter("configuration/ptree/skipDatasetNum");
+            digester.addBeanPropertySetter("configuration/ptree/interleavedInput");
+            digester.addBeanPropertySetter("configuration/ptree/chainCount");
+            digester.addBeanPropertySetter("configuration/ptree/chainExchangeIterCount");
+            digester.addBeanPropertySetter("configuration/ptree/compressSitePatterns");
        
             /* ptree/intermediates */
             digester.addBeanPropertySetter("configuration/ptree/intermediates/intMaxProcess"); 
@@ -807,18 +981,31 @@ public class Configuration {
             digester.addBeanPropertySetter("configuration/ptree/intermediates/intStrategyMinIntAtNode"); 
             digester.addBeanPropertySetter("configuration/ptree/intermediates/intFilterViaLocalTopology"); 
             digester.addBeanPropertySetter("configuration/ptree/intermediates/intFilterViaLocalTopologyThreshold");
+            digester.addBeanPropertySetter("configuration/ptree/intermediates/intThreadCount");
             digester.addBeanPropertySetter("configuration/ptree/intermediates/deleteIntCoef");
             
+            /* distance matrix */
+            digester.addBeanPropertySetter("configuration/distanceMatrix/dmThreadCount");
+            digester.addBeanPropertySetter("configuration/distanceMatrix/dmStorage");
+            digester.addBeanPropertySetter("configuration/distanceMatrix/dmMappedMinSize");
+            digester.addBeanPropertySetter("configuration/distanceMatrix/dmMappedDirectory");
+            
             /* mst */
             digester.addBeanPropertySetter("configuration/mst/mstImplementationThreshold");
+            digester.addBeanPropertySetter("configuration/mst/mstThreadCount");
+            digester.addBeanPropertySetter("configuration/mst/mstParallelThreshold");
+            digester.addBeanPropertySetter("configuration/mst/mstBucketMaxDistance");
             digester.addBeanPropertySetter("configuration/mst/mstOptimizationThresholdVertexCount");
             digester.addBeanPropertySetter("configuration/mst/mstOptimizationThresholdDeletedPart");
+            digester.addBeanPropertySetter("configuration/mst/mstInsertThresholdAddedPart");
             digester.addBeanPropertySetter("configuration/mst/useMSTPrimOptimization");
             
             /* nj alg */
             digester.addBeanPropertySetter("configuration/njAlg/implementation");
             digester.addBeanPropertySetter("configuration/njAlg/correction");
             digester.addBeanPropertySetter("configuration/njAlg/relaxedVersion");
+            digester.addBeanPropertySetter("configuration/njAlg/contendedFallback");
+            digester.addBeanPropertySetter("configuration/njAlg/lcaDistances");
       
             /* tree comparison */
             digester.addBeanPropertySetter("configuration/treeComparison/treeComparisonMethod");
@@ -1,7 +1,5 @@
 package dmatrix;
 
-import java.util.HashMap;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -10,6 +8,8 @@ import ptree.Vertex;
 
 /**
  * A matrix with values of type float.
+ * 
+ * The values are either stored or computed on demand by a subclass (see {@link NJTreeDMatrix}).
  * */
 public class DMatrix {
 
@@ -19,13 +19,13 @@ public class DMatrix {
 	//private List<Vertex> vertices;
 	
 	/* map: vertex id -> position in the matrix */
-	private HashMap<Integer,Short> map; 
+	private IntIndexMap map; 
 	
-	/* float matrix */
-	private float matrix[][];
+	/* float matrix, only the lower triangle is stored */
+	private FloatTriangularStorage matrix;
 	
 	/* current size of the matrix */
-	private short size;
+	private int size;
 	
 	
 	@SuppressWarnings("unused")
@@ -47,33 +47,65 @@ public class DMatrix {
 		this.map = smatrix.map;
 		this.size = smatrix.size;
 		
+		this.matrix = FloatTriangularStorage.create(size, false, null);
+		for (int i=1; i<size; i++){
+			for (int j=0; j<i; j++){
+				this.matrix.set(i, j, fmatrix[i][j]);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Creates a Float matrix.
+	 * 
+	 * @param smatrix matrix from which are taken vertices` positions (hashmap)
+	 * @param fmatrix storage from which are taken values (lower triangle)
+	 * */
+	public DMatrix(Matrix smatrix, FloatTriangularStorage fmatrix){
+		
+		log = LogFactory.getLog(DMatrix.class);
+		
+		this.map = smatrix.map;
+		this.size = smatrix.size;
+		
 		this.matrix = fmatrix;
 	}
 	
 	
+	/**
+	 * Creates a Float matrix whose values are computed by a subclass (nothing is stored).
+	 * 
+	 * @param smatrix matrix from which are taken vertices` positions (hashmap)
+	 * */
+	protected DMatrix(Matrix smatrix){
+		
+		log = LogFactory.getLog(DMatrix.class);
+		
+		this.map = smatrix.map;
+		this.size = smatrix.size;
+	}
+	
+	
 	/**
 	 * Get the distance between two vertices from the matrix.
 	 * */
 	public float getDistance(Vertex v0, Vertex v1){
 		
-		Short i = map.get(v0.getIntId());
-		if (i == null){
+		int i = map.get(v0.getIntId());
+		if (i == IntIndexMap.NO_INDEX){
 			log.error("Ask for wrong value");
 			System.exit(-1);
 			return Float.MAX_VALUE;
 		}
-		short j = i;
-		i = map.get(v1.getIntId());
-		if (i == null){
+		int j = map.get(v1.getIntId());
+		if (j == IntIndexMap.NO_INDEX){
 			log.error("Ask for wrong value");
 			System.exit(-2);
 			return Float.MAX_VALUE;
 		}
-		if (i.equals(j)){
-			return 0;
-		}
 		
-		return matrix[Math.max(i, j)][Math.min(i, j)];
+		return getDistance(i, j);
 	}
 	
 	
@@ -83,14 +115,14 @@ public class DMatrix {
 			return 0.0f;
 		}
 		
-		return matrix[Math.max(indexV0, indexV1)][Math.min(indexV0, indexV1)];
+		return matrix.get(Math.max(indexV0, indexV1), Math.min(indexV0, indexV1));
 	}
 	
 	
 	/**
 	 * Get the current size of the matrix.
 	 * */
-	public short getSize(){
+	public int getSize(){
 		return size;
 	}
 	
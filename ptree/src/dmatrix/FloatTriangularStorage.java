@@ -0,0 +1,144 @@
+package dmatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Storage of a lower triangular matrix with values of type float (e.g. distances in an NJ tree).
+ *
+ * The cells are stored either in the Java heap or in a memory-mapped temporary file,
+ * see {@link TriangularStorage} for the layout of the cells.
+ * */
+public abstract class FloatTriangularStorage {
+
+	/**
+	 * Get the value of cell (row,column) where column < row.
+	 * */
+	public final float get(int row, int column){
+		return get(TriangularStorage.cellIndex(row, column));
+	}
+
+
+	/**
+	 * Set the value of cell (row,column) where column < row.
+	 * */
+	public final void set(int row, int column, float value){
+		set(TriangularStorage.cellIndex(row, column), value);
+	}
+
+
+	/**
+	 * Set all cells to the given value.
+	 * */
+	public void fill(int rows, float value){
+		long cellCount = TriangularStorage.cellCount(rows);
+		for (long cell=0; cell<cellCount; cell++){
+			set(cell, value);
+		}
+	}
+
+
+	public abstract float get(long cell);
+
+
+	public abstract void set(long cell, float value);
+
+
+	/**
+	 * Create a storage for a matrix with the given number of rows.
+	 *
+	 * @param mapped whether the storage should be memory-mapped
+	 * @param directory the directory of the memory-mapped file or null (~ default temporary directory)
+	 * */
+	public static FloatTriangularStorage create(int rows, boolean mapped, File directory){
+		if (mapped){
+			return new Mapped(rows, directory);
+		} else {
+			return new Heap(rows);
+		}
+	}
+
+
+	/**
+	 * Storage in the Java heap, the cells are stored in segments of 2^26 cells.
+	 * */
+	private static class Heap extends FloatTriangularStorage {
+
+		private static final int SEGMENT_SHIFT = 26;
+
+		private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+		private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+		private float segments[][];
+
+		private Heap(int rows){
+			long cells = TriangularStorage.cellCount(rows);
+			int segmentCount = (int)((cells + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+			segments = new float[segmentCount][];
+			for (int s=0; s<segmentCount; s++){
+				segments[s] = new float[(int)Math.min(SEGMENT_SIZE, cells - (((long)s) << SEGMENT_SHIFT))];
+			}
+		}
+
+		@Override
+		public float get(long cell){
+			return segments[(int)(cell >>> SEGMENT_SHIFT)][(int)(cell & SEGMENT_MASK)];
+		}
+
+		@Override
+		public void set(long cell, float value){
+			segments[(int)(cell >>> SEGMENT_SHIFT)][(int)(cell & SEGMENT_MASK)] = value;
+		}
+
+		@Override
+		public void fill(int rows, float value){
+			for (int s=0; s<segments.length; s++){
+				Arrays.fill(segments[s], value);
+			}
+		}
+	}
+
+
+	/**
+	 * Storage in a memory-mapped temporary file.
+	 * */
+	private static class Mapped extends FloatTriangularStorage {
+
+		private static final int CELL_SHIFT = 2;
+
+		private MappedByteBuffer segments[];
+
+		private Mapped(int rows, File directory){
+			try {
+				MappedFile mappedFile = new MappedFile(directory, Math.max(TriangularStorage.cellCount(rows) << CELL_SHIFT, 1));
+				segments = mappedFile.getSegments();
+				/* the matrix doesn`t grow */
+				mappedFile.closeChannel();
+			} catch (IOException ex){
+				Log log = LogFactory.getLog(FloatTriangularStorage.class);
+				log.error("Cannot create a memory-mapped file for the NJ matrix.", ex);
+				System.exit(-1);
+			}
+		}
+
+		@Override
+		public float get(long cell){
+			long position = cell << CELL_SHIFT;
+			return segments[(int)(position >>> MappedFile.SEGMENT_SHIFT)].getFloat((int)(position & MappedFile.SEGMENT_MASK));
+		}
+
+		@Override
+		public void set(long cell, float value){
+			long position = cell << CELL_SHIFT;
+			segments[(int)(position >>> MappedFile.SEGMENT_SHIFT)].putFloat((int)(position & MappedFile.SEGMENT_MASK), value);
+		}
+	}
+
+}
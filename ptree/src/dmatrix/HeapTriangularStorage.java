@@ -0,0 +1,84 @@
+package dmatrix;
+
+import java.util.Arrays;
+
+
+/**
+ * Storage of a lower triangular matrix in the Java heap.
+ *
+ * The cells are stored in segments of 2^26 cells, so that the matrix
+ * can have more than 2^31 cells. Only the last segment is reallocated when the matrix grows.
+ * */
+public class HeapTriangularStorage extends TriangularStorage {
+
+	private static final int SEGMENT_SHIFT = 26;
+
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private short segments[][];
+
+	/* the number of cells that can be stored */
+	private long capacity;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rows the initial number of rows
+	 * */
+	public HeapTriangularStorage(int rows){
+		segments = new short[0][];
+		capacity = 0;
+		ensureRowCapacity(rows);
+	}
+
+
+	@Override
+	public short get(long cell){
+		return segments[(int)(cell >>> SEGMENT_SHIFT)][(int)(cell & SEGMENT_MASK)];
+	}
+
+
+	@Override
+	public void set(long cell, short value){
+		segments[(int)(cell >>> SEGMENT_SHIFT)][(int)(cell & SEGMENT_MASK)] = value;
+	}
+
+
+	@Override
+	public void ensureRowCapacity(int rows){
+
+		long cells = cellCount(rows);
+		if (cells <= capacity){
+			return;
+		}
+
+		int segmentCount = (int)((cells + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+		segments = Arrays.copyOf(segments, segmentCount);
+
+		for (int s=0; s<segmentCount; s++){
+			int length = (int)Math.min(SEGMENT_SIZE, cells - (((long)s) << SEGMENT_SHIFT));
+			if (segments[s] == null){
+				segments[s] = new short[length];
+			} else {
+				if (segments[s].length < length){
+					/* the matrix usually grows again, so reserve some space */
+					int newLength = (int)Math.min(SEGMENT_SIZE, Math.max(length, segments[s].length + (segments[s].length >> 1)));
+					segments[s] = Arrays.copyOf(segments[s], newLength);
+				}
+			}
+		}
+
+		capacity = (((long)(segmentCount - 1)) << SEGMENT_SHIFT) + segments[segmentCount - 1].length;
+	}
+
+
+	@Override
+	public void clear(){
+		segments = new short[0][];
+		capacity = 0;
+	}
+
+}
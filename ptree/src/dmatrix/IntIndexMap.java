@@ -0,0 +1,159 @@
+package dmatrix;
+
+import java.util.Arrays;
+
+
+/**
+ * Map: vertex id (int) -> position in a matrix (non-negative int).
+ *
+ * Open addressing hash table with linear probing that stores primitive values,
+ * i.e. no Integer/Short objects are created on a lookup.
+ * */
+public class IntIndexMap {
+
+	/** value returned by get if the key is not in the map */
+	public static final int NO_INDEX = -1;
+
+	private static final float MAX_LOAD = 0.5f;
+
+	private int keys[];
+
+	/* NO_INDEX ~ empty slot */
+	private int values[];
+
+	private int mask;
+
+	private int count;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param expectedSize the expected number of entries
+	 * */
+	public IntIndexMap(int expectedSize){
+		int capacity = 16;
+		while (capacity*MAX_LOAD < expectedSize){
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, NO_INDEX);
+		mask = capacity - 1;
+		count = 0;
+	}
+
+
+	private static int slot(int key, int mask){
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+
+	/**
+	 * Get the position of a vertex or NO_INDEX if the vertex is not in the map.
+	 * */
+	public int get(int key){
+		int i = slot(key, mask);
+		int value;
+		while ((value = values[i]) != NO_INDEX){
+			if (keys[i] == key){
+				return value;
+			}
+			i = (i + 1) & mask;
+		}
+		return NO_INDEX;
+	}
+
+
+	/**
+	 * Put the position of a vertex to the map (replaces the previous position of the vertex).
+	 * */
+	public void put(int key, int value){
+
+		if (value < 0){
+			throw new IllegalArgumentException("Negative index " + value);
+		}
+
+		int i = slot(key, mask);
+		while (values[i] != NO_INDEX){
+			if (keys[i] == key){
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		count++;
+
+		if (count > (values.length*MAX_LOAD)){
+			rehash(values.length << 1);
+		}
+	}
+
+
+	/**
+	 * Remove a vertex from the map.
+	 * */
+	public void remove(int key){
+
+		int i = slot(key, mask);
+		while (values[i] != NO_INDEX){
+			if (keys[i] == key){
+				break;
+			}
+			i = (i + 1) & mask;
+		}
+		if (values[i] == NO_INDEX){
+			return;
+		}
+
+		/* shift back the following entries of the cluster so that no tombstones are needed */
+		int j = i;
+		while (true){
+			j = (j + 1) & mask;
+			if (values[j] == NO_INDEX){
+				break;
+			}
+			int home = slot(keys[j], mask);
+			/* entry j can be moved to i if its home slot is not in the cyclic interval (i,j] */
+			if ((i <= j) ? ((home <= i) || (home > j)) : ((home <= i) && (home > j))){
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		values[i] = NO_INDEX;
+		count--;
+	}
+
+
+	private void rehash(int capacity){
+		int oldKeys[] = keys;
+		int oldValues[] = values;
+		allocate(capacity);
+		for (int i=0; i<oldValues.length; i++){
+			if (oldValues[i] != NO_INDEX){
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+
+	public int size(){
+		return count;
+	}
+
+
+	public void clear(){
+		Arrays.fill(values, NO_INDEX);
+		count = 0;
+	}
+
+}
@@ -0,0 +1,130 @@
+package dmatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * Temporary file that is mapped to the memory in segments of 2^30 bytes
+ * (one MappedByteBuffer can map at most 2^31 - 1 bytes).
+ *
+ * The file is deleted as soon as it is mapped (if the operating system allows it),
+ * otherwise it is deleted on exit.
+ * */
+class MappedFile {
+
+	static final int SEGMENT_SHIFT = 30;
+
+	static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+	static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private File file;
+
+	private RandomAccessFile randomAccessFile;
+
+	private FileChannel channel;
+
+	/* mapped segments, all segments except for the last one have SEGMENT_SIZE bytes */
+	private MappedByteBuffer segments[];
+
+	/* the number of mapped bytes */
+	private long capacity;
+
+
+	/**
+	 * Create and map a temporary file.
+	 *
+	 * @param directory directory of the file or null (~ default temporary directory)
+	 * @param bytes the initial size of the file
+	 * */
+	MappedFile(File directory, long bytes) throws IOException {
+
+		file = File.createTempFile("ptree", ".dm", directory);
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+		segments = new MappedByteBuffer[0];
+		capacity = 0;
+
+		ensureCapacity(bytes, false);
+
+		if (!file.delete()){
+			file.deleteOnExit();
+		}
+	}
+
+
+	/**
+	 * Make sure that at least the given number of bytes is mapped, the content of the file is preserved.
+	 *
+	 * @param reserve whether the last segment should be mapped with some free space (the file usually grows again)
+	 * */
+	void ensureCapacity(long bytes, boolean reserve) throws IOException {
+
+		if (bytes <= capacity){
+			return;
+		}
+
+		int segmentCount = (int)((bytes + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+		int oldSegmentCount = segments.length;
+		segments = Arrays.copyOf(segments, segmentCount);
+
+		for (int s=Math.max(0, oldSegmentCount - 1); s<segmentCount; s++){
+
+			long position = ((long)s) << SEGMENT_SHIFT;
+			long length = Math.min(SEGMENT_SIZE, bytes - position);
+
+			if ((segments[s] != null) && (segments[s].capacity() >= length)){
+				continue;
+			}
+			if (reserve && (s == segmentCount - 1)){
+				length = Math.min(SEGMENT_SIZE, length + (length >> 1));
+			}
+
+			/* the file is extended automatically */
+			segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+			segments[s].order(ByteOrder.nativeOrder());
+		}
+
+		capacity = (((long)(segmentCount - 1)) << SEGMENT_SHIFT) + segments[segmentCount - 1].capacity();
+	}
+
+
+	/**
+	 * Get the mapped segments, the array changes when the file grows.
+	 * */
+	MappedByteBuffer[] getSegments(){
+		return segments;
+	}
+
+
+	/**
+	 * Close the file but keep the mapped segments, the mapping remains valid until the segments are garbage collected.
+	 * The file cannot grow after this method is called.
+	 * */
+	void closeChannel(){
+		try {
+			channel.close();
+			randomAccessFile.close();
+		} catch (IOException ex){
+			/* the file is deleted anyway */
+		}
+		file.delete();
+	}
+
+
+	/**
+	 * Close the file, the segments mustn`t be used after this method is called.
+	 * */
+	void close(){
+		segments = new MappedByteBuffer[0];
+		capacity = 0;
+		closeChannel();
+	}
+
+}
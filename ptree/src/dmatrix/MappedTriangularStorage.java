@@ -0,0 +1,85 @@
+package dmatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Storage of a lower triangular matrix in a memory-mapped temporary file.
+ *
+ * Only the pages that are being used have to be in the memory, the operating system
+ * keeps the recently used pages in its page cache and writes the others to the file.
+ * */
+public class MappedTriangularStorage extends TriangularStorage {
+
+	private static final int CELL_SHIFT = 1;
+
+	private Log log;
+
+	private File directory;
+
+	/* null if the storage has been cleared */
+	private MappedFile mappedFile;
+
+	private MappedByteBuffer segments[];
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param rows the initial number of rows
+	 * @param directory the directory of the temporary file or null (~ default temporary directory)
+	 * */
+	public MappedTriangularStorage(int rows, File directory){
+
+		log = LogFactory.getLog(MappedTriangularStorage.class);
+		this.directory = directory;
+		this.mappedFile = null;
+		ensureRowCapacity(rows);
+	}
+
+
+	@Override
+	public short get(long cell){
+		long position = cell << CELL_SHIFT;
+		return segments[(int)(position >>> MappedFile.SEGMENT_SHIFT)].getShort((int)(position & MappedFile.SEGMENT_MASK));
+	}
+
+
+	@Override
+	public void set(long cell, short value){
+		long position = cell << CELL_SHIFT;
+		segments[(int)(position >>> MappedFile.SEGMENT_SHIFT)].putShort((int)(position & MappedFile.SEGMENT_MASK), value);
+	}
+
+
+	@Override
+	public void ensureRowCapacity(int rows){
+		try {
+			if (mappedFile == null){
+				mappedFile = new MappedFile(directory, Math.max(cellCount(rows) << CELL_SHIFT, 1));
+			} else {
+				mappedFile.ensureCapacity(cellCount(rows) << CELL_SHIFT, true);
+			}
+		} catch (IOException ex){
+			log.error("Cannot create or extend the memory-mapped file of the distance matrix.", ex);
+			System.exit(-1);
+		}
+		segments = mappedFile.getSegments();
+	}
+
+
+	@Override
+	public void clear(){
+		if (mappedFile != null){
+			mappedFile.close();
+			mappedFile = null;
+		}
+		segments = new MappedByteBuffer[0];
+	}
+
+}
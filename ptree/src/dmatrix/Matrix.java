@@ -1,7 +1,7 @@
 package dmatrix;
 
 //import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.nio.FloatBuffer;
 import java.util.List;
 
 
@@ -11,6 +11,7 @@ import org.apache.commons.logging.LogFactory;
 import ptree.MutationManager;
 import nj.NJAlgorithm;
 import nj.NJVertex;
+import nj.RapidNJAlgorithm;
 import ptree.DNAPreprocessor;
 import ptree.Sampling;
 import ptree.Tree;
@@ -32,17 +33,17 @@ public class Matrix {
 	
 	protected Configuration config;
 	
-	/* symmetric matrix */
-	private short matrix[][];
+	/* symmetric matrix, only the lower triangle is stored */
+	private TriangularStorage matrix;
 	
 	/* vertices that corresponds to the rows and columns of the matrix */
 	protected List<Vertex> vertices;
 	
 	/* map: vertex id -> position in the matrix */
-	protected HashMap<Integer,Short> map; 
+	protected IntIndexMap map; 
 	
 	/* current size of the matrix */
-	protected short size;
+	protected int size;
 	
 	protected MutationManager mutationManager;
 
@@ -57,43 +58,25 @@ public class Matrix {
 		this.config = config;
 		this.dPrep = dPrep;
 		mutationManager = new MutationManager(config, false);
-		
-		this.vertices = vertices;
-		this.size = (short)vertices.size();
-		this.map = new HashMap<Integer,Short>(2*size);
-		this.matrix = new short[2*size][];
-		
-		for (int i=0; i<(2*size); i++){
-			matrix[i] = null;
+		if (dPrep != null){
+			mutationManager.setSiteWeights(dPrep.getSiteWeights());
 		}
 		
-		for (int i=1; i<size; i++){
-			matrix[i] = new short[i];
+		this.vertices = vertices;
+		this.size = vertices.size();
+		this.map = new IntIndexMap(2*size);
+		if (config.useMappedMatrix(size)){
+			this.matrix = new MappedTriangularStorage(size, config.getDmMappedDirectory());
+		} else {
+			this.matrix = new HeapTriangularStorage(size);
 		}
 		
-		for (short i=0; i<vertices.size(); i++){
+		for (int i=0; i<vertices.size(); i++){
 			map.put(vertices.get(i).getIntId(), i);
 		}	
 	}
 	
 	
-	/**
-	 * Creates a copy of the matrix but the matrix values will be copied from the newMatrix.
-	 * */
-	public Matrix(Matrix matrix, short newMatrix[][]){
-		
-		log = LogFactory.getLog(Matrix.class);
-		this.config = matrix.config;
-		this.dPrep = matrix.dPrep;
-		this.mutationManager = matrix.mutationManager;
-		
-		this.vertices = matrix.vertices;
-		this.size = matrix.size;
-		this.map = matrix.map;
-		this.matrix = newMatrix;
-	}
-	
-	
 	/** 
 	 * Compute the distance matrix. 
 	 * 
@@ -106,9 +89,9 @@ public class Matrix {
 		for (int i=1; i<size;i++){
 			for (int j=0; j<i; j++){
 				//matrix[i][j] = mm.getMutationsCount(vertices.get(Math.min(i, j)), vertices.get(Math.max(i, j)));
-				matrix[i][j] = mutationManager.getMutationsCount(
+				matrix.set(i, j, mutationManager.getMutationsCount(
 						vertices.get(Math.min(i, j)).getDna(), 
-						vertices.get(Math.max(i, j)).getDna());
+						vertices.get(Math.max(i, j)).getDna()));
 			}
 		} 
 		//System.out.println("compute distance matrix in Java:" + (System.currentTimeMillis() - time));
@@ -124,78 +107,124 @@ public class Matrix {
 	 * @param tree2 a tree or null
 	 * 
 	 * */	
-	public void computeDistanceMatrix(Sampling currentSampling, Tree tree1, Tree tree2){
+	public void computeDistanceMatrix(final Sampling currentSampling, final Tree tree1, final Tree tree2){
 		TimeStamp ts = TimeStamp.getTimeStamp();
 		
 		if ((currentSampling == null) && (tree1 == null) && (tree2 == null)){
 		
-			for (int i=1; i<size;i++){
-				for (int j=0; j<i; j++){
-					matrix[i][j] = mutationManager.getMutationsCount(
-							vertices.get(Math.min(i, j)).getDna(), 
-							vertices.get(Math.max(i, j)).getDna());
-				}
-			} 
+			computeRows(1, size);
 		
 		} else {
 			
-			Vertex v0;
-			Vertex v1;
-			byte[] dna0;
-			byte[] dna1;
-			Short distance;
-			List<Integer> positions = null;
-			if (currentSampling != null){
-				positions = currentSampling.getSampling();
-			}
+			packDna(size);
 			
-			for (int i=1; i<size;i++){
-				for (int j=0; j<i; j++){
-					
-					v0 = vertices.get(Math.min(i, j));
-					v1 = vertices.get(Math.max(i, j));
-					distance = null;
-					
-					if (tree1 != null){
-						distance = tree1.getDistanceIgnoringSamplingTry(v0, v1);
+			ParallelFill.fill(1, size, config.getDmThreadCount(), new ParallelFill.RowFiller(){
+				@Override
+				void fillRows(int from, int to) {
+					computeRows(from, to, currentSampling, tree1, tree2);
+				}
+			});
+		}
+		
+		Stat.computeDMFinished(ts);
+	}
+	
+	
+	/**
+	 * Compute rows: from, from + 1, .., to - 1 of the distance matrix. 
+	 * The rows are computed in parallel if more threads are configured.
+	 * */
+	private void computeRows(int from, int to){
+		
+		packDna(to);
+		
+		ParallelFill.fill(from, to, config.getDmThreadCount(), new ParallelFill.RowFiller(){
+			@Override
+			void fillRows(int from, int to) {
+				for (int i=from; i<to; i++){
+					for (int j=0; j<i; j++){
+						matrix.set(i, j, mutationManager.getMutationsCount(
+								vertices.get(Math.min(i, j)).getDna(), 
+								vertices.get(Math.max(i, j)).getDna()));
 					}
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Compute rows: from, from + 1, .., to - 1 of the distance matrix, 
+	 * take the distances from the trees if possible.
+	 * */
+	private void computeRows(int from, int to, Sampling currentSampling, Tree tree1, Tree tree2){
+		
+		Vertex v0;
+		Vertex v1;
+		byte[] dna0;
+		byte[] dna1;
+		Short distance;
+		List<Integer> positions = null;
+		if (currentSampling != null){
+			positions = currentSampling.getSampling();
+		}
+		
+		for (int i=from; i<to;i++){
+			for (int j=0; j<i; j++){
+				
+				v0 = vertices.get(Math.min(i, j));
+				v1 = vertices.get(Math.max(i, j));
+				distance = null;
+				
+				if (tree1 != null){
+					distance = tree1.getDistanceIgnoringSamplingTry(v0, v1);
+				}
+				
+				if ((distance == null) && (tree2 != null)){
+					distance = tree2.getDistanceIgnoringSamplingTry(v0, v1);
+				}
+				
+				if ((distance != null) && (currentSampling != null)){
 					
-					if ((distance == null) && (tree2 != null)){
-						distance = tree2.getDistanceIgnoringSamplingTry(v0, v1);
+					if (v0.getSecDna() != null){
+						dna0 = v0.getSecDna().getBytes();
+					} else {
+						dna0 = v0.getDna().getBytes();
 					}
 					
-					if ((distance != null) && (currentSampling != null)){
-						
-						if (v0.getSecDna() != null){
-							dna0 = v0.getSecDna().getBytes();
-						} else {
-							dna0 = v0.getDna().getBytes();
-						}
-						
-						if (v1.getSecDna() != null){
-							dna1 = v1.getSecDna().getBytes();
-						} else {
-							dna1 = v1.getDna().getBytes();
-						}
-						
-						for (int index : positions){
-							if (mutationManager.countAsChange(dna0[index], dna1[index])){
-								distance--;
-							}
-						}
+					if (v1.getSecDna() != null){
+						dna1 = v1.getSecDna().getBytes();
+					} else {
+						dna1 = v1.getDna().getBytes();
 					}
 					
-					if (distance == null){
-						distance = mutationManager.getMutationsCount(v0.getDna(), v1.getDna());
+					for (int index : positions){
+						if (mutationManager.countAsChange(dna0[index], dna1[index])){
+							distance = MutationManager.toDistance(distance - mutationManager.getSiteWeight(index));
+						}
 					}
-					
-					matrix[i][j] = distance;
 				}
-			} 
-
+				
+				if (distance == null){
+					distance = mutationManager.getMutationsCount(v0.getDna(), v1.getDna());
+				}
+				
+				matrix.set(i, j, distance);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Compute the packed DNA of the first "count" vertices before the rows are computed in parallel,
+	 * so that the threads don`t compute it concurrently.
+	 * */
+	private void packDna(int count){
+		if (config.getDmThreadCount() > 1){
+			for (int i=0; i<count; i++){
+				mutationManager.pack(vertices.get(i).getDna());
+			}
 		}
-		
-		Stat.computeDMFinished(ts);
 	}
 	
 	
@@ -208,7 +237,7 @@ public class Matrix {
 			
 			for (int i=0; i<size; i++){ //only a test !!!
 				
-				if (map.get(vertices.get(i).getIntId()) == null){
+				if (map.get(vertices.get(i).getIntId()) == IntIndexMap.NO_INDEX){
 					log.error("no mapping for " + vertices.get(i).getName());
 					System.exit(-3);
 				}
@@ -216,50 +245,22 @@ public class Matrix {
 			return;
 		}
 		
-		if (matrix.length < vertices.size()){
-			
-			short tempMatrix[][];
-			tempMatrix = new short[2*vertices.size()][];
-			for (int i=0; i<tempMatrix.length; i++){
-				tempMatrix[i] = null;
-			}
-			
-			for (int i=1; i<matrix.length; i++){
-				if (matrix[i] == null){
-					break;
-				}
-				tempMatrix[i] = matrix[i];
-				matrix[i] = null;
-			}
-			
-			matrix = tempMatrix;
-		}
-		
-		for (int i=size; i< vertices.size(); i++){
-			if (matrix[i] == null){
-				matrix[i] = new short[i];
-			}
-		}
-		
-		
-		for (short i=size; i<vertices.size(); i++){
+		matrix.ensureRowCapacity(vertices.size());
 		
+		for (int i=size; i<vertices.size(); i++){
 			map.put(vertices.get(i).getIntId(), i);
-				
-			for (int j=0; j<i; j++){
-				matrix[i][j] = mutationManager.getMutationsCount(
-						vertices.get(Math.min(i, j)).getDna(), vertices.get(Math.max(i, j)).getDna());
-			}
 		}
 		
+		computeRows(size, vertices.size());
+		
 		for (int i=0; i<vertices.size(); i++){ //only a test
-			if (map.get(vertices.get(i).getIntId()) == null){
+			if (map.get(vertices.get(i).getIntId()) == IntIndexMap.NO_INDEX){
 				log.error("NO MAPPING for: " + vertices.get(i).getName());
 				System.exit(-1);
 			}
 		}//!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
 	
-		size = (short)vertices.size();
+		size = vertices.size();
 		Stat.updateDMFinished(ts);
 	}
 	
@@ -271,27 +272,25 @@ public class Matrix {
 	 * */
 	public void restoreDistanceMatrixOld(){
 		TimeStamp ts = TimeStamp.getTimeStamp();
-		short i;
-		Short value;
+		int i;
+		int value;
 		for (i=0; i<vertices.size(); i++){	
 			
 			value = map.get(vertices.get(i).getIntId());
 			
-			if (value == null || !value.equals(i)){
+			if (value != i){
 				break;
 			}
 		}
 		
+		matrix.ensureRowCapacity(vertices.size());
+		computeRows(i, vertices.size());
+		
 		for (; i<vertices.size(); i++){
-			for (int j=0; j<i; j++){
-				matrix[i][j] = mutationManager.getMutationsCount(
-						vertices.get(Math.min(i, j)).getDna(), vertices.get(Math.max(i, j)).getDna());
-			}
-			map.remove(vertices.get(i).getIntId());
 			map.put(vertices.get(i).getIntId(), i);
 		}
 		
-		size = (short)vertices.size();
+		size = vertices.size();
 		Stat.restoreDMFinished(ts);
 	}
 	
@@ -302,60 +301,65 @@ public class Matrix {
 	public void restoreDistanceMatrix(){
 		
 		TimeStamp ts = TimeStamp.getTimeStamp();
-		short offset;
-		Short temp;
+		int offset;
 		
 		/* find the first index "i" of a row that corresponds to a vertex that was deleted */
 		for (offset=0; offset<vertices.size(); offset++){	
-			temp = map.get(vertices.get(offset).getIntId());
-			if (!temp.equals(offset)){
+			if (map.get(vertices.get(offset).getIntId()) != offset){
 				break;
 			}
 		}
 		
 		/* shift array provides mapping between the old and new indices of vertices in the distance matrix*/
-		short listSize = (short)vertices.size();
-		short shift[] = new short[listSize - offset];
-		for (short k=offset; k<listSize; k++){
+		int listSize = vertices.size();
+		int shift[] = new int[listSize - offset];
+		for (int k=offset; k<listSize; k++){
 			shift[k-offset] = k;
 		}
 		
 		/* the difference between indices in the new and old matrix */
-		short difference = 0; 
+		int difference = 0; 
 		
-		/* reconstruct the matrix - rows that correspond to the vertices that were deleted are removed */
-		for (short i=offset; i<vertices.size(); i++){
+		/* reconstruct the matrix - rows that correspond to the vertices that were deleted are removed,
+		 * a row is always moved towards the beginning of the storage (oldIndex >= i), 
+		 * so the cells that haven`t been moved yet are never overwritten */
+		for (int i=offset; i<listSize; i++){
 			
 			int verticesIntId = vertices.get(i).getIntId();
-			short oldIndex = map.get(verticesIntId);
-			short increment;
+			int oldIndex = map.get(verticesIntId);
+			int increment;
+			long oldRow = TriangularStorage.cellIndex(oldIndex, 0);
+			long newRow = TriangularStorage.cellIndex(i, 0);
+			
+			/* move the columns that correspond to the vertices that haven`t changed their positions */
+			if (oldRow != newRow){
+				for (int k=0; k<offset; k++){
+					matrix.set(newRow + k, matrix.get(oldRow + k));
+				}
+			}
 			
 			/* update a row such that it correspond to its new position (row index)*/
-			for (short k=offset; k<i; k++){
-				matrix[oldIndex][k] = matrix[oldIndex][shift[k-offset]];
+			for (int k=offset; k<i; k++){
+				matrix.set(newRow + k, matrix.get(oldRow + shift[k-offset]));
 			}
 			
 			/* update the shift array if a row that correspond to a vertex was deleted*/
 			if ((oldIndex - i) > difference){
-				increment = (short)((oldIndex - i) - difference);
-				difference = (short)(oldIndex - i);
+				increment = (oldIndex - i) - difference;
+				difference = oldIndex - i;
 				
-				for (short k=i; k<listSize; k++){
+				for (int k=i; k<listSize; k++){
 					shift[k-offset]+= increment;
 				}
 			}
-
-			matrix[i] = matrix[oldIndex];
-			matrix[oldIndex] = null;
 		
-			map.remove(verticesIntId);
 			map.put(verticesIntId, i);
 		}
 		
-		size = (short)vertices.size();
+		size = vertices.size();
 		
 		for (int i=0; i<vertices.size(); i++){ //only a test
-			if (map.get(vertices.get(i).getIntId()) == null){
+			if (map.get(vertices.get(i).getIntId()) == IntIndexMap.NO_INDEX){
 				log.error("NO MAPPING for: " + vertices.get(i).getName());
 				System.exit(-1);
 			}
@@ -393,36 +397,33 @@ public class Matrix {
 	
 	public short getDistance(Vertex v0, int indexV1){ 
 		
-		Short indexV0 = map.get(v0.getIntId());
-		if (indexV0 == null){
+		int indexV0 = map.get(v0.getIntId());
+		if (indexV0 == IntIndexMap.NO_INDEX){
 			log.error("Ask for wrong value 1 " + v0.getName());
 			System.exit(-1);
 			return Short.MAX_VALUE;
 		}
-		 
-		if (indexV0.equals(indexV1)){
-			return 0;
-		}
 		
-		return matrix[Math.max(indexV0, indexV1)][Math.min(indexV0, indexV1)];
+		return getDistance(indexV0, indexV1);
 	}
 	
 	
 	public void decreaseDistance(Vertex v0, int indexV1, int offsetDec){ 
 		
-		Short indexV0 = map.get(v0.getIntId());
-		if (indexV0 == null){
+		int indexV0 = map.get(v0.getIntId());
+		if (indexV0 == IntIndexMap.NO_INDEX){
 			log.error("Ask for wrong value 1 " + v0.getName());
 			System.exit(-1);
 		}
 		 
-		if (indexV0.equals(indexV1)){
+		if (indexV0 == indexV1){
 			log.error("Wants to adjust the distance with itself " + v0.getName());
 			System.exit(-1);
 			return;
 		}
 		
-		matrix[Math.max(indexV0, indexV1)][Math.min(indexV0, indexV1)] -= offsetDec;
+		long cell = TriangularStorage.cellIndex(Math.max(indexV0, indexV1), Math.min(indexV0, indexV1));
+		matrix.set(cell, MutationManager.toDistance(matrix.get(cell) - offsetDec));
 	}
 	
 	
@@ -441,7 +442,11 @@ public class Matrix {
 			return 0;
 		}
 		
-		return matrix[Math.max(indexV0, indexV1)][Math.min(indexV0, indexV1)];
+		if (indexV0 > indexV1){
+			return matrix.get(indexV0, indexV1);
+		} else {
+			return matrix.get(indexV1, indexV0);
+		}
 	}
 	
 	
@@ -452,70 +457,82 @@ public class Matrix {
 	 * */
 	public Short getDistanceTry(Vertex v0, Vertex v1){ 
 		
-		Short i = map.get(v0.getIntId());
-		if (i == null){
+		int i = map.get(v0.getIntId());
+		if (i == IntIndexMap.NO_INDEX){
 			return null;
 		}
-		short j = i;
-		i = map.get(v1.getIntId());
-		if (i == null){
+		int j = map.get(v1.getIntId());
+		if (j == IntIndexMap.NO_INDEX){
 			return null;
 		}
-		if (i.equals(j)){
-			return 0;
-		}
 		
-		return matrix[Math.max(i, j)][Math.min(i, j)];
+		return getDistance(i, j);
 	}
 
 
 	/**
 	 * Compute the NJ matrix from this matrix.
-	 * The NJ algorithm can be either Java implementation or it can use an external "Clearcut" library,
+	 * The NJ algorithm can be either Java implementation (PAL or RapidNJ) or it can use an external "Clearcut" library,
 	 * depending on the configuration.
+	 * The NJ matrix is either stored or its values are computed from the NJ tree (see {@link NJTreeDMatrix}).
 	 * */
 	public DMatrix getNJMatrix(Configuration config){
 		
 		TimeStamp ts = TimeStamp.getTimeStamp();
 		
-		if (config.getNjImplementation() == 0){
+		if (config.getNjLcaDistances()){
+			
+			/* the NJ tree given by the parents of its vertices */
+			int parent[] = new int[Math.max(2*size - 1, 0)];
+			float length[] = new float[parent.length];
+			int vertexCount;
+			
+			if (config.getNjImplementation() == 0){
+				vertexCount = new NJAlgorithm().computeNJParents(getCorrectionMatrix(config.getNjCorrection()), parent, length);
+			} else if (config.getNjImplementation() == 2){
+				vertexCount = new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJParents(
+						getCorrectionMatrix(config.getNjCorrection()), parent, length);
+			} else {
+				vertexCount = Clearcut.computeNJParents(getCorrectionBuffer(config.getNjCorrection()), this.size, config, 
+						parent, length);
+			}
+			
+			DMatrix njMatrix = new NJTreeDMatrix(this, parent, length, vertexCount);
+			Stat.computeNJFinished(ts);
+			
+			return njMatrix;
+		} else if (config.getNjImplementation() == 0){
 			
 			/* NJ Java implementation */
 		
-			float[][] copy = new float[size][];
+			float[][] copy = getCorrectionMatrix(config.getNjCorrection());
 			
-			for (int i=0; i<size; i++){
-				copy[i] = new float[i];
-				for (int j=0;j<i; j++){
-					//copy[i][j] = matrix[i][j];
-					copy[i][j] = getCorrectionDistance(config.getNjCorrection(), i, j);
-				}
-			}
+			FloatTriangularStorage njMatrix = FloatTriangularStorage.create(size, 
+					config.useMappedMatrix(size), config.getDmMappedDirectory());
+			new NJAlgorithm().computeNJMatrix(copy, njMatrix);
+			Stat.computeNJFinished(ts);
 			
-			float[][] njMatrix = new NJAlgorithm().computeNJMatrix(copy);
+			return new DMatrix(this,njMatrix);
+		} else if (config.getNjImplementation() == 2){
+			
+			/* NJ Java implementation (RapidNJ or relaxed NJ), works directly on the copy of the matrix */
+			
+			float[][] copy = getCorrectionMatrix(config.getNjCorrection());
+			
+			FloatTriangularStorage njMatrix = FloatTriangularStorage.create(size, 
+					config.useMappedMatrix(size), config.getDmMappedDirectory());
+			new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJMatrix(copy, njMatrix);
 			Stat.computeNJFinished(ts);
 			
 			return new DMatrix(this,njMatrix);
 		} else {
 		
 			/* "Clearcut implementation" */
-			String file;
 			
 			//if (config.getComputeDmInJava() && (config.getNjCorrection() == 0)){
 				
-				/* suppose that the DM has been computed in Java */
-				StringBuffer buf = new StringBuffer(vertices.size()*vertices.size()*3);
-				buf.append(this.size + " \n");
-				for (int i=0; i<vertices.size(); i++){
-					buf.append(" s" + map.get(vertices.get(i).getIntId()));
-					for (int j=0; j<i; j++){
-						//buf.append(" " + this.getDistance(i, j));
-						buf.append(" " + getCorrectionDistance(config.getNjCorrection(), i, j));
-					}
-					buf.append(" \n");
-				}
-				file = buf.toString();
-				//System.out.println(file);
+				/* suppose that the DM has been computed in Java, it is passed to Clearcut in binary form */
+				FloatBuffer distances = getCorrectionBuffer(config.getNjCorrection());
 			/*} else {
 				// the DM will be computed using Clearcut  
 				
@@ -534,7 +551,9 @@ public class Matrix {
 				file = buf.toString();
 			}*/
 			
-			float[][] clearcutMatrix = Clearcut.computeNJMatrix(file, config, this.size);
+			FloatTriangularStorage clearcutMatrix = FloatTriangularStorage.create(size, 
+					config.useMappedMatrix(size), config.getDmMappedDirectory());
+			Clearcut.computeNJMatrix(distances, this.size, config, clearcutMatrix);
 			//System.out.println("nj matrix computed");
 			Stat.computeNJFinished(ts);
 			return new DMatrix(this,clearcutMatrix);
@@ -544,7 +563,7 @@ public class Matrix {
 	
 	/**
 	 * Compute the NJ matrix from this matrix.
-	 * The NJ algorithm can be either Java implementation or it can use an external "Clearcut" library,
+	 * The NJ algorithm can be either Java implementation (PAL or RapidNJ) or it can use an external "Clearcut" library,
 	 * depending on the configuration.
 	 * */
 	public NJVertex getNJTree(Configuration config){
@@ -555,41 +574,30 @@ public class Matrix {
 			
 			/* NJ Java implementation */
 		
-			float[][] copy = new float[size][];
-			
-			for (int i=0; i<size; i++){
-				copy[i] = new float[i];
-				for (int j=0;j<i; j++){
-					//copy[i][j] = matrix[i][j]; // !!!
-					copy[i][j] = getCorrectionDistance(config.getNjCorrection(), i, j);
-				}
-			}
+			float[][] copy = getCorrectionMatrix(config.getNjCorrection());
 			
 			NJVertex root = new NJAlgorithm().computeNJTree(copy);
 			Stat.computeNJFinished(ts);
 			
+			return root;
+		} else if (config.getNjImplementation() == 2){
+			
+			/* NJ Java implementation (RapidNJ or relaxed NJ) */
+			
+			float[][] copy = getCorrectionMatrix(config.getNjCorrection());
+			
+			NJVertex root = new RapidNJAlgorithm(config.getNjRelaxedVersion() == 1).computeNJTree(copy);
+			Stat.computeNJFinished(ts);
+			
 			return root;
 		} else {
 		
 			/* "Clearcut implementation" */
-			String file;
 			
 			//if (config.getComputeDmInJava() && (config.getNjCorrection() == 0)){
 				
-				/* suppose that the DM has been computed in Java */
-				StringBuffer buf = new StringBuffer(vertices.size()*vertices.size()*3);
-				buf.append(this.size + " \n");
-				for (int i=0; i<vertices.size(); i++){
-					buf.append(" s" + map.get(vertices.get(i).getIntId()));
-					for (int j=0; j<i; j++){
-						//buf.append(" " + this.getDistance(i, j));
-						buf.append(" " + getCorrectionDistance(config.getNjCorrection(), i, j));
-					}
-					buf.append(" \n");
-				}
-				file = buf.toString();
-				 
-				
+				/* suppose that the DM has been computed in Java, it is passed to Clearcut in binary form */
+				FloatBuffer distances = getCorrectionBuffer(config.getNjCorrection());
 				
 			//} 
 				/*else {
@@ -610,7 +618,7 @@ public class Matrix {
 				file = buf.toString();
 			}*/
 			
-			NJVertex root = Clearcut.computeNJTree(file, config);
+			NJVertex root = Clearcut.computeNJTree(distances, this.size, config);
 			Stat.computeNJFinished(ts);
 			//return new DMatrix(this,clearcutMatrix);
 			 
@@ -652,24 +660,29 @@ public class Matrix {
 		byte b0[] = vertices.get(i).getDna().getBytes();
 		byte b1[] = vertices.get(j).getDna().getBytes();
 		
+		/* each site counts with its weight (compressed site patterns) */
+		int siteWeights[] = getSiteWeights();
+		int weight;
+		
 		double transitions = 0.0;
 		double transversions = 0.0;
 		double seqLen = dPrep.getDnaUncompressedLength();
 		for (int k=0; k<b0.length; k++){
 			if (b0[k] != b1[k]){
+				weight = (siteWeights != null)?(siteWeights[k]):(1);
 				if ((((b0[k] == config.getA()) && (b1[k] == config.getG()))
 				   ||((b0[k] == config.getG()) && (b1[k] == config.getA())))
 				   ||
 				   (((b0[k] == config.getC()) && (b1[k] == config.getT())||
 				     (b0[k] == config.getT()) && (b1[k] == config.getC())))
 				    ){
-						transitions++;
+						transitions += weight;
 					} else {
 						
 						if (((b0[k] == config.getGapChar()) || b1[k] == config.getGapChar()) && (!config.getCountGapAsChange())){
-							seqLen--;
+							seqLen -= weight;
 						} else {
-							transversions++;
+							transversions += weight;
 						}
 					}
 			}
@@ -722,6 +735,57 @@ public class Matrix {
 	}
 	
 	
+	/**
+	 * Get a copy of the matrix where the distances are corrected according to the correction index.
+	 * The rows are computed in parallel if more threads are configured.
+	 * */
+	private float[][] getCorrectionMatrix(final byte correction){
+		
+		final float[][] copy = new float[size][];
+		
+		for (int i=0; i<size; i++){
+			copy[i] = new float[i];
+		}
+		
+		ParallelFill.fill(1, size, config.getDmThreadCount(), new ParallelFill.RowFiller(){
+			@Override
+			void fillRows(int from, int to) {
+				for (int i=from; i<to; i++){
+					for (int j=0; j<i; j++){
+						copy[i][j] = getCorrectionDistance(correction, i, j);
+					}
+				}
+			}
+		});
+		
+		return copy;
+	}
+	
+	
+	/**
+	 * Get the corrected distances in a direct buffer that is passed to the "Clearcut" library
+	 * (see {@link Clearcut#createDistanceBuffer(int)}).
+	 * */
+	private FloatBuffer getCorrectionBuffer(final byte correction){
+		
+		final FloatBuffer distances = Clearcut.createDistanceBuffer(size);
+		
+		ParallelFill.fill(1, size, config.getDmThreadCount(), new ParallelFill.RowFiller(){
+			@Override
+			void fillRows(int from, int to) {
+				int cell = (int)TriangularStorage.cellIndex(from, 0);
+				for (int i=from; i<to; i++){
+					for (int j=0; j<i; j++){
+						distances.put(cell++, getCorrectionDistance(correction, i, j));
+					}
+				}
+			}
+		});
+		
+		return distances;
+	}
+	
+	
 	private float getCorrectionDistance(byte correction, int i, int j){
 		
 		switch (correction){
@@ -738,7 +802,23 @@ public class Matrix {
 	}
 	
 	
-	public short getSize(){
+	/**
+	 * @return weights of the sites (see DNAPreprocessor) or null if each site has weight 1
+	 * */
+	public int[] getSiteWeights(){
+		return mutationManager.getSiteWeights();
+	}
+	
+	
+	/**
+	 * Get the weight of a site (position counted from 0).
+	 * */
+	public int getSiteWeight(int index){
+		return mutationManager.getSiteWeight(index);
+	}
+	
+	
+	public int getSize(){
 		return size;
 	}
 	
@@ -794,9 +874,7 @@ public class Matrix {
 		
 		try {
 			map.clear();
-			for (int i=0; i<matrix.length; i++){
-				matrix[i] = null;
-			}
+			matrix.clear();
 			
 			size = 0;
 		} catch (Exception ex){
@@ -0,0 +1,148 @@
+package dmatrix;
+
+
+/**
+ * The distances of the leafs of an NJ tree (NJ matrix) that are computed from the tree on demand,
+ * the matrix is not stored.
+ *
+ * The distance of leafs i, j is depth(i) + depth(j) - 2*depth(lca(i,j)) where depth is the distance from the root
+ * and lca is the lowest common ancestor. The lowest common ancestor is found in constant time as the vertex
+ * with the minimum level between the first occurrences of the leafs in the Euler tour of the tree
+ * (range minimum query answered by a sparse table).
+ *
+ * The NJ tree is given by the parents of its vertices: the leafs are 0..size-1 (the indices in the matrix),
+ * the internal vertices follow.
+ * */
+class NJTreeDMatrix extends DMatrix {
+
+	/* the distance of a vertex from the root */
+	private final double depth[];
+
+	/* the level of a vertex (the root has level 0) */
+	private final int level[];
+
+	/* the first occurrence of a leaf in the Euler tour */
+	private final int first[];
+
+	/* sparse[k][i] ~ the vertex with the minimum level among the vertices of the Euler tour at i, .., i + 2^k - 1 */
+	private final int sparse[][];
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param smatrix matrix from which are taken vertices` positions (hashmap)
+	 * @param parent the parent of each vertex of the NJ tree, -1 ~ the root
+	 * @param length the length of the edge from a vertex to its parent
+	 * @param vertexCount the number of vertices of the NJ tree
+	 * */
+	NJTreeDMatrix(Matrix smatrix, int parent[], float length[], int vertexCount){
+
+		super(smatrix);
+
+		depth = new double[vertexCount];
+		level = new int[vertexCount];
+		first = new int[getSize()];
+
+		if (vertexCount == 0){
+			sparse = new int[0][];
+			return;
+		}
+
+		/* children of the vertices: children[childStart[v]], .., children[childStart[v+1] - 1] */
+		int childStart[] = new int[vertexCount + 1];
+		int children[] = new int[Math.max(vertexCount - 1, 0)];
+		int root = -1;
+		for (int v=0; v<vertexCount; v++){
+			if (parent[v] == -1){
+				root = v;
+			} else {
+				childStart[parent[v] + 1]++;
+			}
+		}
+		for (int v=0; v<vertexCount; v++){
+			childStart[v + 1] += childStart[v];
+		}
+		int fill[] = new int[vertexCount];
+		for (int v=0; v<vertexCount; v++){
+			if (parent[v] != -1){
+				children[childStart[parent[v]] + fill[parent[v]]++] = v;
+			}
+		}
+
+		/* Euler tour (DFS without recursion, the tree can be deep) */
+		int tour[] = new int[2*vertexCount - 1];
+		int tourLength = 0;
+		int stack[] = new int[vertexCount];
+		int nextChild[] = fill;
+		int top = 0;
+		int vertex;
+		int child;
+
+		stack[0] = root;
+		nextChild[root] = childStart[root];
+		tour[tourLength++] = root;
+		if (root < first.length){
+			first[root] = 0;
+		}
+
+		while (top >= 0){
+			vertex = stack[top];
+			if (nextChild[vertex] < childStart[vertex + 1]){
+				child = children[nextChild[vertex]++];
+				depth[child] = depth[vertex] + length[child];
+				level[child] = level[vertex] + 1;
+				nextChild[child] = childStart[child];
+				stack[++top] = child;
+				if (child < first.length){
+					first[child] = tourLength;
+				}
+				tour[tourLength++] = child;
+			} else {
+				top--;
+				if (top >= 0){
+					tour[tourLength++] = stack[top];
+				}
+			}
+		}
+
+		/* sparse table */
+		int levels = 32 - Integer.numberOfLeadingZeros(tourLength);
+		sparse = new int[levels][];
+		sparse[0] = tour;
+		int previous[];
+		int current[];
+		int half;
+		for (int k=1; k<levels; k++){
+			previous = sparse[k - 1];
+			half = 1 << (k - 1);
+			current = new int[tourLength - (1 << k) + 1];
+			for (int i=0; i<current.length; i++){
+				current[i] = minLevel(previous[i], previous[i + half]);
+			}
+			sparse[k] = current;
+		}
+	}
+
+
+	@Override
+	public float getDistance(int indexV0, int indexV1){
+
+		if (indexV0 == indexV1){
+			return 0.0f;
+		}
+
+		int from = Math.min(first[indexV0], first[indexV1]);
+		int to = Math.max(first[indexV0], first[indexV1]);
+		int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+		int ancestor = minLevel(sparse[k][from], sparse[k][to - (1 << k) + 1]);
+
+		return (float)(depth[indexV0] + depth[indexV1] - 2*depth[ancestor]);
+	}
+
+
+	private int minLevel(int vertex0, int vertex1){
+		return (level[vertex0] <= level[vertex1]) ? vertex0 : vertex1;
+	}
+
+}
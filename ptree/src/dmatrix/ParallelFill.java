@@ -0,0 +1,131 @@
+package dmatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Fills rows of a lower triangular matrix using a pool of threads.
+ *
+ * Row i of the matrix contains i cells, therefore the rows are split into blocks
+ * that contain approximately the same number of cells. Each cell is computed by exactly one
+ * thread, so the result doesn`t depend on the number of threads or on the order in which
+ * the blocks are processed.
+ * */
+class ParallelFill {
+
+	/* the number of blocks per thread (more blocks ~ better load balancing) */
+	private static final int BLOCKS_PER_THREAD = 4;
+
+	/* if a matrix has less cells, it is filled in the calling thread */
+	private static final long MIN_PARALLEL_CELL_COUNT = 4096;
+
+	/* pool of threads that is shared by all matrices */
+	private static ExecutorService executor = null;
+
+	private static int executorThreadCount = 0;
+
+
+	/**
+	 * Computes the values of a range of rows.
+	 * */
+	static abstract class RowFiller {
+
+		/**
+		 * Compute the values of rows: from, from + 1, .., to - 1.
+		 * */
+		abstract void fillRows(int from, int to);
+	}
+
+
+	/**
+	 * Get the pool of threads that contains at least threadCount threads.
+	 * */
+	private static synchronized ExecutorService getExecutor(int threadCount){
+
+		if ((executor == null) || (executorThreadCount < threadCount)){
+
+			if (executor != null){
+				executor.shutdown();
+			}
+
+			executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "dmatrix-fill");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executorThreadCount = threadCount;
+		}
+		return executor;
+	}
+
+
+	/**
+	 * Fill rows: from, from + 1, .., to - 1 of a lower triangular matrix.
+	 *
+	 * @param threadCount the number of threads that should be used (1 ~ fill the rows in the calling thread)
+	 * */
+	static void fill(int from, int to, int threadCount, final RowFiller filler){
+
+		long cellCount = 0;
+		for (int i=from; i<to; i++){
+			cellCount += i;
+		}
+
+		if ((threadCount <= 1) || (cellCount < MIN_PARALLEL_CELL_COUNT)){
+			filler.fillRows(from, to);
+			return;
+		}
+
+		/* split the rows into blocks of approximately the same number of cells */
+		long blockCellCount = cellCount/(threadCount*BLOCKS_PER_THREAD) + 1;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(threadCount*BLOCKS_PER_THREAD + 1);
+		int blockStart = from;
+		long cells = 0;
+
+		for (int i=from; i<to; i++){
+			cells += i;
+			if ((cells >= blockCellCount) || (i == to - 1)){
+				final int rowFrom = blockStart;
+				final int rowTo = i + 1;
+				tasks.add(new Callable<Object>(){
+					@Override
+					public Object call() throws Exception {
+						filler.fillRows(rowFrom, rowTo);
+						return null;
+					}
+				});
+				blockStart = i + 1;
+				cells = 0;
+			}
+		}
+
+		try {
+			List<Future<Object>> futures = getExecutor(threadCount).invokeAll(tasks);
+			for (Future<Object> future : futures){
+				future.get();
+			}
+		} catch (InterruptedException ex){
+			Log log = LogFactory.getLog(ParallelFill.class);
+			log.error("Filling of the distance matrix was interrupted.", ex);
+			System.exit(-1);
+		} catch (ExecutionException ex){
+			Log log = LogFactory.getLog(ParallelFill.class);
+			log.error("Filling of the distance matrix failed.", ex.getCause());
+			System.exit(-1);
+		}
+	}
+
+}
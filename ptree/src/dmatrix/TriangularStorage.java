@@ -0,0 +1,63 @@
+package dmatrix;
+
+
+/**
+ * Storage of a lower triangular matrix with values of type short.
+ *
+ * The matrix is stored row by row as one flat sequence of cells,
+ * cell (i,j) where j < i has index i*(i-1)/2 + j. Cell indices are of type long,
+ * therefore the number of rows is not limited by the maximum length of an array.
+ * */
+public abstract class TriangularStorage {
+
+	/**
+	 * Get the index of cell (row,column) where column < row.
+	 * */
+	public static long cellIndex(int row, int column){
+		return ((((long)row)*(row - 1)) >>> 1) + column;
+	}
+
+
+	/**
+	 * Get the number of cells of a matrix with the given number of rows.
+	 * */
+	public static long cellCount(int rows){
+		return (((long)rows)*(rows - 1)) >>> 1;
+	}
+
+
+	/**
+	 * Get the value of cell (row,column) where column < row.
+	 * */
+	public final short get(int row, int column){
+		return get(cellIndex(row, column));
+	}
+
+
+	/**
+	 * Set the value of cell (row,column) where column < row.
+	 * */
+	public final void set(int row, int column, short value){
+		set(cellIndex(row, column), value);
+	}
+
+
+	public abstract short get(long cell);
+
+
+	public abstract void set(long cell, short value);
+
+
+	/**
+	 * Make sure that the storage can hold a matrix with the given number of rows.
+	 * The values of the cells that are already stored are preserved.
+	 * */
+	public abstract void ensureRowCapacity(int rows);
+
+
+	/**
+	 * Release the storage.
+	 * */
+	public abstract void clear();
+
+}
@@ -0,0 +1,477 @@
+package fitchcost;
+
+import java.util.List;
+
+
+/**
+ * Computes the fitch cost (unit costs) of a tree, it gives the same cost as {@link SankoffAlg#getCost()}
+ * but it doesn`t reconstruct the sequences of the internal vertices.
+ *
+ * The set of possible states of a vertex is stored as a bitmask: each site has one bit per character,
+ * the sites are packed into 64-bit words (16 sites per word for 4 characters).
+ * A vertex with two children is processed by the Fitch rule (intersection, or union if the intersection is empty),
+ * a vertex with more children by the Hartigan rule (states that occur in the most children),
+ * the counts of the states are computed with bit-sliced counters.
+ * As in the Sankoff algorithm, only the sequences of the leaves are taken into account and the ignore character
+ * of a leaf matches any character.
+ * The sites can be weighted, the cost of a site is then multiplied by its weight.
+ * The sets and the costs of subtrees can be cached and reused for other trees, see {@link BitFitchCache}.
+ * */
+public class BitFitchAlg {
+
+	/* the maximum number of characters, one site must fit into one word */
+	private static final int MAX_CHARS = 64;
+
+	/* characters that are allowed in the sequences (null ~ not collected yet) */
+	private byte[] chars;
+
+	/* whether the characters are collected from the sequences (or given by the user) */
+	private final boolean charsCollected;
+
+	/* a character that is ignored */
+	private byte ignoreChar;
+
+	/* root of a tree */
+	private SankoffAlgVertex root;
+
+	/* weights of the sites or null (each site has weight 1) */
+	private int[] siteWeights = null;
+
+	/* a cache of the subtrees or null */
+	private BitFitchCache cache = null;
+
+	/* whether a leaf contains a character that is not in the characters taken from the cache */
+	private boolean unknownCharFound;
+
+	/* map: character -> index of the character (bit of a site) or -1 */
+	private int charIndex[];
+
+	/* the number of sites stored in one word */
+	private int sitesPerWord;
+
+	private int wordCount;
+
+	/* all bits of one site */
+	private long siteMask;
+
+	/* the lowest bit of each site in a full word and in the last word */
+	private long lowMask;
+	private long lastLowMask;
+
+	private long cost = 0;
+
+	private boolean computeCostsRun = false;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chars character allowed in the sequences
+	 * (can be null - the alg. will consider all except for ignore char)
+	 * @param ignoreChar a character that is ignored in the sequences
+	 * @param root the root of the input tree
+	 * */
+	public BitFitchAlg(byte[] chars, byte ignoreChar, SankoffAlgVertex root){
+
+		this.ignoreChar = ignoreChar;
+		this.root = root;
+
+		/* the characters contained in the sequences are collected when the cost is computed */
+		this.chars = chars;
+		this.charsCollected = (chars == null);
+	}
+
+
+	/**
+	 * Set the weights of the sites, the cost of a site is multiplied by its weight.
+	 *
+	 * @param siteWeights the weights or null (each site has weight 1)
+	 * */
+	public void setSiteWeights(int[] siteWeights){
+		this.siteWeights = siteWeights;
+	}
+
+
+	/**
+	 * Set a cache of the subtrees, the subtrees of the tree that are in the cache are not computed again.
+	 *
+	 * @param cache the cache or null
+	 * */
+	public void setCache(BitFitchCache cache){
+		this.cache = cache;
+	}
+
+
+	/**
+	 * Find out which characters are contained in the sequences (except for the ignoreChar).
+	 *
+	 * @param initChars characters that are added to the result or null
+	 * */
+	private byte[] collectChars(byte[] initChars){
+		boolean contained[] = new boolean[256];
+		if (initChars != null){
+			for (int i=0; i<initChars.length; i++){
+				contained[initChars[i] & 0xff] = true;
+			}
+		}
+		collectChars(root, contained);
+		int count = 0;
+		for (int i=0; i<contained.length; i++){
+			if (contained[i]){
+				count++;
+			}
+		}
+		byte[] array = new byte[count];
+		count = 0;
+		for (int i=0; i<contained.length; i++){
+			if (contained[i]){
+				array[count++] = (byte)i;
+			}
+		}
+		return array;
+	}
+
+
+	/**
+	 * Collect chars that are contained in the sequences of the leaves (except for the ignoreChar)
+	 * */
+	private void collectChars(SankoffAlgVertex vertex, boolean[] contained){
+
+		if (vertex.isLeaf()){
+			byte[] array = vertex.getDnaAsBytes();
+			for (int i=0; i<array.length; i++){
+				if (array[i] != ignoreChar){
+					contained[array[i] & 0xff] = true;
+				}
+			}
+		} else {
+			List<SankoffAlgVertex> children = vertex.getChildren();
+			for (int i=0; i<children.size(); i++){
+				collectChars(children.get(i), contained);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the fitch cost.
+	 * */
+	public int getCost(){
+		if (!computeCostsRun){
+			computeCosts();
+			computeCostsRun = true;
+		}
+		return (int)cost;
+	}
+
+
+	private void computeCosts(){
+
+		if (chars == null){
+			if ((cache != null) && (cache.getChars() != null) && (cache.getChars().length > 0)){
+				/* the characters of the cache, they are extended if a leaf contains another character */
+				chars = cache.getChars();
+			} else {
+				chars = collectChars(null);
+			}
+		}
+
+		unknownCharFound = false;
+		computeCostsForChars();
+
+		if (unknownCharFound){
+			chars = collectChars(chars);
+			unknownCharFound = false;
+			computeCostsForChars();
+		}
+	}
+
+
+	private void computeCostsForChars(){
+
+		int charCount = chars.length;
+
+		if (charCount > MAX_CHARS){
+			/* a site doesn`t fit into one word */
+			SankoffAlg sankoffAlg = new SankoffAlg(chars, ignoreChar, root);
+			sankoffAlg.setSiteWeights(siteWeights);
+			cost = sankoffAlg.getCost();
+			return;
+		}
+
+		if (charCount == 0){
+			/* all sites are ignored */
+			cost = 0;
+			return;
+		}
+
+		charIndex = new int[256];
+		for (int i=0; i<charIndex.length; i++){
+			charIndex[i] = -1;
+		}
+		for (int i=0; i<charCount; i++){
+			charIndex[chars[i] & 0xff] = i;
+		}
+
+		int seqLength = root.getDnaAsBytes().length;
+
+		sitesPerWord = MAX_CHARS / charCount;
+		wordCount = (seqLength + sitesPerWord - 1) / sitesPerWord;
+		siteMask = (charCount == MAX_CHARS) ? -1L : ((1L << charCount) - 1);
+
+		lowMask = 0;
+		for (int i=0; i<sitesPerWord; i++){
+			lowMask |= 1L << (i*charCount);
+		}
+		lastLowMask = 0;
+		for (int i=0; i<seqLength - (wordCount - 1)*sitesPerWord; i++){
+			lastLowMask |= 1L << (i*charCount);
+		}
+
+		cost = 0;
+		if (cache == null){
+			computeStates(root);
+		} else {
+			if (!cache.isCompatible(chars, charsCollected, ignoreChar, siteWeights, seqLength)){
+				cache.reset(chars, charsCollected, ignoreChar, siteWeights, seqLength, wordCount);
+			}
+			cost = computeEntry(root).cost;
+		}
+	}
+
+
+	private long getLowMask(int word){
+		return (word == wordCount - 1) ? lastLowMask : lowMask;
+	}
+
+
+	/**
+	 * Get the sum of the weights of the sites of a word.
+	 *
+	 * @param sites the lowest bit of each site that is counted
+	 * */
+	private long getWeight(long sites, int word){
+		if (siteWeights == null){
+			return Long.bitCount(sites);
+		}
+		long weight = 0;
+		int bit;
+		while (sites != 0){
+			bit = Long.numberOfTrailingZeros(sites);
+			weight += siteWeights[word*sitesPerWord + bit/chars.length];
+			sites &= sites - 1;
+		}
+		return weight;
+	}
+
+
+	/**
+	 * Get the lowest bit of each site that contains at least one bit.
+	 * */
+	private long getNonEmptySites(long bits, long low){
+		long nonEmpty = 0;
+		for (int i=0; i<chars.length; i++){
+			nonEmpty |= bits >>> i;
+		}
+		return nonEmpty & low;
+	}
+
+
+	/**
+	 * Compute the sets of possible states of a vertex and add the cost of its subtree.
+	 *
+	 * @return the sets of states (the array can be reused by the caller)
+	 * */
+	private long[] computeStates(SankoffAlgVertex vertex){
+
+		if (vertex.isLeaf()){
+			return getLeafStates(vertex.getDnaAsBytes());
+		}
+
+		List<SankoffAlgVertex> children = vertex.getChildren();
+
+		switch (children.size()){
+		case 0: {
+			/* any state */
+			long states[] = new long[wordCount];
+			for (int w=0; w<wordCount; w++){
+				states[w] = getLowMask(w)*siteMask;
+			}
+			return states;
+		}
+		case 1:
+			return computeStates(children.get(0));
+		case 2:
+			return computeFitch(computeStates(children.get(0)), computeStates(children.get(1)));
+		default: {
+			long childStates[][] = new long[children.size()][];
+			for (int i=0; i<children.size(); i++){
+				childStates[i] = computeStates(children.get(i));
+			}
+			return computeHartigan(childStates);
+		}
+		}
+	}
+
+
+	/**
+	 * Get the set of states and the cost of the subtree of a vertex from the cache,
+	 * the subtree is computed and stored in the cache if it isn`t there.
+	 * */
+	private BitFitchCache.Entry computeEntry(SankoffAlgVertex vertex){
+
+		BitFitchCache.Entry entry;
+
+		if (vertex.isLeaf()){
+			BitFitchCache.LeafKey leafKey = new BitFitchCache.LeafKey(vertex.getDnaAsBytes());
+			entry = cache.get(leafKey);
+			if (entry == null){
+				entry = new BitFitchCache.Entry(getLeafStates(vertex.getDnaAsBytes()), 0);
+				cache.put(leafKey.copy(), entry);
+			}
+			return entry;
+		}
+
+		List<SankoffAlgVertex> children = vertex.getChildren();
+
+		switch (children.size()){
+		case 0:
+			return new BitFitchCache.Entry(computeStates(vertex), 0);
+		case 1:
+			return computeEntry(children.get(0));
+		default: {
+			BitFitchCache.Entry childEntries[] = new BitFitchCache.Entry[children.size()];
+			long childCost = 0;
+			for (int i=0; i<children.size(); i++){
+				childEntries[i] = computeEntry(children.get(i));
+				childCost += childEntries[i].cost;
+			}
+
+			BitFitchCache.NodeKey nodeKey = new BitFitchCache.NodeKey(childEntries);
+			entry = cache.get(nodeKey);
+			if (entry == null){
+				/* the cost of the vertex is added to the field cost, the sets of the children are not changed */
+				long costBefore = cost;
+				long states[];
+				if (childEntries.length == 2){
+					states = computeFitch(childEntries[0].states.clone(), childEntries[1].states);
+				} else {
+					long childStates[][] = new long[childEntries.length][];
+					childStates[0] = childEntries[0].states.clone();
+					for (int i=1; i<childEntries.length; i++){
+						childStates[i] = childEntries[i].states;
+					}
+					states = computeHartigan(childStates);
+				}
+				entry = new BitFitchCache.Entry(states, childCost + cost - costBefore);
+				cache.put(nodeKey, entry);
+			}
+			return entry;
+		}
+		}
+	}
+
+
+	private long[] getLeafStates(byte[] seq){
+
+		long states[] = new long[wordCount];
+		int index;
+		long bits;
+
+		for (int i=0; i<seq.length; i++){
+			index = charIndex[seq[i] & 0xff];
+			if ((index == -1) || (seq[i] == ignoreChar)){
+				if ((index == -1) && (seq[i] != ignoreChar) && charsCollected){
+					/* the character is not in the characters taken from the cache */
+					unknownCharFound = true;
+				}
+				/* matches any character */
+				bits = siteMask;
+			} else {
+				bits = 1L << index;
+			}
+			states[i / sitesPerWord] |= bits << ((i % sitesPerWord)*chars.length);
+		}
+
+		return states;
+	}
+
+
+	/**
+	 * Fitch rule for a vertex with two children, the result is stored in the first array.
+	 * */
+	private long[] computeFitch(long[] states0, long[] states1){
+
+		long intersection;
+		long low;
+		long empty;
+
+		for (int w=0; w<wordCount; w++){
+
+			low = getLowMask(w);
+			intersection = states0[w] & states1[w];
+			empty = ~getNonEmptySites(intersection, low) & low;
+
+			cost += getWeight(empty, w);
+			states0[w] = intersection | ((states0[w] | states1[w]) & (empty*siteMask));
+		}
+
+		return states0;
+	}
+
+
+	/**
+	 * Hartigan rule for a vertex with more children, the result is stored in the first array.
+	 * The states that occur in the most children are taken, the cost is (#children - #occurrences).
+	 * */
+	private long[] computeHartigan(long[][] childStates){
+
+		int childCount = childStates.length;
+		int planeCount = 32 - Integer.numberOfLeadingZeros(childCount);
+
+		/* bit-sliced counters: bit p of the count of a state is stored in plane p */
+		long planes[] = new long[planeCount];
+		long carry;
+		long t;
+		long low;
+		long candidates;
+		long bits;
+		long found;
+		long maxSum;
+
+		for (int w=0; w<wordCount; w++){
+
+			for (int p=0; p<planeCount; p++){
+				planes[p] = 0;
+			}
+
+			/* count the states */
+			for (int k=0; k<childCount; k++){
+				carry = childStates[k][w];
+				for (int p=0; p<planeCount && carry != 0; p++){
+					t = planes[p] & carry;
+					planes[p] ^= carry;
+					carry = t;
+				}
+			}
+
+			/* find the states with the maximum count, from the highest bit of the counters */
+			low = getLowMask(w);
+			candidates = low*siteMask;
+			maxSum = 0;
+
+			for (int p=planeCount-1; p>=0; p--){
+				bits = planes[p] & candidates;
+				found = getNonEmptySites(bits, low);
+				candidates = (candidates & ~(found*siteMask)) | bits;
+				maxSum += getWeight(found, w) << p;
+			}
+
+			cost += childCount*getWeight(low, w) - maxSum;
+			childStates[0][w] = candidates;
+		}
+
+		return childStates[0];
+	}
+
+}
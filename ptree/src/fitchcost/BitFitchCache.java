@@ -0,0 +1,205 @@
+package fitchcost;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Caches the sets of possible states and the costs of subtrees computed by {@link BitFitchAlg}.
+ *
+ * A subtree is identified by its content: a leaf by its sequence, an internal vertex by the cached
+ * subtrees of its children. Therefore the same subtree of two different trees has the same entry and
+ * a tree that differs from a previously scored tree only in some vertices is re-scored only
+ * along the paths from the changed vertices to the root.
+ *
+ * The cached sets depend on the characters, the ignore character and the weights of the sites,
+ * the cache is cleared if a tree needs different ones. The least recently used entries are removed
+ * if the cache is full. One cache must not be used by more threads at the same time.
+ * */
+public class BitFitchCache {
+
+	/* the number of trees whose subtrees are kept in the cache */
+	private static final int CACHED_TREES = 4;
+
+	/* the maximum number of words of all cached sets of states */
+	private static final long MAX_CACHED_WORDS = 1L << 24;
+
+	/* the number of vertices of a tree */
+	private final int vertexCount;
+
+	/* characters (bits of a site) of the cached sets or null if the cache is empty */
+	private byte[] chars = null;
+
+	/* whether the characters were collected from the sequences (or given by the user) */
+	private boolean charsCollected;
+
+	private byte ignoreChar;
+
+	private int[] siteWeights;
+
+	private int seqLength;
+
+	private int maxEntries;
+
+	/* map: subtree (LeafKey or NodeKey) -> entry */
+	private Map<Object, Entry> map;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param vertexCount the number of vertices of a tree
+	 * */
+	public BitFitchCache(int vertexCount){
+		this.vertexCount = Math.max(1, vertexCount);
+		this.maxEntries = CACHED_TREES*this.vertexCount;
+		createMap();
+	}
+
+
+	private void createMap(){
+		map = new LinkedHashMap<Object, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest){
+				return size() > maxEntries;
+			}
+		};
+	}
+
+
+	/**
+	 * Whether the cached sets were computed with the same characters, ignore character and weights.
+	 * */
+	boolean isCompatible(byte[] chars, boolean charsCollected, byte ignoreChar, int[] siteWeights, int seqLength){
+		return (this.chars != null) && Arrays.equals(this.chars, chars) && (this.charsCollected == charsCollected)
+			&& (this.ignoreChar == ignoreChar) && (this.siteWeights == siteWeights) && (this.seqLength == seqLength);
+	}
+
+
+	/**
+	 * Remove all entries and set the characters, ignore character and weights of the sets that will be cached.
+	 *
+	 * @param wordCount the number of words of one set of states
+	 * */
+	void reset(byte[] chars, boolean charsCollected, byte ignoreChar, int[] siteWeights, int seqLength, int wordCount){
+		this.chars = chars;
+		this.charsCollected = charsCollected;
+		this.ignoreChar = ignoreChar;
+		this.siteWeights = siteWeights;
+		this.seqLength = seqLength;
+		this.maxEntries = (int)Math.max(1, Math.min(CACHED_TREES*vertexCount, MAX_CACHED_WORDS/Math.max(1, wordCount)));
+		createMap();
+	}
+
+
+	/**
+	 * Get the characters of the cached sets or null if the cache is empty.
+	 * */
+	byte[] getChars(){
+		return chars;
+	}
+
+
+	Entry get(Object key){
+		return map.get(key);
+	}
+
+
+	void put(Object key, Entry entry){
+		map.put(key, entry);
+	}
+
+
+	/**
+	 * The set of possible states and the cost of a subtree.
+	 * */
+	static class Entry {
+
+		final long[] states;
+
+		final long cost;
+
+		Entry(long[] states, long cost){
+			this.states = states;
+			this.cost = cost;
+		}
+	}
+
+
+	/**
+	 * A leaf identified by its sequence.
+	 * */
+	static class LeafKey {
+
+		private final byte[] seq;
+
+		private final int hashCode;
+
+		LeafKey(byte[] seq){
+			this.seq = seq;
+			this.hashCode = Arrays.hashCode(seq);
+		}
+
+		/**
+		 * The sequence is copied when the key is stored, since the sequences can be changed in place.
+		 * */
+		LeafKey copy(){
+			return new LeafKey(seq.clone());
+		}
+
+		@Override
+		public boolean equals(Object o){
+			return (o instanceof LeafKey) && (hashCode == ((LeafKey)o).hashCode) && Arrays.equals(seq, ((LeafKey)o).seq);
+		}
+
+		@Override
+		public int hashCode(){
+			return hashCode;
+		}
+	}
+
+
+	/**
+	 * An internal vertex identified by the entries of its children.
+	 * */
+	static class NodeKey {
+
+		private final Entry[] children;
+
+		private final int hashCode;
+
+		NodeKey(Entry[] children){
+			this.children = children;
+			int hash = 1;
+			for (int i=0; i<children.length; i++){
+				hash = 31*hash + System.identityHashCode(children[i]);
+			}
+			this.hashCode = hash;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof NodeKey)){
+				return false;
+			}
+			Entry[] other = ((NodeKey)o).children;
+			if (other.length != children.length){
+				return false;
+			}
+			for (int i=0; i<children.length; i++){
+				if (other[i] != children[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode(){
+			return hashCode;
+		}
+	}
+
+}
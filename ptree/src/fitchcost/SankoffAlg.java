@@ -18,6 +18,9 @@ public class SankoffAlg {
 	/* root of a tree */
 	private SVertex sroot;
 	
+	/* weights of the sites or null (each site has weight 1) */
+	private int[] siteWeights = null;
+	
 	boolean computeCostsRun = false;
 	boolean assignAndSetSequencesRun = false;
 	
@@ -49,6 +52,16 @@ public class SankoffAlg {
 		
 		this.sroot = SVertex.getTree(root);
 	}
+	
+	
+	/**
+	 * Set the weights of the sites, the cost of a site is multiplied by its weight.
+	 * 
+	 * @param siteWeights the weights or null (each site has weight 1)
+	 * */
+	public void setSiteWeights(int[] siteWeights){
+		this.siteWeights = siteWeights;
+	}
 
 	
 	/**
@@ -294,7 +307,11 @@ public class SankoffAlg {
 	private int getCost(SVertex root){
 		int cost = 0;
 		for (int i=0; i<root.seq.length; i++){
-			cost += root.cost[i][getIndexOfMin(root.cost[i],-1)];
+			if (siteWeights == null){
+				cost += root.cost[i][getIndexOfMin(root.cost[i],-1)];
+			} else {
+				cost += siteWeights[i]*root.cost[i][getIndexOfMin(root.cost[i],-1)];
+			}
 		}
 		
 		return cost;
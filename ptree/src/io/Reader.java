@@ -1,127 +1,505 @@
 package io;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import ptree.Vertex;
 
-
-import com.csvreader.CsvReader;
 import common.Configuration;
 
 
 /**
  * Manages reading of multiple input sets from one file.
  * Create an instance, open a file, then read inputs one by one, close the file.
+ *
+ * The file is read as a stream of bytes (a memory-mapped file or a gzip file) and the sequences
+ * are decoded directly into byte arrays, no strings are created for the sequences.
+ *
+ * An input set is either in the PHYLIP format (sequential or interleaved) or in the FASTA format.
+ * The PHYLIP header contains the number of sequences and optionally the length of the sequences,
+ * a sequence is on one line if the length is not given. The interleaved format is used if it is set
+ * in the configuration or the header contains the option "I". The FASTA input sets start with ">"
+ * and are separated by an empty line.
+ *
+ * The name and the sequence are separated by whitespace or by the csv delimiter, the names are decoded
+ * using the csv char set (see {@link Configuration#getCsvDelimiter()}, {@link Configuration#getCsvCharSet()}).
  * */
 public class Reader {
 
+	/* the size of a part of a file that is mapped into the memory at once */
+	private static final int MAPPED_WINDOW_SIZE = 1 << 26;
+
+	/* the size of the buffer of a gzip file */
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
 	private Configuration config;
-	private CsvReader seqReader;
-	
+
+	private FileInputStream fileStream;
+
+	/* the channel of a file that is mapped into the memory (null ~ gzip file) */
+	private FileChannel channel;
+
+	/* position in the file where the next mapped part starts */
+	private long channelPosition;
+
+	/* the stream of a gzip file (null ~ the file is mapped into the memory) */
+	private InputStream gzipStream;
+
+	/* the current part of the file */
+	private ByteBuffer buffer;
+
+	/* buffer for the sequences of an unknown length */
+	private byte[] seqBuffer = new byte[1024];
+
+	/* buffer for the names */
+	private byte[] tokenBuffer = new byte[64];
+
+	/* the delimiter of the name and the sequence (besides whitespace) */
+	private final int delimiter;
+
+	/* the char set of the names */
+	private final Charset charSet;
+
 	private Log log;
-	
+
 	/**
 	 * Constructor.
 	 * */
 	public Reader(Configuration config){
 		this.config = config;
+		this.delimiter = config.getCsvDelimiter();
+		this.charSet = Charset.forName(config.getCsvCharSet());
 		log = LogFactory.getLog(Reader.class);
 	}
-	
-	
+
+
 	/**
 	 * Open a given file for reading.
 	 * */
 	public boolean open(File inputFile){
-		
+
 		try {
-			
-			/* file name, csv delimiter, char set */
-			seqReader = new CsvReader(inputFile.getPath(), config.getCsvDelimiter(), 
-					Charset.forName(config.getCsvCharSet()));
-			
+
+			fileStream = new FileInputStream(inputFile);
+			channel = fileStream.getChannel();
+			channelPosition = 0;
+			buffer = ByteBuffer.allocate(0);
+
+			/* gzip file starts with bytes 0x1f 0x8b */
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			channel.read(magic, 0);
+			if ((magic.position() == 2) && (magic.get(0) == (byte)0x1f) && (magic.get(1) == (byte)0x8b)){
+				gzipStream = new GZIPInputStream(fileStream, STREAM_BUFFER_SIZE);
+				channel = null;
+				buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+				buffer.limit(0);
+			}
+
 			return true;
-			
+
 		} catch (FileNotFoundException ex){
 			log.error("File not found exception. (" + inputFile.getPath() + ")",ex);
 			return false;
+		} catch (IOException ex){
+			log.error("IOException occured. (" + inputFile.getPath() + ")",ex);
+			return false;
 		}
-			
+
 	}
-	
-	
+
+
 	/**
 	 * Reads one input set from a file (only name, DNA).
 	 * @return set of vertices or null
 	 * */
 	public List<Vertex> getNextInputSet(){
-		
-		String name;
-		String dna;
-		int count;
-		List<Vertex> list = null;
-		
+
 		try {
-			
-			if (!seqReader.readRecord()){
-				return null;
-			}
-			
-			StringTokenizer stringTokenizer = new StringTokenizer(seqReader.get(0));
-			
-			if (!stringTokenizer.hasMoreElements()){
-				return null;
-			}
-			
-			try {
-				count = new Integer(stringTokenizer.nextToken());
-			} catch (Exception e){
-				return null;
-			}
-			
-			list = new ArrayList<Vertex>(count*2);
-			
-			while(seqReader.readRecord()){
-				
-				stringTokenizer = new StringTokenizer(seqReader.get(0));
-				if (seqReader.getColumnCount() == 1){
-					stringTokenizer = new StringTokenizer(seqReader.get(0));
-				} else {
-					stringTokenizer = new StringTokenizer(seqReader.get(0) + " " + seqReader.get(1));
-				}
-				
-				name = stringTokenizer.nextToken();
-				dna = stringTokenizer.nextToken();
-				list.add(new Vertex(name,dna));
-				
-				count--;
-				if (count == 0){
-					break;
+
+			return readInputSet(true);
+
+		} catch (IOException ex){
+			log.error("IOException occured.",ex);
+			return null;
+		}
+	}
+
+
+	/**
+	 * Skip input sets, the skipped sets are only scanned (the vertices are not created).
+	 *
+	 * @param count the number of input sets to skip
+	 * @return the number of input sets that have been skipped (less than count ~ end of the file)
+	 * */
+	public int skipInputSets(int count){
+
+		try {
+
+			for (int i=0; i<count; i++){
+				if (readInputSet(false) == null){
+					return i;
 				}
-				
 			}
-			
+			return count;
+
 		} catch (IOException ex){
 			log.error("IOException occured.",ex);
-			return null;
+			return 0;
 		}
-		
-		return list;
 	}
-	
-	
+
+
 	/** Close a file. */
 	public void close(){
-		seqReader.close();
+		try {
+			if (gzipStream != null){
+				gzipStream.close();
+			}
+			fileStream.close();
+		} catch (IOException ex){
+			log.error("IOException occured.",ex);
+		}
+		buffer = null;
 	}
-	
+
+
+	/**
+	 * Read one input set.
+	 *
+	 * @param store false ~ the input set is only skipped (an empty list is returned)
+	 * @return set of vertices or null (end of the file or wrong header)
+	 * */
+	private List<Vertex> readInputSet(boolean store) throws IOException {
+
+		skipWhitespace();
+		if (peek() == -1){
+			return null;
+		}
+
+		if (peek() == '>'){
+			return readFasta(store);
+		}
+
+		/* header: count [length] [options] */
+		StringTokenizer stringTokenizer = new StringTokenizer(readLine(), " \t\r\f" + (char)delimiter);
+
+		if (!stringTokenizer.hasMoreElements()){
+			return null;
+		}
+
+		int count;
+		int length = -1;
+		boolean interleaved = config.getInterleavedInput();
+
+		try {
+			count = Integer.parseInt(stringTokenizer.nextToken());
+			if (stringTokenizer.hasMoreElements()){
+				length = Integer.parseInt(stringTokenizer.nextToken());
+			}
+		} catch (Exception e){
+			return null;
+		}
+		while (stringTokenizer.hasMoreElements()){
+			String option = stringTokenizer.nextToken();
+			if (option.equalsIgnoreCase("I")){
+				interleaved = true;
+			} else if (option.equalsIgnoreCase("S")){
+				interleaved = false;
+			}
+		}
+
+		List<Vertex> list = new ArrayList<Vertex>(store ? count*2 : 0);
+
+		if (length == -1){
+
+			/* sequence on one line */
+			String name;
+			int seqLength;
+			for (int i=0; i<count; i++){
+				name = readToken(store);
+				seqLength = readLineResidues(store ? seqBuffer : null, 0, true);
+				if (store){
+					list.add(new Vertex(name, Arrays.copyOf(seqBuffer, seqLength)));
+				}
+			}
+
+		} else if (interleaved){
+
+			String[] names = new String[count];
+			byte[][] sequences = new byte[count][];
+			int[] filled = new int[count];
+
+			/* the first block contains the names */
+			for (int i=0; i<count; i++){
+				names[i] = readToken(store);
+				if (store){
+					sequences[i] = new byte[length];
+				}
+				filled[i] = readLineResidues(sequences[i], 0, false);
+			}
+
+			/* the next blocks */
+			for (int i=0; (count > 0) && (filled[count-1] < length); i = (i + 1) % count){
+				skipWhitespace();
+				if (peek() == -1){
+					throw new IOException("Unexpected end of the file, sequence " + names[i] + " has " + filled[i] 
+							+ " characters, expected " + length);
+				}
+				filled[i] += readLineResidues(sequences[i], filled[i], false);
+			}
+
+			for (int i=0; i<count; i++){
+				if (filled[i] != length){
+					throw new IOException("Sequence " + names[i] + " has " + filled[i] + " characters, expected " + length);
+				}
+				if (store){
+					list.add(new Vertex(names[i], sequences[i]));
+				}
+			}
+
+		} else {
+
+			/* sequential, a sequence can span more lines */
+			String name;
+			byte[] sequence = null;
+			for (int i=0; i<count; i++){
+				name = readToken(store);
+				if (store){
+					sequence = new byte[length];
+				}
+				readResidues(sequence, length);
+				if (store){
+					list.add(new Vertex(name, sequence));
+				}
+			}
+		}
+
+		return list;
+	}
+
+
+	/**
+	 * Read one FASTA input set (ends with an empty line or with the end of the file).
+	 * */
+	private List<Vertex> readFasta(boolean store) throws IOException {
+
+		List<Vertex> list = new ArrayList<Vertex>();
+		String name;
+		int seqLength;
+		int lineLength;
+		boolean end = false;
+
+		while (!end && (peek() == '>')){
+
+			next();
+			name = readToken(store);
+			skipLine();
+
+			seqLength = 0;
+			while ((peek() != -1) && (peek() != '>')){
+				lineLength = readLineResidues(store ? seqBuffer : null, seqLength, true);
+				if (lineLength == 0){
+					/* an empty line ends the input set */
+					end = true;
+					break;
+				}
+				seqLength += lineLength;
+			}
+
+			if (store){
+				list.add(new Vertex(name, Arrays.copyOf(seqBuffer, seqLength)));
+			}
+		}
+
+		return list;
+	}
+
+
+	/**
+	 * Read the characters of a sequence that can span more lines.
+	 *
+	 * @param sequence the read characters (null ~ skip the characters)
+	 * @param length the number of characters that will be read
+	 * */
+	private void readResidues(byte[] sequence, int length) throws IOException {
+
+		int c;
+		for (int i=0; i<length;){
+			c = next();
+			if (c == -1){
+				throw new IOException("Unexpected end of the file, sequence has " + i + " characters, expected " + length);
+			}
+			if (!isWhitespace(c)){
+				if (sequence != null){
+					sequence[i] = (byte)c;
+				}
+				i++;
+			}
+		}
+	}
+
+
+	/**
+	 * Read the characters of a sequence till the end of the line, the end of the line is consumed.
+	 *
+	 * @param sequence the read characters (null ~ skip the characters)
+	 * @param from the index of the first read character in the sequence
+	 * @param grow true ~ the sequence is the seqBuffer that is enlarged if needed
+	 * @return the number of characters read
+	 * */
+	private int readLineResidues(byte[] sequence, int from, boolean grow) throws IOException {
+
+		int c;
+		int i = from;
+		for (;;){
+			c = next();
+			if ((c == -1) || (c == '\n')){
+				break;
+			}
+			if (!isWhitespace(c)){
+				if (sequence != null){
+					if (i == sequence.length){
+						if (!grow){
+							throw new IOException("Sequence is longer than " + sequence.length + " characters");
+						}
+						seqBuffer = Arrays.copyOf(seqBuffer, 2*seqBuffer.length);
+						sequence = seqBuffer;
+					}
+					sequence[i] = (byte)c;
+				}
+				i++;
+			}
+		}
+		return i - from;
+	}
+
+
+	/**
+	 * Read a token (a name) that ends with a whitespace character or the delimiter.
+	 *
+	 * @param store false ~ the token is only skipped (null is returned)
+	 * */
+	private String readToken(boolean store) throws IOException {
+
+		skipWhitespace();
+		int length = 0;
+		int c;
+		while (((c = peek()) != -1) && !isWhitespace(c)){
+			next();
+			if (store){
+				if (length == tokenBuffer.length){
+					tokenBuffer = Arrays.copyOf(tokenBuffer, 2*tokenBuffer.length);
+				}
+				tokenBuffer[length++] = (byte)c;
+			}
+		}
+		return store ? new String(tokenBuffer, 0, length, charSet) : null;
+	}
+
+
+	/**
+	 * Read the rest of the line.
+	 * */
+	private String readLine() throws IOException {
+
+		StringBuilder line = new StringBuilder();
+		int c;
+		while (((c = next()) != -1) && (c != '\n')){
+			line.append((char)c);
+		}
+		return line.toString();
+	}
+
+
+	private void skipLine() throws IOException {
+
+		int c;
+		do {
+			c = next();
+		} while ((c != -1) && (c != '\n'));
+	}
+
+
+	private void skipWhitespace() throws IOException {
+
+		int c;
+		while (((c = peek()) != -1) && isWhitespace(c)){
+			next();
+		}
+	}
+
+
+	/**
+	 * Whether a character separates the names and the sequences (whitespace or the delimiter).
+	 * */
+	private boolean isWhitespace(int c){
+		return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r') || (c == delimiter);
+	}
+
+
+	/**
+	 * @return the next byte or -1 (end of the file), the byte is not consumed
+	 * */
+	private int peek() throws IOException {
+		if (!buffer.hasRemaining() && !fill()){
+			return -1;
+		}
+		return buffer.get(buffer.position()) & 0xff;
+	}
+
+
+	/**
+	 * @return the next byte or -1 (end of the file)
+	 * */
+	private int next() throws IOException {
+		if (!buffer.hasRemaining() && !fill()){
+			return -1;
+		}
+		return buffer.get() & 0xff;
+	}
+
+
+	/**
+	 * Map the next part of the file or read the next part of the gzip file.
+	 *
+	 * @return false ~ end of the file
+	 * */
+	private boolean fill() throws IOException {
+
+		if (channel != null){
+
+			long size = Math.min(MAPPED_WINDOW_SIZE, channel.size() - channelPosition);
+			if (size <= 0){
+				return false;
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, channelPosition, size);
+			channelPosition += size;
+			return true;
+
+		} else {
+
+			int count = gzipStream.read(buffer.array(), 0, buffer.capacity());
+			if (count <= 0){
+				return false;
+			}
+			buffer.position(0);
+			buffer.limit(count);
+			return true;
+		}
+	}
+
 }
@@ -42,7 +42,8 @@ public class MST {
 		
 		TimeStamp ts = TimeStamp.getTimeStamp();
 		if (config.getUseMSTPrimOptimization()){
-			mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, distanceMatrix, mm);
+			mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, distanceMatrix, mm, 
+					getPrimThreadCount(config, vertices.size()), config.getMstBucketMaxDistance());
 		} else {
 			if (vertices.size() > config.getMstImplementationThreshold()){
 				mst.boruvka.BoruvkaMST.computeMST(vertices, distanceMatrix, mm);
@@ -131,6 +132,48 @@ public class MST {
 	
 	
 	
+	/**
+	 * Extend an MST tree to which some vertices were added.
+	 * The new MST is computed only from the edges of the old tree and the edges incident to the new vertices,
+	 * the mutations of the edges that remain are kept.
+	 * 
+	 *  @param vertices a list of vertices, the vertices of the old tree are followed by the added vertices
+	 *  @param oldVertexCount the number of vertices of the old tree
+	 * */
+	public static void insertIntoMST(List<Vertex> vertices, int oldVertexCount, 
+			Matrix distanceMatrix, MutationManager mm, MemoryManager mem){
+		TimeStamp ts = TimeStamp.getTimeStamp();
+		MSTPrim.insertIntoMST(vertices, oldVertexCount, distanceMatrix, mm, mem);
+		Stat.computeMSTFinished(ts);
+	}
+	
+	
+	/**
+	 * Whether the MST should be extended by the added vertices (see insertIntoMST) instead of recomputed.
+	 * 
+	 * @param vertexCount the number of vertices of the old tree
+	 * @param addedVertexCount the number of vertices that will be added
+	 * */
+	public static boolean getUseInsertOptimization(Configuration config, int vertexCount, int addedVertexCount){
+		
+		return ((config.getMstOptimizationThresholdVertexCount() < vertexCount)
+				&& ((((double)addedVertexCount)/((double)vertexCount)) < 
+						config.getMstInsertThresholdAddedPart()))?true:false;
+	}
+	
+	
+	/**
+	 * Get the number of threads of the Prim algorithm for complete graphs (1 ~ sequential version).
+	 * */
+	private static int getPrimThreadCount(Configuration config, int vertexCount){
+		if (vertexCount > config.getMstParallelThreshold()){
+			return Math.max(1, config.getMstThreadCount());
+		} else {
+			return 1;
+		}
+	}
+	
+	
 	/**
 	 * 
 	 * 
@@ -162,7 +205,8 @@ public class MST {
 		
 		TimeStamp ts = TimeStamp.getTimeStamp();
 		if (config.getUseMSTPrimOptimization()){
-			mst.primcompletegraph.PrimCompleteGraphD.computeMST(vertices, distanceMatrix, mm);
+			mst.primcompletegraph.PrimCompleteGraphD.computeMST(vertices, distanceMatrix, mm, 
+					getPrimThreadCount(config, vertices.size()));
 		} else {
 			if (vertices.size() > config.getMstImplementationThreshold()){
 				mst.boruvka.BoruvkaMST.computeMST(vertices, distanceMatrix, mm);
@@ -0,0 +1,324 @@
+package mst.boruvka;
+
+import java.util.Random;
+
+
+/**
+ * Boruvka MST algorithm for complete graphs that works only with primitive arrays.
+ *
+ * The connected components are stored in a union-find structure (path compression, union by rank).
+ * In each round, each component finds its least cost edge to another component and all these edges are added at once.
+ * To find the least cost edge of a vertex quickly, each vertex keeps a sorted list of its nearest neighbors
+ * that were not in its component when the list was computed. The list is recomputed only if all its
+ * neighbors are already in the component of the vertex.
+ *
+ * Edges are compared according to: the distance, a random key of the edge, the indices of the vertices.
+ * This order is total (ties are broken randomly), therefore the edges that are added in one round cannot create a cycle.
+ * */
+abstract class ArrayBoruvka {
+
+	/* the number of vertices */
+	private final int size;
+
+	/* the maximum number of the nearest neighbors that are stored for a vertex */
+	private final int neighborsCount;
+
+	/* union-find */
+	private final int parent[];
+	private final byte rank[];
+
+	/* the number of connected components */
+	private int componentCount;
+
+	/* the component of each vertex in the current round */
+	private final int root[];
+
+	/* random keys of the vertices, the random key of an edge is the sum of the keys of its vertices */
+	private final int key[];
+
+	/* the nearest neighbors of vertex v are stored in [v*neighborsCount .. v*neighborsCount + neighborCount[v]),
+	 * sorted in ascending order, neighbors before position neighborPos[v] are already in the component of v */
+	private final int neighborTo[];
+	private final float neighborDist[];
+	private final int neighborCount[];
+	private final int neighborPos[];
+
+	/* the least cost edge of each component in the current round (from == -1 ~ no edge) */
+	private final int bestFrom[];
+	private final int bestTo[];
+	private final float bestDist[];
+
+	/* resulting edges: {(edgeV0[i], edgeV1[i]) | i in [0..edgeCount)} */
+	int edgeV0[];
+	int edgeV1[];
+	int edgeCount;
+
+
+	/**
+	 * Constructor, at the beginning each vertex is a component.
+	 *
+	 * @param size the number of vertices
+	 * @param neighborsCount the maximum number of the nearest neighbors that are stored for a vertex
+	 * */
+	protected ArrayBoruvka(int size, int neighborsCount){
+
+		this.size = size;
+		this.neighborsCount = Math.max(1, neighborsCount);
+
+		parent = new int[size];
+		rank = new byte[size];
+		root = new int[size];
+		key = new int[size];
+		for (int i=0; i<size; i++){
+			parent[i] = i;
+		}
+		componentCount = size;
+
+		Random rand = new Random();
+		for (int i=0; i<size; i++){
+			key[i] = rand.nextInt() >> 1;
+		}
+
+		neighborTo = new int[size*this.neighborsCount];
+		neighborDist = new float[size*this.neighborsCount];
+		neighborCount = new int[size];
+		neighborPos = new int[size];
+
+		bestFrom = new int[size];
+		bestTo = new int[size];
+		bestDist = new float[size];
+
+		edgeV0 = new int[Math.max(0, size - 1)];
+		edgeV1 = new int[Math.max(0, size - 1)];
+		edgeCount = 0;
+	}
+
+
+	/**
+	 * Get the distance between vertices i and j.
+	 * */
+	protected abstract float getDistance(int i, int j);
+
+
+	/**
+	 * Get the component of a vertex.
+	 * */
+	private int find(int v){
+		int r = v;
+		while (parent[r] != r){
+			r = parent[r];
+		}
+		/* path compression */
+		int next;
+		while (parent[v] != r){
+			next = parent[v];
+			parent[v] = r;
+			v = next;
+		}
+		return r;
+	}
+
+
+	/**
+	 * Merge the components of two vertices.
+	 *
+	 * @return false if the vertices were already in the same component
+	 * */
+	protected boolean union(int v0, int v1){
+		int r0 = find(v0);
+		int r1 = find(v1);
+		if (r0 == r1){
+			return false;
+		}
+		if (rank[r0] < rank[r1]){
+			parent[r0] = r1;
+		} else {
+			if (rank[r0] == rank[r1]){
+				rank[r0]++;
+			}
+			parent[r1] = r0;
+		}
+		componentCount--;
+		return true;
+	}
+
+
+	/**
+	 * Whether edge (v0,w0) of distance d0 is less than edge (v1,w1) of distance d1.
+	 * */
+	private boolean isLess(float d0, int v0, int w0, float d1, int v1, int w1){
+		if (d0 != d1){
+			return d0 < d1;
+		}
+		int k0 = key[v0] + key[w0];
+		int k1 = key[v1] + key[w1];
+		if (k0 != k1){
+			return k0 < k1;
+		}
+		int min0 = Math.min(v0, w0);
+		int min1 = Math.min(v1, w1);
+		if (min0 != min1){
+			return min0 < min1;
+		}
+		return Math.max(v0, w0) < Math.max(v1, w1);
+	}
+
+
+	/**
+	 * Compute the list of the nearest neighbors of vertex v that are not in the component of v.
+	 * The neighbors are collected in a bounded max-heap that is sorted at the end.
+	 * */
+	private void computeNeighbors(int v){
+
+		int base = v*neighborsCount;
+		int count = 0;
+		int rv = root[v];
+		float dist;
+
+		for (int j=0; j<size; j++){
+
+			if (root[j] == rv){
+				continue;
+			}
+
+			dist = getDistance(v, j);
+
+			if (count < neighborsCount){
+				/* add to the heap */
+				neighborTo[base + count] = j;
+				neighborDist[base + count] = dist;
+				siftUp(v, base, count);
+				count++;
+			} else {
+				/* replace the greatest neighbor */
+				if (isLess(dist, v, j, neighborDist[base], v, neighborTo[base])){
+					neighborTo[base] = j;
+					neighborDist[base] = dist;
+					siftDown(v, base, 0, count);
+				}
+			}
+		}
+
+		/* heap sort: move the greatest neighbor to the end */
+		for (int last=count-1; last>0; last--){
+			swap(base, 0, last);
+			siftDown(v, base, 0, last);
+		}
+
+		neighborCount[v] = count;
+		neighborPos[v] = 0;
+	}
+
+
+	private void siftUp(int v, int base, int i){
+		int p;
+		while (i > 0){
+			p = (i - 1) >> 1;
+			if (!isLess(neighborDist[base + p], v, neighborTo[base + p], neighborDist[base + i], v, neighborTo[base + i])){
+				return;
+			}
+			swap(base, i, p);
+			i = p;
+		}
+	}
+
+
+	private void siftDown(int v, int base, int i, int count){
+		int c;
+		for (;;){
+			c = 2*i + 1;
+			if (c >= count){
+				return;
+			}
+			if ((c + 1 < count) && isLess(neighborDist[base + c], v, neighborTo[base + c],
+					neighborDist[base + c + 1], v, neighborTo[base + c + 1])){
+				c++;
+			}
+			if (!isLess(neighborDist[base + i], v, neighborTo[base + i], neighborDist[base + c], v, neighborTo[base + c])){
+				return;
+			}
+			swap(base, i, c);
+			i = c;
+		}
+	}
+
+
+	private void swap(int base, int i, int j){
+		int to = neighborTo[base + i];
+		float dist = neighborDist[base + i];
+		neighborTo[base + i] = neighborTo[base + j];
+		neighborDist[base + i] = neighborDist[base + j];
+		neighborTo[base + j] = to;
+		neighborDist[base + j] = dist;
+	}
+
+
+	/**
+	 * Get the position of the nearest neighbor of vertex v that is not in the component of v.
+	 *
+	 * @return the position in the arrays of neighbors or -1 if all vertices are in the component of v
+	 * */
+	private int getNearestNeighbor(int v){
+
+		int base = v*neighborsCount;
+		int rv = root[v];
+
+		/* skip the neighbors that are already in the component */
+		while ((neighborPos[v] < neighborCount[v]) && (root[neighborTo[base + neighborPos[v]]] == rv)){
+			neighborPos[v]++;
+		}
+
+		if (neighborPos[v] == neighborCount[v]){
+			computeNeighbors(v);
+			if (neighborCount[v] == 0){
+				return -1;
+			}
+		}
+
+		return base + neighborPos[v];
+	}
+
+
+	/**
+	 * Add the least cost edges between the components until there is only one component.
+	 * */
+	protected void run(){
+
+		int r;
+		int n;
+
+		while (componentCount > 1){
+
+			for (int v=0; v<size; v++){
+				root[v] = find(v);
+				bestFrom[v] = -1;
+			}
+
+			/* the least cost edge of each component */
+			for (int v=0; v<size; v++){
+
+				n = getNearestNeighbor(v);
+				if (n == -1){
+					continue;
+				}
+
+				r = root[v];
+				if ((bestFrom[r] == -1) || isLess(neighborDist[n], v, neighborTo[n], bestDist[r], bestFrom[r], bestTo[r])){
+					bestFrom[r] = v;
+					bestTo[r] = neighborTo[n];
+					bestDist[r] = neighborDist[n];
+				}
+			}
+
+			/* add the edges, an edge can be the least cost edge of both its components */
+			for (int v=0; v<size; v++){
+				if ((root[v] == v) && (bestFrom[v] != -1) && union(bestFrom[v], bestTo[v])){
+					edgeV0[edgeCount] = bestFrom[v];
+					edgeV1[edgeCount] = bestTo[v];
+					edgeCount++;
+				}
+			}
+		}
+	}
+
+}
@@ -4,10 +4,9 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import dmatrix.DMatrix;
+import dmatrix.IntIndexMap;
 import dmatrix.Matrix;
 
 import ptree.MutationManager;
@@ -22,108 +21,17 @@ public class BoruvkaMST {
 	 * */
 	public static void computeMST(List<Vertex> vertices, DMatrix distanceMatrix, MutationManager mm){
 		
-		//long time = System.currentTimeMillis();
-		
 		/* the size of the neighbor set */
-		int logn = (int) ((Math.log(vertices.size())/Math.log(2.0)) + 1);
-		
-		SortedSet<Edge> tree;
-		Vertex v1;
-		Vertex v2;
-		float dist;
-		Edge last;
-		List<Component> compList = new ArrayList<Component>(vertices.size());
-		
-		/* creates a tree of the nearest neighbor edges for each vertex */
-		for (int i=0; i<vertices.size(); i++){
-			
-			tree = new TreeSet<Edge>();
-			v1 = vertices.get(i);
-			
-			for (int j=0; j<vertices.size(); j++){
-				
-				v2 = vertices.get(j);
-				
-				if (v1.equals(v2)){
-					continue;
-				}
-				
-				dist = distanceMatrix.getDistance(v1, v2);
-				
-				if (tree.size() < logn){
-					tree.add(new Edge(v1,v2,dist));
-				} else {
-					last = tree.last();
-					if (dist < last.dist){
-						if (!tree.remove(last)){
-							System.exit(-1);
-						}
-						last.modify(v1, v2, dist);
-						tree.add(last);
-					} 
-				}
-				
-			}
-			
-			compList.add(new Component(v1, tree));
-		}
+		int logn = getNeighborsCount(vertices.size());
 		
-		//System.out.println("boruvka - init: " + (System.currentTimeMillis() - time) + "ms");
+		ArrayBoruvka boruvka = createBoruvka(vertices.size(), distanceMatrix, logn);
 		
-		Component comp1 = null;
-		Component comp2;
-		int idx = 0;
-		Edge rec;
+		boruvka.run();
 		
-		/* merge components */
-		while (compList.size() > 1){
-		
-			//System.out.println("while start - comp size: " + compList.size());
-			
-			comp2 = null;
-			
-			for (int i=0; i<compList.size();){
-				
-				comp1 = compList.get(i);
-				
-				rec = comp1.getEdge(distanceMatrix, vertices, logn);	
-				
-				rec.v1.setOutcomingEdge(rec.v2);
-				rec.v2.setOutcomingEdge(rec.v1);
-				
-				/* search for the second component */
-				for (int j=0; j<compList.size(); j++){
-					if (i==j){
-						continue;
-					}
-					if (compList.get(j).contains(rec.v2)){
-						comp2 = compList.get(j);
-						idx = j;
-						break;
-					}
-				}
-				
-				/* merge two components */
-				if (idx < i){	
-					Component.merge(comp2, comp1);
-					compList.remove(i);
-				} else {
-					Component.merge(comp1, comp2);
-					compList.remove(idx);
-					i++;
-				}
-				
-			}
-			
-		}
-
-		compList.get(0).clear();
+		addEdges(boruvka, vertices);
 		
 		/* root and orient the graph */
 		mst.prim.MSTPrim.root(vertices.get(0),  mm);
-		
-		//System.out.println("boruvka - finished: " + (System.currentTimeMillis() - time) + "ms");
-		//System.out.println("tree repared: " + Component.addEdgesCount); 
 	}
 	
 	
@@ -132,115 +40,59 @@ public class BoruvkaMST {
 	 * */
 	public static void computeMST(List<Vertex> vertices, Matrix distanceMatrix, MutationManager mm){
 		
-		//long time = System.currentTimeMillis();
-		
 		/* the size of the neighbor set */
-		int logn = (int) ((Math.log(vertices.size())/Math.log(2.0)) + 1);
-		
-		SortedSet<IEdge> tree;
-		Vertex v1;
-		Vertex v2;
-		short dist;
-		IEdge last;
-		List<IComponent> compList = new ArrayList<IComponent>(vertices.size());
+		int logn = getNeighborsCount(vertices.size());
 		
-		/* creates a tree of the nearest neighbor edges for each vertex */
-		for (int i=0; i<vertices.size(); i++){
-			
-			tree = new TreeSet<IEdge>();
-			v1 = vertices.get(i);
-			
-			for (int j=0; j<vertices.size(); j++){
-				
-				v2 = vertices.get(j);
-				
-				if (v1.equals(v2)){
-					continue;
-				}
-				
-				dist = distanceMatrix.getDistance(i, j);
-				
-				if (tree.size() < logn){
-					tree.add(new IEdge(v1,v2,dist));
-				} else {
-					last = tree.last();
-					if (dist < last.dist){
-						if (!tree.remove(last)){
-							System.exit(-1);
-						}
-						last.modify(v1, v2, dist);
-						tree.add(last);
-					} 
-				}
-				
-			}
-			
-			compList.add(new IComponent(v1, tree));
-		}
+		ArrayBoruvka boruvka = createBoruvka(vertices.size(), distanceMatrix, logn);
 		
-		//System.out.println("boruvka - init: " + (System.currentTimeMillis() - time) + "ms");
+		boruvka.run();
 		
-		mergeComponents(compList, vertices, distanceMatrix, logn);
+		addEdges(boruvka, vertices);
 
 		/* root and orient the graph */
 		mst.prim.MSTPrim.root(vertices.get(0),  mm);
-		
-		//System.out.println("boruvka - finished: " + (System.currentTimeMillis() - time) + "ms");
-		//System.out.println("tree repared: " + Component.addEdgesCount); 
 	}
 	
-
-	private static void mergeComponents(List<IComponent> compList, List<Vertex> vertices, Matrix distanceMatrix,
-			int logn){
-		
-		IComponent comp1 = null;
-		IComponent comp2;
-		int idx = 0;
-		IEdge rec;
+	
+	private static int getNeighborsCount(int count){
+		return (int) ((Math.log(count)/Math.log(2.0)) + 1);
+	}
+	
+	
+	private static ArrayBoruvka createBoruvka(int size, final DMatrix distanceMatrix, int neighborsCount){
+		return new ArrayBoruvka(size, neighborsCount){
+			@Override
+			protected float getDistance(int i, int j){
+				return distanceMatrix.getDistance(i, j);
+			}
+		};
+	}
+	
+	
+	private static ArrayBoruvka createBoruvka(int size, final Matrix distanceMatrix, int neighborsCount){
+		return new ArrayBoruvka(size, neighborsCount){
+			@Override
+			protected float getDistance(int i, int j){
+				return distanceMatrix.getDistance(i, j);
+			}
+		};
+	}
+	
+	
+	/**
+	 * Add the edges computed by the algorithm to the vertices (the edges are not oriented).
+	 * */
+	private static void addEdges(ArrayBoruvka boruvka, List<Vertex> vertices){
 		
-		/* merge components */
-		while (compList.size() > 1){
+		Vertex v1;
+		Vertex v2;
 		
-			//System.out.println("while start - comp size: " + compList.size());
-			
-			comp2 = null;
-			
-			for (int i=0; i<compList.size();){
-				
-				comp1 = compList.get(i);
-				
-				rec = comp1.getEdge(distanceMatrix, vertices, logn);	
-				
-				rec.v1.setOutcomingEdge(rec.v2);
-				rec.v2.setOutcomingEdge(rec.v1);
-				
-				/* search for the second component */
-				for (int j=0; j<compList.size(); j++){
-					if (i==j){
-						continue;
-					}
-					if (compList.get(j).contains(rec.v2)){
-						comp2 = compList.get(j);
-						idx = j;
-						break;
-					}
-				}
-				
-				/* merge two components */
-				if (idx < i){	
-					IComponent.merge(comp2, comp1);
-					compList.remove(i);
-				} else {
-					IComponent.merge(comp1, comp2);
-					compList.remove(idx);
-					i++;
-				}
-				
-			}
-			
+		for (int i=0; i<boruvka.edgeCount; i++){
+			v1 = vertices.get(boruvka.edgeV0[i]);
+			v2 = vertices.get(boruvka.edgeV1[i]);
+			v1.setOutcomingEdge(v2);
+			v2.setOutcomingEdge(v1);
 		}
-		
-		compList.get(0).clear();
 	}
 	
 	
@@ -309,17 +161,49 @@ public class BoruvkaMST {
 			 }
 		}
 		
-		/* creates a component from each component representative */
+		/* the index of a vertex in the list is its index in the distance matrix */
+		IntIndexMap indexMap = new IntIndexMap(vertices.size());
+		for (int i=0; i<vertices.size(); i++){
+			indexMap.put(vertices.get(i).getIntId(), i);
+		}
+		
 		int componentCount = componentRepresentatives.size();
-		List<IComponent> compList = new ArrayList<IComponent>(); 
-		int neighborsInitCount = (int) ((Math.log(componentCount)/Math.log(2.0)) + 1);
+		int neighborsInitCount = getNeighborsCount(componentCount);
+		ArrayBoruvka boruvka = createBoruvka(vertices.size(), distanceMatrix, neighborsInitCount);
+		
+		/* each tree of the forest is one component at the beginning */
+		List<Vertex> component = new ArrayList<Vertex>();
 		for (int i=0; i<componentCount; i++){
-			compList.add(new IComponent(componentRepresentatives.get(i), vertices, distanceMatrix, 
-					neighborsInitCount));
+			
+			component.clear();
+			component.add(componentRepresentatives.get(i));
+			
+			/* collect the vertices of the tree (breadth first) */
+			for (int j=0; j<component.size(); j++){
+				v = component.get(j);
+				children = v.getOutcomingEdges();
+				for (int k=0; k<children.size(); k++){
+					child = children.get(k);
+					component.add(child);
+					boruvka.union(indexMap.get(v.getIntId()), indexMap.get(child.getIntId()));
+				}
+			}
+			
+			/* cancel the orientation and delete stored mutation records */
+			for (int j=0; j<component.size(); j++){
+				v = component.get(j);
+				v.setMutations(null);
+				parent = v.getIncomingEdge();
+				if (j > 0){
+					v.removeIncomingEdge();
+					v.setOutcomingEdge(parent);
+				}
+			}
 		}
-
 		
-		mergeComponents(compList, vertices, distanceMatrix, neighborsInitCount);
+		boruvka.run();
+		
+		addEdges(boruvka, vertices);
 		
 		/* root and orient the graph */
 		mst.prim.MSTPrim.root(vertices.get(0),  mm);
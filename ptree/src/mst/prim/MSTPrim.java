@@ -1,14 +1,22 @@
 package mst.prim;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import ptree.MutationManager;
+import ptree.Mutations;
+import ptree.PTreeMethods;
 import ptree.Vertex;
 
 import common.Configuration;
 import dmatrix.DMatrix;
+import dmatrix.IntIndexMap;
 import dmatrix.Matrix;
 
 import jpaul.DataStructs.UnionFind;
@@ -19,6 +27,11 @@ import jpaul.DataStructs.UnionFind;
  * */
 public class MSTPrim {
 
+	private static Log log = LogFactory.getLog(MSTPrim.class);
+	
+	/* the maximum number of edges that can be stored in one array */
+	private static final long MAX_PACKED_EDGES = Integer.MAX_VALUE - 8;
+
 	/* I tried also "jpaul.DataStructs.WorkPriorityQueue" or "ExpPriorityQueue" but it was slower 
 	 * 
 	 * I use my own memory manager for priority queues and arrays 
@@ -27,59 +40,297 @@ public class MSTPrim {
 	 * ~ reduce complexity (of priority queue creation) from nlogn to n.
 	 * I am using union-find data structure to detect cycles 
 	 * ~ fast
+	 * 
+	 * The variant for short distances (Matrix) doesn`t create any objects for the edges, 
+	 * the edges are packed into a long array and sorted by the counting sort.
 	 * */
 	
+	/**
+	 * Computes MST (Kruskal) of the complete graph given by the distance matrix, works only with primitive arrays.
+	 * 
+	 * Each edge is packed into one long (random tie-break | i | j) and all edges are stored in one reusable array.
+	 * The edges are sorted according to their weights by the counting sort (the distances are short numbers,
+	 * there is one bucket for each weight between the minimum and the maximum weight), the edges of the same weight are sorted according to the random tie-break only when they are needed.
+	 * Union-find on int arrays is used to detect cycles.
+	 * */
 	public static void computeMSTJarnik(List<Vertex> vertices, Matrix distanceMatrix, MutationManager mm, MemoryManager mem){
 		
-		//long time = System.currentTimeMillis();
-		UnionFind<Integer> unionFind = new UnionFind<Integer>();
-		int size = ((distanceMatrix.getSize() * distanceMatrix.getSize())/2);
-		List<SEdge> array = mem.getEdgeArray(size);
+		int n = vertices.size();
 		
+		if (n < 2){
+			root(vertices.get(0), mm);
+			return;
+		}
 		
-		/* create a list of all edges */
-		for (int i=1; i<vertices.size(); i++){
+		long edgeCountAll = ((long)n*(n-1))/2;
+		if (edgeCountAll > MAX_PACKED_EDGES){
+			log.error("Too many vertices for the MST: " + n);
+			System.exit(-1);
+		}
+		
+		/* packed edge: (tie-break << 2*indexBits) | (i << indexBits) | j */
+		int indexBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+		long tieBreakMask = (1L << (63 - 2*indexBits)) - 1;
+		
+		/* the range of the weights */
+		int minWeight = Short.MAX_VALUE;
+		int maxWeight = Short.MIN_VALUE;
+		int weight;
+		for (int i=1; i<n; i++){
 			for (int j=0; j<i; j++){
-				
-				array.add(new SEdge(vertices.get(Math.min(i,j)), vertices.get(Math.max(i, j)),
-						distanceMatrix.getDistance(i, j)));
-					 
+				weight = distanceMatrix.getDistance(i, j);
+				minWeight = Math.min(minWeight, weight);
+				maxWeight = Math.max(maxWeight, weight);
 			}
 		}
-		 
-		/* creates priority queue from all edges (bulk-load operation, faster than adding edge by edge) */
-		PriorityQueue<SEdge> queue = mem.getEdgePriorityQueue(size);
-		queue.addAll(array);
+		int bucketCount = maxWeight - minWeight + 1;
 		
-		/* Jarnk (Prim) - greedy algorithm */
-		SEdge edge;
-		int edgeCount = 0;
-		int maxEdgeCount = vertices.size() - 1;
+		long edges[] = mem.getPackedEdgeArray((int)edgeCountAll);
+		int bucketStart[] = mem.getWeightCountArray(bucketCount + 1);
 		
-		while (edgeCount < maxEdgeCount){
-			
-			/* get the edge with minimum weight */
-			edge = queue.poll();
-			 
-			/* are these vertices already unified ? */
-			if (!unionFind.areUnified(edge.v0.getIntId(), edge.v1.getIntId())){
-				
-				/* add this edge */
-				edge.v0.setOutcomingEdge(edge.v1);
-				edge.v1.setOutcomingEdge(edge.v0);
-				unionFind.union(edge.v0.getIntId(), edge.v1.getIntId());
-				edgeCount++;
+		/* count the edges of each weight */
+		for (int i=1; i<n; i++){
+			for (int j=0; j<i; j++){
+				bucketStart[distanceMatrix.getDistance(i, j) - minWeight + 1]++;
 			}
 		}
-
+		for (int b=0; b<bucketCount; b++){
+			bucketStart[b+1] += bucketStart[b];
+		}
+		
+		/* store the edges sorted according to their weights, (xorshift random generator for the tie-breaks) */
+		long random = new Random().nextLong() | 1;
+		int bucket;
+		for (int i=1; i<n; i++){
+			for (int j=0; j<i; j++){
+				random ^= random << 13;
+				random ^= random >>> 7;
+				random ^= random << 17;
+				bucket = distanceMatrix.getDistance(i, j) - minWeight;
+				edges[bucketStart[bucket]++] = ((random & tieBreakMask) << (2*indexBits)) | (((long)i) << indexBits) | j;
+			}
+		}
+		/* now bucketStart[b] is the end of bucket b and the start of bucket b+1 */
+		
+		kruskal(vertices, edges, bucketStart, bucketCount, indexBits);
+		
 		/* root the graph and add mutations */
 		root(vertices.get(0), mm);
 		
-		/* store the priority queue and the array for the next run of MST */
-		mem.freeEdgePriorityQueue(queue);
-		mem.freeEdgeArray(array);
+		/* store the arrays for the next run of MST */
+		mem.freeWeightCountArray(bucketStart);
+		mem.freePackedEdgeArray(edges);
+	}
+	
+	
+	/**
+	 * Computes MST (Kruskal) after new vertices were added to a tree that is an MST of the old vertices.
+	 * 
+	 * The MST of all vertices consists only of the edges of the old MST and the edges incident to the new vertices,
+	 * therefore only these (n-1 + k*n) edges are sorted (as in computeMSTJarnik), not all edges of the complete graph.
+	 * The tree is rooted at the first vertex, the mutations of the edges that remain in the tree with the same orientation are kept.
+	 * 
+	 * @param vertices the old vertices (wired in the MST) followed by the new vertices (not wired)
+	 * @param oldVertexCount the number of the old vertices
+	 * */
+	public static void insertIntoMST(List<Vertex> vertices, int oldVertexCount, Matrix distanceMatrix, 
+			MutationManager mm, MemoryManager mem){
+		
+		int n = vertices.size();
+		
+		/* the index of a vertex in the list is its index in the distance matrix */
+		IntIndexMap indexMap = new IntIndexMap(n);
+		for (int i=0; i<n; i++){
+			indexMap.put(vertices.get(i).getIntId(), i);
+		}
+		
+		/* store the edges of the old tree (the parent of each vertex and the mutations of the edge) */
+		int oldParent[] = new int[oldVertexCount];
+		Mutations oldMutations[] = new Mutations[oldVertexCount];
+		Vertex vertex;
+		int oldEdgeCount = 0;
+		
+		for (int i=0; i<oldVertexCount; i++){
+			vertex = vertices.get(i);
+			if (vertex.getIncomingEdge() == null){
+				oldParent[i] = -1;
+			} else {
+				oldParent[i] = indexMap.get(vertex.getIncomingEdge().getIntId());
+				oldMutations[i] = vertex.getMutations();
+				oldEdgeCount++;
+			}
+		}
 		
-		//System.out.println("Run MST short:" + (System.currentTimeMillis() - time) );
+		PTreeMethods.deforestation(vertices);
+		
+		if (n < 2){
+			root(vertices.get(0), mm);
+			return;
+		}
+		
+		long edgeCountAll = oldEdgeCount + (((long)n*(n-1))/2 - ((long)oldVertexCount*(oldVertexCount-1))/2);
+		if (edgeCountAll > MAX_PACKED_EDGES){
+			log.error("Too many vertices for the MST: " + n);
+			System.exit(-1);
+		}
+		
+		/* packed edge: (tie-break << 2*indexBits) | (i << indexBits) | j */
+		int indexBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+		long tieBreakMask = (1L << (63 - 2*indexBits)) - 1;
+		
+		/* the range of the weights (the edges of the old tree and the edges incident to the new vertices) */
+		int minWeight = Short.MAX_VALUE;
+		int maxWeight = Short.MIN_VALUE;
+		int weight;
+		for (int i=0; i<oldVertexCount; i++){
+			if (oldParent[i] != -1){
+				weight = distanceMatrix.getDistance(i, oldParent[i]);
+				minWeight = Math.min(minWeight, weight);
+				maxWeight = Math.max(maxWeight, weight);
+			}
+		}
+		for (int i=oldVertexCount; i<n; i++){
+			for (int j=0; j<i; j++){
+				weight = distanceMatrix.getDistance(i, j);
+				minWeight = Math.min(minWeight, weight);
+				maxWeight = Math.max(maxWeight, weight);
+			}
+		}
+		int bucketCount = maxWeight - minWeight + 1;
+		
+		long edges[] = mem.getPackedEdgeArray((int)edgeCountAll);
+		int bucketStart[] = mem.getWeightCountArray(bucketCount + 1);
+		
+		/* count the edges of each weight */
+		for (int i=0; i<oldVertexCount; i++){
+			if (oldParent[i] != -1){
+				bucketStart[distanceMatrix.getDistance(i, oldParent[i]) - minWeight + 1]++;
+			}
+		}
+		for (int i=oldVertexCount; i<n; i++){
+			for (int j=0; j<i; j++){
+				bucketStart[distanceMatrix.getDistance(i, j) - minWeight + 1]++;
+			}
+		}
+		for (int b=0; b<bucketCount; b++){
+			bucketStart[b+1] += bucketStart[b];
+		}
+		
+		/* store the edges sorted according to their weights, (xorshift random generator for the tie-breaks) */
+		long random = new Random().nextLong() | 1;
+		int bucket;
+		for (int i=0; i<oldVertexCount; i++){
+			if (oldParent[i] != -1){
+				random ^= random << 13;
+				random ^= random >>> 7;
+				random ^= random << 17;
+				bucket = distanceMatrix.getDistance(i, oldParent[i]) - minWeight;
+				edges[bucketStart[bucket]++] = ((random & tieBreakMask) << (2*indexBits)) | (((long)i) << indexBits) | oldParent[i];
+			}
+		}
+		for (int i=oldVertexCount; i<n; i++){
+			for (int j=0; j<i; j++){
+				random ^= random << 13;
+				random ^= random >>> 7;
+				random ^= random << 17;
+				bucket = distanceMatrix.getDistance(i, j) - minWeight;
+				edges[bucketStart[bucket]++] = ((random & tieBreakMask) << (2*indexBits)) | (((long)i) << indexBits) | j;
+			}
+		}
+		/* now bucketStart[b] is the end of bucket b and the start of bucket b+1 */
+		
+		kruskal(vertices, edges, bucketStart, bucketCount, indexBits);
+		
+		/* root the graph, keep the mutations of the old edges */
+		root(vertices.get(0), mm, indexMap, oldParent, oldMutations);
+		
+		/* store the arrays for the next run of MST */
+		mem.freeWeightCountArray(bucketStart);
+		mem.freePackedEdgeArray(edges);
+	}
+	
+	
+	/**
+	 * Kruskal - greedy algorithm, adds the edges of the MST to the vertices (the edges are not oriented).
+	 * 
+	 * @param edges packed edges (tie-break | i | j) sorted according to their weights by the counting sort
+	 * @param bucketStart bucketStart[b] is the end of the edges of weight minWeight + b
+	 * @param bucketCount the number of buckets
+	 * */
+	private static void kruskal(List<Vertex> vertices, long edges[], int bucketStart[], int bucketCount, int indexBits){
+		
+		int n = vertices.size();
+		long indexMask = (1L << indexBits) - 1;
+		
+		/* union-find */
+		int parent[] = new int[n];
+		byte rank[] = new byte[n];
+		for (int i=0; i<n; i++){
+			parent[i] = i;
+		}
+		
+		int edgeCount = 0;
+		int maxEdgeCount = n - 1;
+		int start = 0;
+		int end;
+		int r0;
+		int r1;
+		Vertex v0;
+		Vertex v1;
+		
+		for (int bucket=0; (bucket<bucketCount) && (edgeCount < maxEdgeCount); bucket++){
+			
+			end = bucketStart[bucket];
+			if (end - start > 1){
+				Arrays.sort(edges, start, end);
+			}
+			
+			for (int e=start; (e<end) && (edgeCount < maxEdgeCount); e++){
+				
+				r0 = find(parent, (int)((edges[e] >>> indexBits) & indexMask));
+				r1 = find(parent, (int)(edges[e] & indexMask));
+				
+				/* are these vertices already unified ? */
+				if (r0 != r1){
+					
+					/* add this edge */
+					v0 = vertices.get((int)((edges[e] >>> indexBits) & indexMask));
+					v1 = vertices.get((int)(edges[e] & indexMask));
+					v0.setOutcomingEdge(v1);
+					v1.setOutcomingEdge(v0);
+					
+					/* union by rank */
+					if (rank[r0] < rank[r1]){
+						parent[r0] = r1;
+					} else {
+						if (rank[r0] == rank[r1]){
+							rank[r0]++;
+						}
+						parent[r1] = r0;
+					}
+					edgeCount++;
+				}
+			}
+			start = end;
+		}
+	}
+	
+	
+	/**
+	 * Union-find: get the component of a vertex (with path compression).
+	 * */
+	private static int find(int parent[], int v){
+		int r = v;
+		while (parent[r] != r){
+			r = parent[r];
+		}
+		int next;
+		while (parent[v] != r){
+			next = parent[v];
+			parent[v] = r;
+			v = next;
+		}
+		return r;
 	}
 	
 	
@@ -158,6 +409,38 @@ public class MSTPrim {
 	}
 	
 	
+	/**
+	 * DFS the graph, root it and add mutations, an edge that was in the old tree with the same orientation 
+	 * gets its old mutations.
+	 * 
+	 * @param oldParent the index of the parent in the old tree for each old vertex (-1 ~ no parent)
+	 * @param oldMutations the mutations of the edges of the old tree
+	 * */
+	private static void root(Vertex vertex, MutationManager mm, IntIndexMap indexMap, int oldParent[], 
+			Mutations oldMutations[]){
+		
+		Vertex vertex2;
+		int index = indexMap.get(vertex.getIntId());
+		int index2;
+		
+		for (int i=0; i< vertex.getOutcomingEdges().size(); i++){
+			
+			vertex2 = vertex.getOutcomingEdges().get(i);
+			index2 = indexMap.get(vertex2.getIntId());
+			
+			vertex2.setIncomingEdge(vertex);
+			vertex2.removeOutcomingEdge(vertex);
+			if ((index2 < oldParent.length) && (oldParent[index2] == index)){
+				vertex2.setMutations(oldMutations[index2]);
+			} else {
+				vertex2.setMutations(mm.getMutations(vertex, vertex2));
+			}
+			
+			root(vertex2, mm, indexMap, oldParent, oldMutations);
+		}
+	}
+	
+	
 	/**
 	 * Test method
 	 * */
@@ -1,6 +1,7 @@
 package mst.prim;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
 
@@ -13,8 +14,8 @@ import java.util.PriorityQueue;
  * */
 public class MemoryManager {
 
-	private List<PriorityQueue<SEdge>> edgePriorityQueues;
-	private List<List<SEdge>> edgeArray;
+	private List<long[]> packedEdgeArrays;
+	private List<int[]> weightCountArrays;
 	
 	private List<PriorityQueue<FEdge>> dedgePriorityQueues;
 	private List<List<FEdge>> dedgeArray;
@@ -24,8 +25,8 @@ public class MemoryManager {
 	 * Constructor.
 	 * */
 	public MemoryManager(){
-		edgePriorityQueues = new ArrayList<PriorityQueue<SEdge>>(10);
-		edgeArray = new ArrayList<List<SEdge>>(10);
+		packedEdgeArrays = new ArrayList<long[]>(10);
+		weightCountArrays = new ArrayList<int[]>(10);
 		dedgePriorityQueues = new ArrayList<PriorityQueue<FEdge>>(10);
 		dedgeArray = new ArrayList<List<FEdge>>(10);
 	}
@@ -33,15 +34,8 @@ public class MemoryManager {
 	
 	public synchronized void clear(){
 		
-		for (int i=0; i<edgePriorityQueues.size(); i++){
-			edgePriorityQueues.get(i).clear();
-		}
-		edgePriorityQueues.clear();
-		
-		for (int i=0; i<edgeArray.size(); i++){
-			edgeArray.get(i).clear();
-		}
-		edgeArray.clear();
+		packedEdgeArrays.clear();
+		weightCountArrays.clear();
 		
 		for (int i=0; i<dedgePriorityQueues.size(); i++){
 			dedgePriorityQueues.get(i).clear();
@@ -59,35 +53,43 @@ public class MemoryManager {
 	//------------------------
 	
 	
-	public synchronized PriorityQueue<SEdge> getEdgePriorityQueue(int size){
-		if (edgePriorityQueues.isEmpty()){
-			//System.out.println("created new priority queue: " + size);
-			return new PriorityQueue<SEdge>(size); 
-		} else {
-			return edgePriorityQueues.remove(edgePriorityQueues.size()-1);	
+	/**
+	 * Get an array of packed edges (its length can be greater than the size).
+	 * */
+	public synchronized long[] getPackedEdgeArray(int size){
+		for (int i=packedEdgeArrays.size()-1; i>=0; i--){
+			if (packedEdgeArrays.get(i).length >= size){
+				return packedEdgeArrays.remove(i);
+			}
 		}
+		/* the arrays that are too small are not needed any more */
+		packedEdgeArrays.clear();
+		return new long[size];
 	}
 	
 	
-	public synchronized void freeEdgePriorityQueue(PriorityQueue<SEdge> queue){
-		queue.clear();
-		edgePriorityQueues.add(queue);
+	public synchronized void freePackedEdgeArray(long[] array){
+		packedEdgeArrays.add(array);
 	}
 	
 	
-	public synchronized List<SEdge> getEdgeArray(int size){
-		if (edgeArray.isEmpty()){
-			//System.out.println("created new array: " + size);
-			return new ArrayList<SEdge>(size); 
-		} else {
-			return edgeArray.remove(edgeArray.size()-1);	
+	/**
+	 * Get an array of counters, the first size counters are set to zero (its length can be greater than the size).
+	 * */
+	public synchronized int[] getWeightCountArray(int size){
+		for (int i=weightCountArrays.size()-1; i>=0; i--){
+			if (weightCountArrays.get(i).length >= size){
+				int[] array = weightCountArrays.remove(i);
+				Arrays.fill(array, 0, size, 0);
+				return array;
+			}
 		}
+		return new int[size];
 	}
 	
 	
-	public synchronized void freeEdgeArray(List<SEdge> array){
-		array.clear();
-		edgeArray.add(array);
+	public synchronized void freeWeightCountArray(int[] array){
+		weightCountArrays.add(array);
 	}
 	
 	
@@ -1,7 +1,9 @@
 package mst.primcompletegraph;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import ptree.MutationManager;
 import ptree.Vertex;
@@ -16,6 +18,14 @@ import dmatrix.Matrix;
  * if two nodes have the same distance to the temporary MST, the vertex with the highest number is added. 
  * Time complexity O(N) + O (1) + O(N^2) + O(N) + O(N^2) = O(N^2).
  * Space complexity O(N).
+ * 
+ * The parallel version splits the nodes into chunks, in each step the chunks update the distances 
+ * and find their nearest nodes in one pass, see {@link PrimThreadPool}. The result is the same as the result
+ * of the sequential version.
+ * 
+ * The bucket version (Dial`s algorithm) is suitable for small integer distances, the nodes that are not yet
+ * in the temporary MST are stored in buckets according to their distances and random numbers,
+ * therefore the nearest node is found without scanning all nodes, see {@link #runPrimBuckets(int)}.
  * */
 public class PrimCompleteGraph {
 
@@ -42,15 +52,75 @@ public class PrimCompleteGraph {
 	int edgeV1[];
 	int edgeCount;
 	
+	/* the number of threads (1 ~ the sequential version) */
+	private int threadCount;
+	
+	/* the node that was added to the temporary MST in the last step of the parallel version */
+	private int newNode;
+	
+	/* the number of different random numbers (the number of buckets for one distance) */
+	private static final int RAND_RANGE = 256;
+	
+	/* the buckets are used only for graphs with more nodes (allocation of the buckets doesn`t pay off for small graphs) */
+	private static final int BUCKETS_MIN_SIZE = 200;
+	
+	/* bucket queue: the nodes of bucket "key" form a doubly linked list that starts at bucketHead[key],
+	 * bit "key" of bucketBits is set iff the bucket is not empty, bit "w" of bucketSummary is set iff 
+	 * word "w" of bucketBits is not zero */
+	private int bucketHead[];
+	private int bucketNext[];
+	private int bucketPrev[];
+	private long bucketBits[];
+	private long bucketSummary[];
+	
+	/* the number of buckets, the nodes with a greater key are stored in the overflow list */
+	private int keyCount;
+	
+	/* overflow list: {overflow[i] | i in [0..overflowCount)}, overflowPos[node] is the position of the node in the list */
+	private int overflow[];
+	private int overflowPos[];
+	private int overflowCount;
+	
 	
 	/**
 	 * Computes MST.
 	 * */
 	public static void computeMST(List<Vertex> vertices, Matrix distanceMatrix, MutationManager mm){
+		computeMST(vertices, distanceMatrix, mm, 1);
+	}
+	
+	
+	/**
+	 * Computes MST.
+	 * 
+	 * @param threadCount the number of threads (1 ~ the sequential version)
+	 * */
+	public static void computeMST(List<Vertex> vertices, Matrix distanceMatrix, MutationManager mm, int threadCount){
+		computeMST(vertices, distanceMatrix, mm, threadCount, 0);
+	}
+	
+	
+	/**
+	 * Computes MST.
+	 * 
+	 * @param threadCount the number of threads (1 ~ the sequential version)
+	 * @param bucketMaxDistance the sequential version uses buckets for the distances that are lower than this
+	 * number (0 ~ the buckets are not used), the buckets are not used for small graphs
+	 * */
+	public static void computeMST(List<Vertex> vertices, Matrix distanceMatrix, MutationManager mm, int threadCount, 
+			int bucketMaxDistance){
 		
 		/* run MST*/
-		PrimCompleteGraph prim = new PrimCompleteGraph(distanceMatrix); 
-		prim.runPrim();
+		PrimCompleteGraph prim = new PrimCompleteGraph(distanceMatrix, threadCount); 
+		if (threadCount > 1){
+			prim.runPrimParallel();
+		} else {
+			if ((bucketMaxDistance > 0) && (prim.size > BUCKETS_MIN_SIZE)){
+				prim.runPrimBuckets(bucketMaxDistance);
+			} else {
+				prim.runPrim();
+			}
+		}
 		
 		Vertex v0;
 		Vertex v1;
@@ -71,8 +141,9 @@ public class PrimCompleteGraph {
 	/**
 	 * Constructor.
 	 * */
-	private PrimCompleteGraph(Matrix distanceMatrix){
+	private PrimCompleteGraph(Matrix distanceMatrix, int threadCount){
 		this.distanceMatrix = distanceMatrix;
+		this.threadCount = threadCount;
 		this.size = distanceMatrix.getSize();
 		this.inMST = new boolean[size];
 		this.distanceToMST = new int[size];
@@ -92,31 +163,50 @@ public class PrimCompleteGraph {
 	 * */
 	private void updateDistances(int newNode) {
 		
-		int dist;
-		
 		for (int i = 0; i < size; i++){								
 			
 			if (!inMST[i]){//the node is not yet in the temporary MST
 				
-				dist = distanceMatrix.getDistance(newNode, i);
-				
-				if (dist < distanceToMST[i]){//the distance to "i" is shorter via newNode 
-					
-					distanceToMST[i] = dist;				 
-					shortestEdgeTo[i] = newNode;					 
-				
-				} else {//the distance is the same but I decide based on the random numbers of respective nodes
-					
-					if ((distanceToMST[i] == dist) && (randArray[newNode] < randArray[shortestEdgeTo[i]])){
-						shortestEdgeTo[i] = newNode;	
-					}
-					
-				}
+				updateDistance(newNode, i);
 			}
 		}
 	}
 	
 	
+	/**
+	 * Update the distance of node "i" that is not yet in the temporary MST to the temporary MST,
+	 * now considering the new added node.
+	 * */
+	private void updateDistance(int newNode, int i) {
+		
+		int dist = distanceMatrix.getDistance(newNode, i);
+		
+		if (dist < distanceToMST[i]){//the distance to "i" is shorter via newNode 
+			
+			distanceToMST[i] = dist;				 
+			shortestEdgeTo[i] = newNode;					 
+		
+		} else {//the distance is the same but I decide based on the random numbers of respective nodes
+			
+			if ((distanceToMST[i] == dist) && (randArray[newNode] < randArray[shortestEdgeTo[i]])){
+				shortestEdgeTo[i] = newNode;	
+			}
+			
+		}
+	}
+	
+	
+	/**
+	 * Whether node "i" is nearer to the temporary MST than node "min" (the same comparison as in {@link #runPrim()},
+	 * where the node with the lower index wins if the distances and the random numbers are the same).
+	 * */
+	private boolean isNearer(int i, int min){
+		return (distanceToMST[i] < distanceToMST[min]) 
+				|| ((distanceToMST[i] == distanceToMST[min]) && ((randArray[i] < randArray[min]) 
+						|| ((randArray[i] == randArray[min]) && (i < min))));
+	}
+	
+	
 	/**
 	 * Run the algorithm.
 	 * */
@@ -183,6 +273,303 @@ public class PrimCompleteGraph {
 		
 		//System.out.println("cost: " + treeCost);
 	}
+	
+	
+	/**
+	 * Run the algorithm with a bucket queue (Dial`s algorithm).
+	 * 
+	 * The key of a node is (distance to the temporary MST, random number of the node), the nearest node is 
+	 * the node with the lowest key, as in {@link #runPrim()}. The lowest non-empty bucket is found via the bits 
+	 * of the buckets, the node with the lowest index is taken from the bucket, so the MST is the same as the MST
+	 * computed by {@link #runPrim()}. The distance of a node to the temporary MST can only decrease, therefore the buckets 
+	 * are allocated according to the distances to the first node. The nodes whose distance is at least 
+	 * bucketMaxDistance are stored in the overflow list that is scanned only if all buckets are empty.
+	 * When the distances are updated, only the nodes that are not yet in the temporary MST are visited.
+	 * 
+	 * @param bucketMaxDistance the buckets are used for the distances that are lower than this number
+	 * */
+	private void runPrimBuckets(int bucketMaxDistance){
+		
+		/* the nodes that are not yet in the temporary MST: {remaining[i] | i in [0..remainingCount)} */
+		int remaining[] = new int[size];
+		int remainingPos[] = new int[size];
+		int remainingCount = 0;
+		
+		/* add the first node to the temporary MST and compute the distances to it */
+		for (int i = 0; i < size; i++){
+			inMST[i] = false;
+		}
+		inMST[0] = true;
+		
+		int maxDistance = 0;
+		for (int i = 1; i < size; i++){
+			distanceToMST[i] = distanceMatrix.getDistance(0, i);
+			shortestEdgeTo[i] = 0;
+			maxDistance = Math.max(maxDistance, distanceToMST[i]);
+			remainingPos[i] = remainingCount;
+			remaining[remainingCount++] = i;
+		}
+		
+		/* allocate the buckets */
+		keyCount = (Math.min(maxDistance, bucketMaxDistance - 1) + 1) * RAND_RANGE;
+		bucketHead = new int[keyCount];
+		bucketNext = new int[size];
+		bucketPrev = new int[size];
+		bucketBits = new long[(keyCount + 63) >>> 6];
+		bucketSummary = new long[(bucketBits.length + 63) >>> 6];
+		overflow = new int[size];
+		overflowPos = new int[size];
+		overflowCount = 0;
+		
+		for (int i = 1; i < size; i++){
+			insertIntoBucket(i);
+		}
+		
+		int min;
+		int last;
+		int node;
+		int dist;
+		
+		/* Add the nearest node to the temporary MST in each step */
+		for (int treeSize = 1; treeSize < size; treeSize++) {
+			
+			/* get the nearest node */
+			min = getNearestNode();
+			removeFromBucket(min);
+			
+			last = remaining[--remainingCount];
+			remaining[remainingPos[min]] = last;
+			remainingPos[last] = remainingPos[min];
+			
+			/* add the new node */
+			inMST[min] = true;
+			
+			/* mark which edge was added */
+			edgeV0[edgeCount] = min;
+			edgeV1[edgeCount] = shortestEdgeTo[min];
+			edgeCount++;
+			
+			/* update the distances of the nodes that are not yet in the temporary MST (as in updateDistance) */
+			for (int r = 0; r < remainingCount; r++){
+				
+				node = remaining[r];
+				dist = distanceMatrix.getDistance(min, node);
+				
+				if (dist < distanceToMST[node]){
+					removeFromBucket(node);
+					distanceToMST[node] = dist;
+					shortestEdgeTo[node] = min;
+					insertIntoBucket(node);
+				} else {
+					if ((distanceToMST[node] == dist) && (randArray[min] < randArray[shortestEdgeTo[node]])){
+						shortestEdgeTo[node] = min;
+					}
+				}
+			}
+		}
+		
+		/* release the buckets */
+		bucketHead = null;
+		bucketNext = null;
+		bucketPrev = null;
+		bucketBits = null;
+		bucketSummary = null;
+		overflow = null;
+		overflowPos = null;
+	}
+	
+	
+	/**
+	 * Get the key of a node (its bucket), the keys are ordered in the same way as in {@link #isNearer(int, int)}.
+	 * 
+	 * @return the key or a number that is not lower than keyCount (~ the node belongs to the overflow list)
+	 * */
+	private long getKey(int node){
+		return ((long)distanceToMST[node]) * RAND_RANGE + (randArray[node] - Byte.MIN_VALUE);
+	}
+	
+	
+	private void insertIntoBucket(int node){
+		
+		long key = getKey(node);
+		
+		if (key >= keyCount){
+			overflowPos[node] = overflowCount;
+			overflow[overflowCount++] = node;
+			return;
+		}
+		
+		int k = (int)key;
+		
+		bucketPrev[node] = -1;
+		if ((bucketBits[k >>> 6] & (1L << k)) == 0){
+			/* the bucket was empty */
+			bucketNext[node] = -1;
+			bucketBits[k >>> 6] |= 1L << k;
+			bucketSummary[k >>> 12] |= 1L << (k >>> 6);
+		} else {
+			bucketNext[node] = bucketHead[k];
+			bucketPrev[bucketHead[k]] = node;
+		}
+		bucketHead[k] = node;
+	}
+	
+	
+	private void removeFromBucket(int node){
+		
+		long key = getKey(node);
+		
+		if (key >= keyCount){
+			int last = overflow[--overflowCount];
+			overflow[overflowPos[node]] = last;
+			overflowPos[last] = overflowPos[node];
+			return;
+		}
+		
+		int k = (int)key;
+		
+		if (bucketPrev[node] != -1){
+			bucketNext[bucketPrev[node]] = bucketNext[node];
+		} else {
+			bucketHead[k] = bucketNext[node];
+		}
+		if (bucketNext[node] != -1){
+			bucketPrev[bucketNext[node]] = bucketPrev[node];
+		}
+		
+		if (bucketHead[k] == -1){
+			/* the bucket is empty now */
+			bucketBits[k >>> 6] &= ~(1L << k);
+			if (bucketBits[k >>> 6] == 0){
+				bucketSummary[k >>> 12] &= ~(1L << (k >>> 6));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Get the node with the lowest key (the nearest node to the temporary MST).
+	 * */
+	private int getNearestNode(){
+		
+		for (int s = 0; s < bucketSummary.length; s++){
+			if (bucketSummary[s] != 0){
+				int w = (s << 6) + Long.numberOfTrailingZeros(bucketSummary[s]);
+				int k = (w << 6) + Long.numberOfTrailingZeros(bucketBits[w]);
+				
+				/* the nodes of a bucket have the same key, take the node with the lowest index */
+				int min = bucketHead[k];
+				for (int node = bucketNext[min]; node != -1; node = bucketNext[node]){
+					if (node < min){
+						min = node;
+					}
+				}
+				return min;
+			}
+		}
+		
+		/* all buckets are empty, scan the overflow list */
+		int min = overflow[0];
+		for (int i = 1; i < overflowCount; i++){
+			if (isNearer(overflow[i], min)){
+				min = overflow[i];
+			}
+		}
+		return min;
+	}
+	
+	
+	/**
+	 * Run the parallel version of the algorithm.
+	 * */
+	private void runPrimParallel(){
+		
+		/* initialize the distances to the temporary MST to the infinity */
+		for (int i = 0; i < size; i++){
+			distanceToMST[i] = Integer.MAX_VALUE;
+		}
+		
+		/* the temporary MST contains no nodes */
+		for (int i = 0; i < size; i++){
+			inMST[i] = false;
+		}
+		
+		int bounds[] = PrimThreadPool.getChunkBounds(size, threadCount);
+		List<Callable<Integer>> chunks = new ArrayList<Callable<Integer>>(bounds.length - 1);
+		for (int c = 0; c < bounds.length - 1; c++){
+			chunks.add(new Chunk(bounds[c], bounds[c+1]));
+		}
+		
+		/* add the first node to the temporary MST */
+		inMST[0] = true;
+		newNode = 0;
+		
+		int results[];
+		int min;
+		
+		/* the workers that compute the chunks in each step */
+		PrimThreadPool.Steps steps = new PrimThreadPool.Steps(chunks, threadCount);
+		
+		try {
+			
+			/* Add the nearest node to the temporary MST in each step */
+			for (int treeSize = 1; treeSize < size; treeSize++) {
+				
+				/* update the distances considering the new node, get the nearest node of each chunk */
+				results = steps.run();
+				
+				/* the nearest node of all chunks, the chunks are compared in the order of the nodes */
+				min = -1;
+				for (int c = 0; c < results.length; c++){
+					if ((results[c] != -1) && ((min == -1) || isNearer(results[c], min))){
+						min = results[c];
+					}
+				}
+				
+				/* add the new node */
+				inMST[min] = true;
+				
+				/* mark which edge was added */
+				edgeV0[edgeCount] = min;
+				edgeV1[edgeCount] = shortestEdgeTo[min];
+				edgeCount++;
+				
+				newNode = min;
+			}
+		} finally {
+			steps.finish();
+		}
+	}
+	
+	
+	/**
+	 * A chunk of nodes of the parallel version. In each step it updates the distances of its nodes 
+	 * considering the new added node and returns its nearest node (-1 if all its nodes are in the temporary MST).
+	 * */
+	private class Chunk implements Callable<Integer> {
+		
+		private final int from;
+		private final int to;
+		
+		private Chunk(int from, int to){
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Integer call(){
+			int min = -1;
+			for (int i = from; i < to; i++){
+				if (!inMST[i]){
+					updateDistance(newNode, i);
+					if ((min == -1) || isNearer(i, min)){
+						min = i;
+					}
+				}
+			}
+			return min;
+		}
+	}
 
 
 }
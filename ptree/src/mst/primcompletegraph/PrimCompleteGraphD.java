@@ -1,7 +1,9 @@
 package mst.primcompletegraph;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import ptree.MutationManager;
 import ptree.Vertex;
@@ -26,14 +28,32 @@ public class PrimCompleteGraphD {// !!!
 	int edgeV1[];
 	int edgeCount;
 	
+	private int threadCount;
+	
+	private int newNode;
+	
 	
 	/**
 	 * Computes MST.
 	 * */
 	public static void computeMST(List<Vertex> vertices, DMatrix distanceMatrix, MutationManager mm){// !!!
+		computeMST(vertices, distanceMatrix, mm, 1);
+	}
+	
+	
+	/**
+	 * Computes MST.
+	 * 
+	 * @param threadCount the number of threads (1 ~ the sequential version)
+	 * */
+	public static void computeMST(List<Vertex> vertices, DMatrix distanceMatrix, MutationManager mm, int threadCount){
 		
-		PrimCompleteGraphD prim = new PrimCompleteGraphD(distanceMatrix); 
-		prim.runPrim();
+		PrimCompleteGraphD prim = new PrimCompleteGraphD(distanceMatrix, threadCount); 
+		if (threadCount > 1){
+			prim.runPrimParallel();
+		} else {
+			prim.runPrim();
+		}
 		
 		Vertex v0;
 		Vertex v1;
@@ -52,8 +72,9 @@ public class PrimCompleteGraphD {// !!!
 	/**
 	 * Constructor.
 	 * */
-	private PrimCompleteGraphD(DMatrix distanceMatrix){
+	private PrimCompleteGraphD(DMatrix distanceMatrix, int threadCount){
 		this.distanceMatrix = distanceMatrix;
+		this.threadCount = threadCount;
 		this.size = distanceMatrix.getSize();
 		this.inMST = new boolean[size];
 		this.distanceToMST = new float[size];// !!!
@@ -70,31 +91,41 @@ public class PrimCompleteGraphD {// !!!
 	
 	private void updateDistances(int newNode) {
 		
-		float dist;// !!!
-		
 		for (int i = 0; i < size; i++){								
 			
 			if (!inMST[i]){
 				
-				dist = distanceMatrix.getDistance(newNode, i);
-				
-				if (dist < distanceToMST[i]){
-					
-					distanceToMST[i] = dist;				 
-					shortestEdgeTo[i] = newNode;					 
-				
-				} else {
-					// !!!
-					if ((Math.abs(distanceToMST[i] - dist) < 0.001) && (randArray[newNode] < randArray[shortestEdgeTo[i]])){
-						shortestEdgeTo[i] = newNode;	
-					}
-					
-				}
+				updateDistance(newNode, i);
+			}
+		}
+	}
+	
+	
+	private void updateDistance(int newNode, int i) {
+		
+		float dist = distanceMatrix.getDistance(newNode, i);// !!!
+		
+		if (dist < distanceToMST[i]){
+			
+			distanceToMST[i] = dist;				 
+			shortestEdgeTo[i] = newNode;					 
+		
+		} else {
+			// !!!
+			if ((Math.abs(distanceToMST[i] - dist) < 0.001) && (randArray[newNode] < randArray[shortestEdgeTo[i]])){
+				shortestEdgeTo[i] = newNode;	
 			}
+			
 		}
 	}
 	
 	
+	private boolean isNearer(int i, int min){// !!!
+		return (distanceToMST[i] < distanceToMST[min]) 
+				|| ((Math.abs(distanceToMST[i] - distanceToMST[min]) < 0.001) && (randArray[i] < randArray[min]));
+	}
+	
+	
 	private void runPrim(){
 		
 		for (int i = 0; i < size; i++){
@@ -145,6 +176,85 @@ public class PrimCompleteGraphD {// !!!
 		}
 		
 	}
+	
+	
+	/** See: PrimCompleteGraph */
+	private void runPrimParallel(){
+		
+		for (int i = 0; i < size; i++){
+			distanceToMST[i] = Float.MAX_VALUE; // !!!
+		}
+		
+		for (int i = 0; i < size; i++){
+			inMST[i] = false;
+		}
+		
+		int bounds[] = PrimThreadPool.getChunkBounds(size, threadCount);
+		List<Callable<Integer>> chunks = new ArrayList<Callable<Integer>>(bounds.length - 1);
+		for (int c = 0; c < bounds.length - 1; c++){
+			chunks.add(new Chunk(bounds[c], bounds[c+1]));
+		}
+		
+		inMST[0] = true;
+		newNode = 0;
+		
+		int results[];
+		int min;
+		
+		PrimThreadPool.Steps steps = new PrimThreadPool.Steps(chunks, threadCount);
+		
+		try {
+			
+			for (int treeSize = 1; treeSize < size; treeSize++) {
+				
+				results = steps.run();
+				
+				min = -1;
+				for (int c = 0; c < results.length; c++){
+					if ((results[c] != -1) && ((min == -1) || isNearer(results[c], min))){
+						min = results[c];
+					}
+				}
+				
+				inMST[min] = true;
+				
+				edgeV0[edgeCount] = min;
+				edgeV1[edgeCount] = shortestEdgeTo[min];
+				edgeCount++;
+				
+				newNode = min;
+			}
+		} finally {
+			steps.finish();
+		}
+	}
+	
+	
+	/** See: PrimCompleteGraph */
+	private class Chunk implements Callable<Integer> {
+		
+		private final int from;
+		private final int to;
+		
+		private Chunk(int from, int to){
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		public Integer call(){
+			int min = -1;
+			for (int i = from; i < to; i++){
+				if (!inMST[i]){
+					updateDistance(newNode, i);
+					if ((min == -1) || isNearer(i, min)){
+						min = i;
+					}
+				}
+			}
+			return min;
+		}
+	}
 
 
 }
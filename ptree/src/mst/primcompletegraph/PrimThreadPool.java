@@ -0,0 +1,222 @@
+package mst.primcompletegraph;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Pool of threads that runs the steps of the parallel Prim algorithms.
+ *
+ * In each step the range of nodes is split into chunks; each chunk updates the distances of its nodes
+ * to the temporary MST and returns its nearest node. The nearest nodes of the chunks are then reduced
+ * in the order of the chunks, so the result is the same as the result of the sequential algorithm.
+ *
+ * A step is too short to submit tasks to the pool in each step, therefore the workers of one computation
+ * (see {@link Steps}) are started once and wait for the next step by spinning on a step counter.
+ * */
+class PrimThreadPool {
+
+	/* pool of threads that is shared by all computations */
+	private static ExecutorService executor = null;
+
+	private static int executorThreadCount = 0;
+
+	/* a waiting thread checks the step counter this many times before it starts to yield */
+	private static final int SPIN_COUNT = 1000;
+
+	/* a waiting worker yields this many times before it starts to sleep */
+	private static final int YIELD_COUNT = 100;
+
+	/* how long a waiting worker sleeps (ns) */
+	private static final long PARK_NANOS = 50000;
+
+
+	/**
+	 * Get the pool of threads that contains at least threadCount threads.
+	 * */
+	private static synchronized ExecutorService getExecutor(int threadCount){
+
+		if ((executor == null) || (executorThreadCount < threadCount)){
+
+			if (executor != null){
+				executor.shutdown();
+			}
+
+			executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "mst-prim");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executorThreadCount = threadCount;
+		}
+		return executor;
+	}
+
+
+	/**
+	 * Split the range of nodes [0..size) into chunks of approximately the same size.
+	 *
+	 * @return the boundaries of the chunks: chunk i is [bounds[i]..bounds[i+1])
+	 * */
+	static int[] getChunkBounds(int size, int threadCount){
+		int chunkCount = Math.max(1, Math.min(threadCount, size));
+		int bounds[] = new int[chunkCount + 1];
+		for (int i=0; i<=chunkCount; i++){
+			bounds[i] = (int)(((long)size*i)/chunkCount);
+		}
+		return bounds;
+	}
+
+
+	/**
+	 * The steps of one computation.
+	 *
+	 * The workers are started once and run until {@link #finish()} is called. In each step the chunks are claimed
+	 * by the workers and by the calling thread, i.e. the calling thread computes the chunks that no worker has claimed
+	 * (e.g. the workers haven`t started yet because the pool is used by other computations).
+	 * The chunks of step s are claimed via tickets s*chunkCount, .., (s+1)*chunkCount - 1.
+	 * */
+	static class Steps {
+
+		private final List<Callable<Integer>> chunks;
+
+		/* the results of the chunks of the current step */
+		private final int results[];
+
+		/* the next ticket to claim, the number of finished chunks (of all steps) */
+		private final AtomicLong claimed = new AtomicLong(0);
+		private final AtomicLong done = new AtomicLong(0);
+
+		/* the number of started steps (written only by the calling thread) */
+		private volatile long step = 0;
+
+		private volatile boolean finished = false;
+
+
+		/**
+		 * Start the workers.
+		 *
+		 * @param chunks the chunks of a step
+		 * @param threadCount the number of threads including the calling thread
+		 * */
+		Steps(List<Callable<Integer>> chunks, int threadCount){
+
+			this.chunks = chunks;
+			this.results = new int[chunks.size()];
+
+			int workerCount = Math.min(threadCount, chunks.size()) - 1;
+			if (workerCount > 0){
+				ExecutorService pool = getExecutor(workerCount);
+				for (int i=0; i<workerCount; i++){
+					pool.execute(new Runnable(){
+						@Override
+						public void run() {
+							work();
+						}
+					});
+				}
+			}
+		}
+
+
+		/**
+		 * Run one step, i.e. all chunks, and wait until all chunks are finished.
+		 * The changes made by the calling thread before this method is called are visible to the chunks.
+		 *
+		 * @return the results of the chunks in the order of the chunks (the array is reused in the next step)
+		 * */
+		int[] run(){
+
+			long s = step;
+			step = s + 1;
+
+			runChunks(s);
+
+			/* wait for the chunks that were claimed by the workers */
+			long target = (s + 1)*chunks.size();
+			for (int idle = 0; done.get() != target; idle++){
+				if (idle >= SPIN_COUNT){
+					Thread.yield();
+				}
+			}
+			return results;
+		}
+
+
+		/**
+		 * Stop the workers (must be called when the computation is finished).
+		 * */
+		void finish(){
+			finished = true;
+		}
+
+
+		/**
+		 * The loop of a worker: wait for the next step and take part in it.
+		 * */
+		private void work(){
+
+			long seen = 0;
+			long current;
+			int idle = 0;
+
+			while (!finished){
+				current = step;
+				if (current != seen){
+					seen = current;
+					runChunks(current - 1);
+					idle = 0;
+				} else {
+					idle++;
+					if (idle > SPIN_COUNT + YIELD_COUNT){
+						LockSupport.parkNanos(PARK_NANOS);
+					} else if (idle > SPIN_COUNT){
+						Thread.yield();
+					}
+				}
+			}
+		}
+
+
+		/**
+		 * Claim the chunks of step s and compute them until no chunk of the step is left.
+		 * */
+		private void runChunks(long s){
+
+			int chunkCount = chunks.size();
+			long first = s*chunkCount;
+			long end = first + chunkCount;
+			long ticket;
+
+			for (;;){
+				ticket = claimed.get();
+				if ((ticket < first) || (ticket >= end)){
+					return;
+				}
+				if (claimed.compareAndSet(ticket, ticket + 1)){
+					int c = (int)(ticket - first);
+					try {
+						results[c] = chunks.get(c).call();
+					} catch (Exception ex){
+						Log log = LogFactory.getLog(PrimThreadPool.class);
+						log.error("The parallel Prim algorithm failed.", ex);
+						System.exit(-1);
+					}
+					done.incrementAndGet();
+				}
+			}
+		}
+	}
+
+}
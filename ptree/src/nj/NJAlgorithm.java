@@ -5,6 +5,8 @@ import java.util.ArrayList;
 
 import nj.NJVertex;
 
+import dmatrix.FloatTriangularStorage;
+
 import pal.tree.NeighborJoiningTree;
 import pal.tree.Node;
 import pal.distance.DistanceMatrix;
@@ -28,66 +30,115 @@ public class NJAlgorithm {
 	 * */
 	public NJVertex computeNJTree(float dmatrix[][]){
 		
-		/* create matrix for PAL input */
-		double dist[][] = new double[dmatrix.length][];
-		for (int i=0; i<dmatrix.length; i++){ 
-			dist[i] = new double[dmatrix.length];
-		}
-
-		/* copy the distance matrix for PAL input */
-		for (int i=0; i<dmatrix.length; i++){
-			for (int j=0; j<dmatrix.length; j++){
-				if (i==j){
-					dist[i][j] = 0;
-				} else {
-					dist[i][j] = dmatrix[Math.max(i, j)][Math.min(i,j)];
+		/* compute NJ tree using PAL library */
+		NeighborJoiningTree njTree = computePALTree(dmatrix);
+		Node root = njTree.getRoot();
+		
+		GNJVertex njRoot = new GNJVertex(root.getNumber());
+	  
+		/* transform the NJ tree to a graph and collect leafs */
+		treeToNJTree(root, njRoot);
+	  
+		return njRoot;
+	}
+	
+	
+	/**
+	 * Computes a NJ matrix from a given distance matrix. 
+	 * 
+	 * @param dmatrix distance matrix
+	 * @param matrix output: NJ matrix (distances corresponds to the distances in the NJ tree), only the lower triangle is set
+	 * */
+	public void computeNJMatrix(float dmatrix[][], FloatTriangularStorage matrix){
+		
+		/* compute NJ tree using PAL library */
+		NeighborJoiningTree njTree = computePALTree(dmatrix);
+		Node root = njTree.getRoot();
+  
+		/* get external node count */
+		int externalNodeCount = njTree.getExternalNodeCount();
+		
+		/* number of all nodes in a tree */  
+		int size = externalNodeCount;
+	    
+		/* initialize the output matrix */  
+		matrix.fill(size, Integer.MAX_VALUE);
+		
+		/* leafs of the NJ tree */
+		List<GVertex> leafs = new ArrayList<GVertex>(externalNodeCount);
+	  
+		/* transform the NJ tree to a graph and collect leafs */
+		treeToGraph(leafs, root, new GVertex(root.getNumber()));
+	  
+		GVertex leaf;
+		GVertex node;
+	  
+		/* From each leaf: go to the other leafs (DFS) and set the distance, delete the leaf from which we searched */
+		for (int i=0; i<leafs.size(); i++){
+			leaf = leafs.get(i);
+			setDistance(leaf, leaf, null, matrix);
+			node = leaf.neighbours.get(0);
+			for (int j=0; j<node.neighbours.size(); j++){
+				if (node.neighbours.get(j) == leaf){
+					node.neighbours.remove(j);
+					node.neighboursDist.remove(j);
+					break;
 				}
 			}
 		}
+	}
+
+	
+	/**
+	 * Computes the NJ tree given by the parents of its vertices.
+	 * 
+	 * @param dmatrix distance matrix
+	 * @param parent output: the parent of each vertex (leafs 0..n-1, internal vertices n..), -1 ~ the root;
+	 * the length of the array must be at least 2n-1
+	 * @param length output: the length of the edge from a vertex to its parent
+	 * 
+	 * @return the number of vertices of the NJ tree
+	 * */
+	public int computeNJParents(float dmatrix[][], int parent[], float length[]){
 		
-		/* generate nodes` names */
-		String str[] = new String[dmatrix.length];
-		for (int i=0; i<dmatrix.length; i++){
-			str[i] = new String(new Integer(i).toString());
+		if (dmatrix.length == 0){
+			return 0;
 		}
-
+		
 		/* compute NJ tree using PAL library */
-		SimpleIdGroup idGroup = new SimpleIdGroup(str);
-		DistanceMatrix distanceMatrix = new DistanceMatrix(dist, idGroup);
-		NeighborJoiningTree njTree = new NeighborJoiningTree(distanceMatrix);
+		NeighborJoiningTree njTree = computePALTree(dmatrix);
 		Node root = njTree.getRoot();
   
 		/* get internal and external node count */
 		int internalNodeCount = njTree.getInternalNodeCount();
 		int externalNodeCount = njTree.getExternalNodeCount();
-
-		/* set numbers of external nodes */
-		for (int i=0; i< externalNodeCount; i++){
-			njTree.getExternalNode(i).setNumber(new Integer(njTree.getExternalNode(i).getIdentifier().getName()));
+		
+		/* the parents of the external and internal nodes */
+		Node node;
+		for (int i=0; i<externalNodeCount + internalNodeCount; i++){
+			node = (i < externalNodeCount) ? njTree.getExternalNode(i) : njTree.getInternalNode(i - externalNodeCount);
+			if (node == root){
+				parent[node.getNumber()] = -1;
+				length[node.getNumber()] = 0.0f;
+			} else {
+				parent[node.getNumber()] = node.getParent().getNumber();
+				length[node.getNumber()] = (float)node.getBranchLength();
+			}
 		}
-	  
-		/* set number of internal nodes */
-		for (int i=0; i<internalNodeCount; i++){
-			njTree.getInternalNode(i).setNumber(njTree.getInternalNode(i).getNumber() + externalNodeCount);
-	 	}
 		
-		GNJVertex njRoot = new GNJVertex(root.getNumber());
-	  
-		/* transform the NJ tree to a graph and collect leafs */
-		treeToNJTree(root, njRoot);
-	  
-		return njRoot;
+		return externalNodeCount + internalNodeCount;
 	}
 	
 	
 	/**
-	 * Computes a NJ matrix from a given distance matrix. 
+	 * Computes the NJ tree using PAL library and renumbers its nodes:
+	 * external nodes 0..n-1 (the rows of the distance matrix), internal nodes n..
 	 * 
 	 * @param dmatrix distance matrix
 	 * 
-	 * @return NJ matrix (distances corresponds to the distances in the NJ tree)
+	 * @return the NJ tree
 	 * */
-	public float[][] computeNJMatrix(float dmatrix[][]){
+	private NeighborJoiningTree computePALTree(float dmatrix[][]){
 		
 		/* create matrix for PAL input */
 		double dist[][] = new double[dmatrix.length][];
@@ -109,41 +160,21 @@ public class NJAlgorithm {
 		/* generate nodes` names */
 		String str[] = new String[dmatrix.length];
 		for (int i=0; i<dmatrix.length; i++){
-			str[i] = new String(new Integer(i).toString());
+			str[i] = String.valueOf(i);
 		}
 
 		/* compute NJ tree using PAL library */
 		SimpleIdGroup idGroup = new SimpleIdGroup(str);
 		DistanceMatrix distanceMatrix = new DistanceMatrix(dist, idGroup);
 		NeighborJoiningTree njTree = new NeighborJoiningTree(distanceMatrix);
-		Node root = njTree.getRoot();
   
 		/* get internal and external node count */
 		int internalNodeCount = njTree.getInternalNodeCount();
 		int externalNodeCount = njTree.getExternalNodeCount();
-		
-		/* number of all nodes in a tree */  
-		int size = externalNodeCount;
-	    
-		/* allocate the output matrix  */
-		float matrix[][] = new float[size][];
-		for (int i=0; i<size; i++){
-			matrix[i] = new float[size];
-		}
-	  
-		/* initialize the output matrix */  
-		for (int i=0; i<size; i++){
-			for (int j=0; j<size;j++){
-				matrix[i][j] = Integer.MAX_VALUE;
-			}
-		}
-		for (int i=0; i<size; i++){
-			matrix[i][i] = 0;
-		}
 
 		/* set numbers of external nodes */
 		for (int i=0; i< externalNodeCount; i++){
-			njTree.getExternalNode(i).setNumber(new Integer(njTree.getExternalNode(i).getIdentifier().getName()));
+			njTree.getExternalNode(i).setNumber(Integer.parseInt(njTree.getExternalNode(i).getIdentifier().getName()));
 		}
 	  
 		/* set number of internal nodes */
@@ -151,37 +182,14 @@ public class NJAlgorithm {
 			njTree.getInternalNode(i).setNumber(njTree.getInternalNode(i).getNumber() + externalNodeCount);
 	 	}
 		
-		/* leafs of the NJ tree */
-		List<GVertex> leafs = new ArrayList<GVertex>(externalNodeCount);
-	  
-		/* transform the NJ tree to a graph and collect leafs */
-		treeToGraph(leafs, root, new GVertex(root.getNumber()));
-	  
-		GVertex leaf;
-		GVertex node;
-	  
-		/* From each leaf: go to the other leafs (DFS) and set the distance, delete the leaf from which we searched */
-		for (int i=0; i<leafs.size(); i++){
-			leaf = leafs.get(i);
-			setDistance(leaf, leaf, null, matrix);
-			node = leaf.neighbours.get(0);
-			for (int j=0; j<node.neighbours.size(); j++){
-				if (node.neighbours.get(j) == leaf){
-					node.neighbours.remove(j);
-					node.neighboursDist.remove(j);
-					break;
-				}
-			}
-		}
-		
-		return matrix;
+		return njTree;
 	}
-
+	
 	
 	/**
 	 * Set the distance of two leafs in a NJ tree.
 	 * */  
-	private void setDistance(GVertex leaf, GVertex node, GVertex pnode, float matrix[][]){
+	private void setDistance(GVertex leaf, GVertex node, GVertex pnode, FloatTriangularStorage matrix){
 		
 		GVertex tempNode;
 	  
@@ -196,8 +204,7 @@ public class NJAlgorithm {
 	  
 		if (node.isLeaf){
 		  
-			matrix[node.number][leaf.number] = node.tempDistance;
-			matrix[leaf.number][node.number] = node.tempDistance;
+			matrix.set(Math.max(node.number,leaf.number), Math.min(node.number,leaf.number), node.tempDistance);
 			node.tempDistance = 0.0f;
 			return;
 		}
@@ -0,0 +1,667 @@
+package nj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import dmatrix.FloatTriangularStorage;
+
+
+/**
+ * Java implementation of the NJ algorithm that works directly on the triangular distance matrix
+ * (the matrix is changed, the rows of the joined vertices are reused for the new vertices).
+ *
+ * The standard version finds the pair to join as RapidNJ (Simonsen, Mailund, Pedersen 2008):
+ * each row is also kept sorted according to the distances, the search in a row stops as soon as
+ * the distance is too high (an upper bound of the criterion of the row) to improve the best pair found so far.
+ *
+ * The relaxed version (as Clearcut, Sheneman, Evans, Foster 2006) scans the rows in a random order
+ * and joins a pair as soon as it is the best pair in both of its rows, i.e. more pairs are joined in one pass.
+ * */
+public class RapidNJAlgorithm {
+
+	/* whether the relaxed version is used */
+	private final boolean relaxed;
+
+	private final Random random;
+
+	/* the distance matrix, dmatrix[row][column] where row > column (a row is a slot of a vertex) */
+	private float dmatrix[][];
+
+	/* the number of leafs */
+	private int n;
+
+	/* the slots of the active vertices, the number of the active vertices and the index of a slot in the array */
+	private int active[];
+	private int activeCount;
+	private int activeIndex[];
+
+	/* the sum of the distances of the vertex in a slot to all other active vertices */
+	private double rowSum[];
+
+	/* the vertex in a slot (0..n-1 ~ leafs, n.. ~ internal vertices) */
+	private int slotVertex[];
+
+	/* the children of the internal vertices (vertex-n) and the lengths of the edges to the children */
+	private int leftChild[];
+	private int rightChild[];
+	private float leftLength[];
+	private float rightLength[];
+	private int internalCount;
+
+	/* the third child of the root or -1 (the root of more than two vertices) */
+	private int thirdChild;
+	private float thirdLength;
+
+	/* sorted rows: distances, slots, the first entry that can be valid and the end of a row */
+	private float sortedDist[][];
+	private int sortedSlot[][];
+	private int sortedStart[];
+	private int sortedEnd[];
+
+	/* when the vertex in a slot was created, an entry of a sorted row is valid only
+	 * if the slot of the entry is active and its vertex was created before the vertex of the row */
+	private int created[];
+	private int createdCount;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param relaxed true ~ relaxed NJ, false ~ standard NJ (RapidNJ search)
+	 * */
+	public RapidNJAlgorithm(boolean relaxed){
+		this.relaxed = relaxed;
+		this.random = new Random();
+	}
+
+
+	/**
+	 * @param dmatrix distance matrix (lower triangle, dmatrix[i] has length i), the matrix is changed!
+	 *
+	 * @return the root of the NJ tree or null (empty matrix)
+	 * */
+	public NJVertex computeNJTree(float dmatrix[][]){
+
+		int root = join(dmatrix);
+		if (root == -1){
+			return null;
+		}
+		return toNJTree(root);
+	}
+
+
+	/**
+	 * Computes a NJ matrix from a given distance matrix.
+	 *
+	 * @param dmatrix distance matrix (lower triangle, dmatrix[i] has length i), the matrix is changed!
+	 * @param matrix output: NJ matrix (distances corresponds to the distances in the NJ tree), only the lower triangle is set
+	 * */
+	public void computeNJMatrix(float dmatrix[][], FloatTriangularStorage matrix){
+
+		matrix.fill(dmatrix.length, Integer.MAX_VALUE);
+
+		int root = join(dmatrix);
+		if (root == -1){
+			return;
+		}
+
+		/* the children of a vertex are created before the vertex, the root is the last vertex */
+		int vertexCount = n + internalCount;
+		float depth[] = new float[vertexCount];
+		int vertex;
+		if (thirdChild != -1){
+			depth[thirdChild] = thirdLength;
+		}
+		for (int i=internalCount-1; i>=0; i--){
+			vertex = n + i;
+			depth[leftChild[i]] = depth[vertex] + leftLength[i];
+			depth[rightChild[i]] = depth[vertex] + rightLength[i];
+		}
+
+		/* the leafs of a subtree are in a linked list: first[vertex], next[leaf], .., last[vertex] */
+		int first[] = new int[vertexCount];
+		int last[] = new int[vertexCount];
+		int next[] = new int[n];
+		for (int i=0; i<n; i++){
+			first[i] = i;
+			last[i] = i;
+			next[i] = -1;
+		}
+
+		/* the distance of two leafs is set in their lowest common ancestor */
+		for (int i=0; i<internalCount; i++){
+			vertex = n + i;
+			setDistances(leftChild[i], rightChild[i], depth[vertex], depth, first, next, matrix);
+			next[last[leftChild[i]]] = first[rightChild[i]];
+			first[vertex] = first[leftChild[i]];
+			last[vertex] = last[rightChild[i]];
+		}
+		if (thirdChild != -1){
+			setDistances(root, thirdChild, depth[root], depth, first, next, matrix);
+		}
+	}
+
+
+	/**
+	 * Computes the NJ tree given by the parents of its vertices.
+	 *
+	 * @param dmatrix distance matrix (lower triangle, dmatrix[i] has length i), the matrix is changed!
+	 * @param parent output: the parent of each vertex (leafs 0..n-1, internal vertices n..), -1 ~ the root;
+	 * the length of the array must be at least 2n-1
+	 * @param length output: the length of the edge from a vertex to its parent
+	 *
+	 * @return the number of vertices of the NJ tree
+	 * */
+	public int computeNJParents(float dmatrix[][], int parent[], float length[]){
+
+		int root = join(dmatrix);
+		if (root == -1){
+			return 0;
+		}
+
+		for (int i=0; i<internalCount; i++){
+			parent[leftChild[i]] = n + i;
+			length[leftChild[i]] = leftLength[i];
+			parent[rightChild[i]] = n + i;
+			length[rightChild[i]] = rightLength[i];
+		}
+		if (thirdChild != -1){
+			parent[thirdChild] = root;
+			length[thirdChild] = thirdLength;
+		}
+		parent[root] = -1;
+		length[root] = 0.0f;
+
+		return n + internalCount;
+	}
+
+
+	/**
+	 * Set the distances of the leafs of two subtrees.
+	 *
+	 * @param ancestorDepth the depth of the lowest common ancestor of the subtrees
+	 * */
+	private void setDistances(int vertex0, int vertex1, float ancestorDepth, float depth[], int first[], int next[], 
+			FloatTriangularStorage matrix){
+
+		for (int leaf0 = first[vertex0]; leaf0 != -1; leaf0 = next[leaf0]){
+			for (int leaf1 = first[vertex1]; leaf1 != -1; leaf1 = next[leaf1]){
+				matrix.set(Math.max(leaf0, leaf1), Math.min(leaf0, leaf1), depth[leaf0] + depth[leaf1] - 2*ancestorDepth);
+			}
+		}
+	}
+
+
+	/**
+	 * Create the vertices of the NJ tree (the children of a vertex are created before the vertex).
+	 * */
+	private NJVertex toNJTree(int root){
+
+		RNJVertex vertices[] = new RNJVertex[n + internalCount];
+		for (int i=0; i<n; i++){
+			vertices[i] = new RNJVertex(i);
+		}
+		RNJVertex vertex;
+		for (int i=0; i<internalCount; i++){
+			vertex = new RNJVertex(n + i);
+			vertex.children.add(vertices[leftChild[i]]);
+			vertex.children.add(vertices[rightChild[i]]);
+			vertices[n + i] = vertex;
+		}
+		if (thirdChild != -1){
+			vertices[root].children.add(vertices[thirdChild]);
+		}
+		return vertices[root];
+	}
+
+
+	/**
+	 * One vertex of an NJ tree.
+	 * */
+	private static class RNJVertex implements NJVertex {
+
+		private final int name;
+		private final List<NJVertex> children;
+
+		private RNJVertex(int name){
+			this.name = name;
+			this.children = new ArrayList<NJVertex>(2);
+		}
+
+		@Override
+		public List<NJVertex> getChildren() {
+			return new ArrayList<NJVertex>(children);
+		}
+
+		@Override
+		public int getName() {
+			return name;
+		}
+
+		@Override
+		public boolean isLeaf() {
+			return children.isEmpty();
+		}
+	}
+
+
+	/**
+	 * Join the vertices of the matrix.
+	 *
+	 * @return the root vertex or -1 (empty matrix)
+	 * */
+	private int join(float dmatrix[][]){
+
+		this.dmatrix = dmatrix;
+		this.n = dmatrix.length;
+
+		if (n == 0){
+			return -1;
+		}
+
+		active = new int[n];
+		activeIndex = new int[n];
+		rowSum = new double[n];
+		slotVertex = new int[n];
+		leftChild = new int[n];
+		rightChild = new int[n];
+		leftLength = new float[n];
+		rightLength = new float[n];
+		internalCount = 0;
+		activeCount = n;
+		thirdChild = -1;
+
+		for (int i=0; i<n; i++){
+			active[i] = i;
+			activeIndex[i] = i;
+			slotVertex[i] = i;
+		}
+		for (int i=0; i<n; i++){
+			for (int j=0; j<i; j++){
+				rowSum[i] += dmatrix[i][j];
+				rowSum[j] += dmatrix[i][j];
+			}
+		}
+
+		if (relaxed){
+			joinRelaxed();
+		} else {
+			joinRapid();
+		}
+
+		return joinLast();
+	}
+
+
+	/**
+	 * Standard NJ, the best pair is found in the sorted rows.
+	 * */
+	private void joinRapid(){
+
+		sortedDist = new float[n][];
+		sortedSlot = new int[n][];
+		sortedStart = new int[n];
+		sortedEnd = new int[n];
+		created = new int[n];
+		for (int i=0; i<n; i++){
+			created[i] = i;
+			sortRow(i, dmatrix[i], null, i);
+		}
+		createdCount = n;
+
+		double maxU;
+		double u;
+		double bestQ;
+		double q;
+		int bestRow;
+		int bestColumn;
+		int row;
+		int column;
+		float d[];
+		int s[];
+		int e;
+
+		while (activeCount > 3){
+
+			/* u(i) = rowSum(i)/(activeCount - 2), Q(i,j) = d(i,j) - u(i) - u(j) */
+			maxU = Double.NEGATIVE_INFINITY;
+			for (int i=0; i<activeCount; i++){
+				maxU = Math.max(maxU, rowSum[active[i]]);
+			}
+			maxU /= (activeCount - 2);
+
+			bestQ = Double.POSITIVE_INFINITY;
+			bestRow = -1;
+			bestColumn = -1;
+
+			for (int i=0; i<activeCount; i++){
+
+				row = active[i];
+				u = rowSum[row]/(activeCount - 2);
+				d = sortedDist[row];
+				s = sortedSlot[row];
+
+				for (e = sortedStart[row]; e < sortedEnd[row]; e++){
+
+					/* the rest of the row can`t contain a better pair */
+					if (d[e] - u - maxU >= bestQ){
+						break;
+					}
+
+					column = s[e];
+					if (!isValid(row, column)){
+						continue;
+					}
+
+					q = d[e] - u - rowSum[column]/(activeCount - 2);
+					if (q < bestQ){
+						bestQ = q;
+						bestRow = row;
+						bestColumn = column;
+					}
+				}
+
+				compactRow(row, e);
+			}
+
+			joinPair(bestRow, bestColumn);
+		}
+	}
+
+
+	/**
+	 * Relaxed NJ, a pair is joined if it is the best pair in both of its rows.
+	 * */
+	private void joinRelaxed(){
+
+		int order[] = new int[n];
+		int orderCount;
+		int row;
+		int column;
+		int joined;
+		int tmp;
+
+		while (activeCount > 3){
+
+			/* the rows in a random order */
+			orderCount = activeCount;
+			System.arraycopy(active, 0, order, 0, orderCount);
+			for (int i=orderCount-1; i>0; i--){
+				tmp = random.nextInt(i + 1);
+				row = order[i];
+				order[i] = order[tmp];
+				order[tmp] = row;
+			}
+
+			joined = 0;
+			for (int i=0; (i<orderCount) && (activeCount > 3); i++){
+
+				row = order[i];
+				if (activeIndex[row] == -1){
+					continue;
+				}
+
+				column = bestColumn(row);
+				if (bestColumn(column) == row){
+					joinPair(row, column);
+					joined++;
+				}
+			}
+
+			/* the best pair of all pairs is always the best pair in its rows */
+			if ((joined == 0) && (activeCount > 3)){
+				joinBest();
+			}
+		}
+	}
+
+
+	/**
+	 * Join the best pair found by scanning the whole matrix.
+	 * */
+	private void joinBest(){
+
+		double bestQ = Double.POSITIVE_INFINITY;
+		double q;
+		int bestRow = -1;
+		int bestColumn = -1;
+		int row;
+		int column;
+
+		for (int i=0; i<activeCount; i++){
+			row = active[i];
+			for (int j=0; j<i; j++){
+				column = active[j];
+				q = getQ(row, column);
+				if (q < bestQ){
+					bestQ = q;
+					bestRow = row;
+					bestColumn = column;
+				}
+			}
+		}
+		joinPair(bestRow, bestColumn);
+	}
+
+
+	/**
+	 * @return the active slot with the lowest criterion Q in the row of the slot
+	 * */
+	private int bestColumn(int row){
+
+		double bestQ = Double.POSITIVE_INFINITY;
+		double q;
+		int best = -1;
+		int column;
+
+		for (int i=0; i<activeCount; i++){
+			column = active[i];
+			if (column == row){
+				continue;
+			}
+			q = getQ(row, column);
+			if ((q < bestQ) || ((q == bestQ) && (column < best))){
+				bestQ = q;
+				best = column;
+			}
+		}
+		return best;
+	}
+
+
+	private double getQ(int slot0, int slot1){
+		return getDistance(slot0, slot1) - (rowSum[slot0] + rowSum[slot1])/(activeCount - 2);
+	}
+
+
+	private float getDistance(int slot0, int slot1){
+		if (slot0 > slot1){
+			return dmatrix[slot0][slot1];
+		} else {
+			return dmatrix[slot1][slot0];
+		}
+	}
+
+
+	private void setDistance(int slot0, int slot1, float distance){
+		if (slot0 > slot1){
+			dmatrix[slot0][slot1] = distance;
+		} else {
+			dmatrix[slot1][slot0] = distance;
+		}
+	}
+
+
+	/**
+	 * Join the vertices of two slots, the new vertex gets the lower slot.
+	 * */
+	private void joinPair(int slot0, int slot1){
+
+		int slot = Math.min(slot0, slot1);
+		int removed = Math.max(slot0, slot1);
+
+		float dist = getDistance(slot, removed);
+		float length = (float)(dist/2.0 + (rowSum[slot] - rowSum[removed])/(2.0*(activeCount - 2)));
+
+		leftChild[internalCount] = slotVertex[slot];
+		rightChild[internalCount] = slotVertex[removed];
+		leftLength[internalCount] = length;
+		rightLength[internalCount] = dist - length;
+		slotVertex[slot] = n + internalCount;
+		slotVertex[removed] = -1;
+		internalCount++;
+
+		removeActive(removed);
+
+		/* the distances of the new vertex */
+		double sum = 0.0;
+		int other;
+		float d0;
+		float d1;
+		float d;
+		for (int i=0; i<activeCount; i++){
+			other = active[i];
+			if (other == slot){
+				continue;
+			}
+			d0 = getDistance(slot, other);
+			d1 = getDistance(removed, other);
+			d = (d0 + d1 - dist)/2.0f;
+			rowSum[other] += d - d0 - d1;
+			sum += d;
+			setDistance(slot, other, d);
+		}
+		rowSum[slot] = sum;
+
+		if (!relaxed){
+
+			/* the sorted row of the new vertex contains all active vertices, it is the last created vertex */
+			created[slot] = createdCount++;
+			sortedDist[removed] = null;
+			sortedSlot[removed] = null;
+
+			float row[] = new float[activeCount - 1];
+			int columns[] = new int[activeCount - 1];
+			int count = 0;
+			for (int i=0; i<activeCount; i++){
+				other = active[i];
+				if (other != slot){
+					row[count] = getDistance(slot, other);
+					columns[count] = other;
+					count++;
+				}
+			}
+			sortRow(slot, row, columns, count);
+		}
+	}
+
+
+	/**
+	 * Join the last (at most three) vertices to the root.
+	 * */
+	private int joinLast(){
+
+		if (activeCount == 1){
+			return slotVertex[active[0]];
+		}
+
+		int a = active[0];
+		int b = active[1];
+		float dab = getDistance(a, b);
+
+		leftChild[internalCount] = slotVertex[a];
+		rightChild[internalCount] = slotVertex[b];
+
+		if (activeCount == 2){
+			leftLength[internalCount] = dab/2.0f;
+			rightLength[internalCount] = dab/2.0f;
+			internalCount++;
+			return n + internalCount - 1;
+		}
+
+		/* three vertices: the vertex "c" is joined to the root that joins "a" and "b" */
+		int c = active[2];
+		float dac = getDistance(a, c);
+		float dbc = getDistance(b, c);
+		leftLength[internalCount] = (dab + dac - dbc)/2.0f;
+		rightLength[internalCount] = (dab + dbc - dac)/2.0f;
+		thirdChild = slotVertex[c];
+		thirdLength = (dac + dbc - dab)/2.0f;
+		internalCount++;
+		return n + internalCount - 1;
+	}
+
+
+	private void removeActive(int slot){
+		int index = activeIndex[slot];
+		activeCount--;
+		active[index] = active[activeCount];
+		activeIndex[active[index]] = index;
+		activeIndex[slot] = -1;
+	}
+
+
+	/**
+	 * Whether the entry (row, column) of a sorted row is valid.
+	 * */
+	private boolean isValid(int row, int column){
+		return (activeIndex[column] != -1) && (created[column] < created[row]);
+	}
+
+
+	/**
+	 * Sort a row according to the distances.
+	 *
+	 * @param columns the slots of the distances or null (~ 0, 1, .., count-1)
+	 * */
+	private void sortRow(int slot, float row[], int columns[], int count){
+
+		/* a distance (as an ordered int) and a slot packed into one number */
+		long packed[] = new long[count];
+		int bits;
+		for (int i=0; i<count; i++){
+			bits = Float.floatToIntBits(row[i]);
+			bits ^= (bits >> 31) & Integer.MAX_VALUE;
+			packed[i] = (((long)bits) << 32) | ((columns == null) ? i : columns[i]);
+		}
+		Arrays.sort(packed);
+
+		float dist[] = (columns == null) ? new float[count] : row;
+		int slots[] = (columns == null) ? new int[count] : columns;
+		for (int i=0; i<count; i++){
+			bits = (int)(packed[i] >> 32);
+			bits ^= (bits >> 31) & Integer.MAX_VALUE;
+			dist[i] = Float.intBitsToFloat(bits);
+			slots[i] = (int)packed[i];
+		}
+
+		sortedDist[slot] = dist;
+		sortedSlot[slot] = slots;
+		sortedStart[slot] = 0;
+		sortedEnd[slot] = count;
+	}
+
+
+	/**
+	 * Remove the invalid entries from the scanned part of a sorted row
+	 * (the valid entries are moved towards the end of the scanned part).
+	 *
+	 * @param end the end of the scanned part
+	 * */
+	private void compactRow(int row, int end){
+
+		float d[] = sortedDist[row];
+		int s[] = sortedSlot[row];
+		int to = end;
+		for (int e=end-1; e>=sortedStart[row]; e--){
+			if (isValid(row, s[e])){
+				to--;
+				d[to] = d[e];
+				s[to] = s[e];
+			}
+		}
+		sortedStart[row] = to;
+	}
+}
@@ -0,0 +1,109 @@
+package ptree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The best tree found so far by the search chains of one dataset (island model).
+ *
+ * The chains cannot share vertices, therefore only the DNAs of the intermediates of the best tree are stored here.
+ * A chain that takes over the best tree gets new intermediate vertices and computes its own tree from them.
+ * */
+class ChainExchange {
+
+	/* the cost of the best tree offered so far */
+	private int cost = Integer.MAX_VALUE;
+
+	/* the chain that offered the best tree */
+	private int chainIndex = -1;
+
+	/* increased whenever a better tree is offered */
+	private int version = 0;
+
+	/* the version that has been taken over by a chain last time */
+	private int takenVersion[];
+
+	private List<Dna> dnaList = null;
+	private List<Long> timeList = null;
+	private List<Byte> statusList = null;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chainCount the number of chains
+	 * */
+	protected ChainExchange(int chainCount){
+		takenVersion = new int[chainCount];
+		Arrays.fill(takenVersion, 0);
+	}
+
+
+	/**
+	 * Offer the best tree of a chain, it is stored if it is better than the best tree offered so far.
+	 * */
+	protected synchronized void offer(int chainIndex, Tree tree){
+
+		if (tree.getCost() >= cost){
+			return;
+		}
+
+		List<Vertex> intermediates = tree.getIntermediateVertices();
+
+		dnaList = new ArrayList<Dna>(intermediates.size());
+		timeList = new ArrayList<Long>(intermediates.size());
+		statusList = new ArrayList<Byte>(intermediates.size());
+
+		/* store the original (not masked) DNAs */
+		for (Vertex vertex : intermediates){
+			if (vertex.getSecDna() != null){
+				dnaList.add(vertex.getSecDna().clone());
+			} else {
+				dnaList.add(vertex.getDna().clone());
+			}
+			timeList.add(vertex.getTime());
+			statusList.add(vertex.getStatus());
+		}
+
+		this.cost = tree.getCost();
+		this.chainIndex = chainIndex;
+		this.version++;
+
+		/* the chain that offered the tree already has it */
+		takenVersion[chainIndex] = version;
+	}
+
+
+	/**
+	 * Take over the best tree if it is better than the best tree of the chain
+	 * and the chain hasn`t taken it over yet.
+	 *
+	 * @param cost the cost of the best tree of the chain
+	 *
+	 * @return new intermediate vertices of the best tree (the secondary DNA is set) or null
+	 * */
+	protected synchronized List<Vertex> takeIntermediates(int chainIndex, int cost){
+
+		if ((this.chainIndex == -1) || (this.chainIndex == chainIndex)
+				|| (takenVersion[chainIndex] == version) || (this.cost >= cost)){
+			return null;
+		}
+
+		takenVersion[chainIndex] = version;
+
+		List<Vertex> intermediates = new ArrayList<Vertex>(dnaList.size());
+		Vertex vertex;
+
+		for (int i=0; i<dnaList.size(); i++){
+			vertex = new Vertex(timeList.get(i), dnaList.get(i).clone());
+			vertex.setSecDna(dnaList.get(i).clone());
+			vertex.setStatus(statusList.get(i));
+			intermediates.add(vertex);
+		}
+
+		return intermediates;
+	}
+
+}
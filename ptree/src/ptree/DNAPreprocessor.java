@@ -1,6 +1,9 @@
 package ptree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,6 +15,10 @@ import org.apache.commons.logging.LogFactory;
 /**
  * Preprocess all DNAs and store aside all positions that are the same in all DNAs.
  * Work with positions that left. After the program finishes add positions that were previously left out.
+ *
+ * Optionally, identical columns (site patterns) are replaced by one column, the weight of the column
+ * is the number of columns it represents. The distances and costs are then computed as weighted sums,
+ * see {@link #getSiteWeights()}.
  * */
 public class DNAPreprocessor {
 
@@ -23,6 +30,12 @@ public class DNAPreprocessor {
 	private final int dnaLength;
 	private final int compressedDnaLength;
 	
+	/* map: site -> site in the compressed DNA (-1 ~ the site is the same in all DNAs) */
+	private int[] siteToCompressedSite;
+	
+	/* weights of the sites of the compressed DNA or null if each site has weight 1 */
+	private int[] siteWeights = null;
+	
 	
 	//public int getSameSitesCount(){
 	//	return this.dnaLength - this.compressedDnaLength;
@@ -37,10 +50,21 @@ public class DNAPreprocessor {
 		this.compressedDnaLength = dnaLength;
 	}
 	
+	
 	/**
 	 * Change the DNA of each vertex. Leave out sites that are the same in all DNA`s.
 	 * */
 	public DNAPreprocessor(List<Vertex> vertices){
+		this(vertices, false);
+	}
+	
+	
+	/**
+	 * Change the DNA of each vertex. Leave out sites that are the same in all DNA`s.
+	 *
+	 * @param compressSitePatterns whether identical columns are replaced by one weighted column
+	 * */
+	public DNAPreprocessor(List<Vertex> vertices, boolean compressSitePatterns){
 		
 		log = LogFactory.getLog(DNAPreprocessor.class);
 		
@@ -52,49 +76,34 @@ public class DNAPreprocessor {
 			/* find out which sites are the same in all sequences */
 			idxSameSites = computeSameSitesIdx(vertices);
 
-			if (used()){
-
-				/* store same sites */
-				sameSites = new byte[idxSameSites.size()];
-				byte[] dna = vertices.get(0).getDna().getBytes();
-				for (int i=0; i<idxSameSites.size(); i++){
-					sameSites[i] = dna[idxSameSites.get(i)];
-				}
+			/* store same sites */
+			sameSites = new byte[idxSameSites.size()];
+			byte[] dna = vertices.get(0).getDna().getBytes();
+			for (int i=0; i<idxSameSites.size(); i++){
+				sameSites[i] = dna[idxSameSites.get(i)];
+			}
 				
-				compressedDnaLength = dnaLength - idxSameSites.size();
+			/* assign the sites of the compressed DNA */
+			compressedDnaLength = computeCompressedSites(vertices, compressSitePatterns);
+			
+			if (used()){
 				
 				/* change DNA of each vertex */
 				Vertex vertex;
 				byte[] dnaOld;
-				int iOld;
-				int iNew = 0;
-				int iS;
 				
 				for (int i=0; i<vertices.size(); i++){
 					
 					vertex = vertices.get(i);
 					dnaOld = vertex.getDna().getBytes();
 					dna = new byte[compressedDnaLength];
-					iOld = 0;
-					iNew = 0;
-					iS = 0;
-					for (; iOld < dnaOld.length; iOld++){
-						if ((iS < idxSameSites.size()) && (iOld == idxSameSites.get(iS))){
-							
-							iS++;
-						} else {
-							
-							dna[iNew] = dnaOld[iOld];
-							iNew++;
+					for (int iOld = 0; iOld < dnaOld.length; iOld++){
+						if (siteToCompressedSite[iOld] != -1){
+							dna[siteToCompressedSite[iOld]] = dnaOld[iOld];
 						}
 					}
-					if (iNew != compressedDnaLength){
-						log.error("Wrong Compressed size!!!");
-					}
 					vertex.setDna(new Dna(dna));
 				}
-			} else {
-				this.compressedDnaLength = this.dnaLength;
 			}
 		} else {
 			this.dnaLength = 0;
@@ -103,6 +112,64 @@ public class DNAPreprocessor {
 	}
 	
 	
+	/**
+	 * Compute the mapping of the sites to the sites of the compressed DNA and the weights of the compressed sites.
+	 *
+	 * @return the length of the compressed DNA
+	 * */
+	private int computeCompressedSites(List<Vertex> vertices, boolean compressSitePatterns){
+		
+		siteToCompressedSite = new int[dnaLength];
+		
+		/* map: column -> site in the compressed DNA */
+		Map<Column, Integer> patterns = null;
+		if (compressSitePatterns){
+			patterns = new HashMap<Column, Integer>();
+		}
+		
+		List<Integer> weights = new ArrayList<Integer>();
+		int iS = 0;
+		Column column;
+		Integer site;
+		
+		for (int i=0; i<dnaLength; i++){
+			
+			if ((iS < idxSameSites.size()) && (i == idxSameSites.get(iS))){
+				siteToCompressedSite[i] = -1;
+				iS++;
+				continue;
+			}
+			
+			site = null;
+			if (compressSitePatterns){
+				column = new Column(vertices, i);
+				site = patterns.get(column);
+				if (site == null){
+					patterns.put(column, weights.size());
+				}
+			}
+			
+			if (site == null){
+				siteToCompressedSite[i] = weights.size();
+				weights.add(1);
+			} else {
+				siteToCompressedSite[i] = site;
+				weights.set(site, weights.get(site) + 1);
+			}
+		}
+		
+		if (weights.size() < dnaLength - idxSameSites.size()){
+			siteWeights = new int[weights.size()];
+			for (int i=0; i<siteWeights.length; i++){
+				siteWeights[i] = weights.get(i);
+			}
+			log.info("Site patterns: " + siteWeights.length + " of " + dnaLength + " sites");
+		}
+		
+		return weights.size();
+	}
+	
+	
 	/**
 	 * Change the DNA of each vertex to its initial form. 
 	 * */
@@ -115,7 +182,6 @@ public class DNAPreprocessor {
 			Vertex vertex;
 			
 			int iS; 
-			int iDnaOld;
 			
 			for (int i=0; i<vertices.size(); i++){
 			
@@ -125,16 +191,14 @@ public class DNAPreprocessor {
 				dna = new byte[dnaLength];
 				
 				iS = 0;
-				iDnaOld = 0;
 				
 				for (int iDna = 0; iDna<dnaLength; iDna++){
 			
-					if ((iS < idxSameSites.size()) && (iDna == idxSameSites.get(iS))){
+					if (siteToCompressedSite[iDna] == -1){
 						dna[iDna] = sameSites[iS];
 						iS++;
 					} else {
-						dna[iDna] = dnaOld[iDnaOld];
-						iDnaOld++;
+						dna[iDna] = dnaOld[siteToCompressedSite[iDna]];
 					}
 					
 				}
@@ -147,32 +211,47 @@ public class DNAPreprocessor {
 	
 	/**
 	 * Change the positions of mutations` records s.t. it corresponds to the restored DNAs.
+	 * A mutation at a weighted site is replaced by the mutations at all sites it represents.
 	 * */
 	public void restoreMutations(List<Vertex> vertices){
 		
 		if (used()){
 			
-			Map<Integer,Integer> map = new HashMap<Integer,Integer>();
-			int skipCount = 0;
-			int iS = 0;
+			/* map: site of the compressed DNA -> sites of the restored DNA */
+			List<List<Integer>> map = new ArrayList<List<Integer>>(compressedDnaLength);
+			for (int i=0; i<compressedDnaLength; i++){
+				map.add(new ArrayList<Integer>(1));
+			}
 			for (int i=0; i<dnaLength; i++){
-				map.put((i-skipCount)+1, (i)+1);
-				if ((iS <idxSameSites.size()) && (idxSameSites.get(iS) == i)){
-					iS++;
-					skipCount++;
+				if (siteToCompressedSite[i] != -1){
+					map.get(siteToCompressedSite[i]).add(i + 1);
 				}	
 			}
 			
 			Vertex vertex;
-			List<Mutation> mutations;
+			Mutations mutations;
+			List<Mutation> restored;
 			
 			for (int i=0; i<vertices.size(); i++){
 				vertex = vertices.get(i);
 				if (vertex.getMutations() != null){
-					mutations = vertex.getMutations().mutations;
-					for (int j=0; j<mutations.size(); j++){
-						mutations.get(j).setPosition(map.get(mutations.get(j).getPosition()));
+					mutations = vertex.getMutations();
+					restored = new ArrayList<Mutation>(mutations.getMutationCount());
+					for (int j=0; j<mutations.getMutationCount(); j++){
+						for (int position : map.get(mutations.getPosition(j) - 1)){
+							restored.add(new Mutation(mutations.getFromChar(j), position, mutations.getToChar(j)));
+						}
+					}
+					if (siteWeights != null){
+						/* mutations are sorted according to the increasing position */
+						Collections.sort(restored, new Comparator<Mutation>(){
+							@Override
+							public int compare(Mutation m0, Mutation m1) {
+								return m0.getPosition() - m1.getPosition();
+							}
+						});
 					}
+					vertex.setMutations(new Mutations(restored));
 				}
 			}
 		}
@@ -183,7 +262,48 @@ public class DNAPreprocessor {
 	 * Returns whether the DNA preprocessor found some sites that would be the same.	
 	 * */
 	protected boolean used(){
-		return (idxSameSites.isEmpty())?false:true;
+		return compressedDnaLength != dnaLength;
+	}
+	
+	
+	/**
+	 * Get the weights of the sites of the compressed DNA, i.e. the number of sites of the input DNA
+	 * that a site represents.
+	 *
+	 * @return the weights or null if each site has weight 1
+	 * */
+	public int[] getSiteWeights(){
+		return siteWeights;
+	}
+	
+	
+	/**
+	 * Get the maximum (weighted) distance of two sequences, i.e. the number of sites of the input DNA
+	 * that are not the same in all sequences.
+	 * */
+	public int getMaxDistance(){
+		if (idxSameSites == null){
+			return dnaLength;
+		}
+		return dnaLength - idxSameSites.size();
+	}
+	
+	
+	/**
+	 * Get the preprocessor of sequences that consist only of some sites of the compressed DNA,
+	 * site i of such a sequence has the weight of site sites[i] of the compressed DNA.
+	 * 
+	 * @param sites sites of the compressed DNA
+	 * */
+	public DNAPreprocessor getSitesPreprocessor(int[] sites){
+		DNAPreprocessor prep = new DNAPreprocessor(dnaLength);
+		if (siteWeights != null){
+			prep.siteWeights = new int[sites.length];
+			for (int i=0; i<sites.length; i++){
+				prep.siteWeights[i] = siteWeights[sites[i]];
+			}
+		}
+		return prep;
 	}
 
 	
@@ -217,4 +337,33 @@ public class DNAPreprocessor {
 			return idxSame;
 		}
 	
-}
\ No newline at end of file
+	
+	/**
+	 * One column of the alignment.
+	 * */
+	private static class Column {
+		
+		private final byte[] chars;
+		
+		private final int hashCode;
+		
+		private Column(List<Vertex> vertices, int site){
+			chars = new byte[vertices.size()];
+			for (int i=0; i<chars.length; i++){
+				chars[i] = vertices.get(i).getDna().getBytes()[site];
+			}
+			hashCode = Arrays.hashCode(chars);
+		}
+		
+		@Override
+		public boolean equals(Object o){
+			return (o instanceof Column) && Arrays.equals(chars, ((Column)o).chars);
+		}
+		
+		@Override
+		public int hashCode(){
+			return hashCode;
+		}
+	}
+	
+}
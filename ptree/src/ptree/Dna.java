@@ -20,6 +20,9 @@ public class Dna implements Comparable<Dna> {
 	
 	private byte gapChar = (byte)'-';
 	
+	/** packed form of the DNA, computed on demand, null if it hasn`t been computed or it is outdated */
+	private PackedDna packed;
+	
 	/**
 	 * Constructor.
 	 * */
@@ -50,6 +53,7 @@ public class Dna implements Comparable<Dna> {
 		this.gapIsChange = dna.gapIsChange;
 		this.gapChar = dna.gapChar;
 		this.hashCode = dna.hashCode;
+		this.packed = dna.packed;
 	}
 	
 	
@@ -81,6 +85,14 @@ public class Dna implements Comparable<Dna> {
 		this.gapChar = gapChar;
 	}
 	
+	protected boolean getGapIsChange(){
+		return gapIsChange;
+	}
+	
+	protected byte getGapChar(){
+		return gapChar;
+	}
+	
 	/**
 	 * Get DNA as an array of bytes.
 	 * */
@@ -100,7 +112,32 @@ public class Dna implements Comparable<Dna> {
 			copyBytes[i] = bytes[i];
 		}
 		
-		return new Dna(copyBytes,hashCode,gapIsChange,gapChar);
+		Dna copy = new Dna(copyBytes,hashCode,gapIsChange,gapChar);
+		copy.packed = this.packed;
+		return copy;
+	}
+	
+	
+	/**
+	 * Get the packed form of the DNA that corresponds to the given encoding.
+	 * The packed form is computed on demand and reused until the DNA changes.
+	 * */
+	protected PackedDna getPacked(PackedDna.Encoding encoding){
+		PackedDna p = this.packed;
+		if ((p == null) || (!p.encoding.equals(encoding))){
+			p = new PackedDna(this.bytes, encoding);
+			this.packed = p;
+		}
+		return p;
+	}
+	
+	
+	/**
+	 * Discard the packed form of the DNA.
+	 * Has to be called whenever the byte array returned by getBytes is changed directly.
+	 * */
+	protected void invalidatePacked(){
+		this.packed = null;
 	}
 	
 	
@@ -109,12 +146,11 @@ public class Dna implements Comparable<Dna> {
 	 * */
 	public void applyMutations(Mutations mut){
 		
-		List<Mutation> mutations = mut.getMutations();
-		
-		for (Mutation m : mutations){
-			bytes[m.getPosition()-1] = m.getToChar();
+		for (int i=0; i<mut.getMutationCount(); i++){
+			bytes[mut.getPosition(i)-1] = mut.getToChar(i);
 		}
 		
+		this.packed = null;
 		this.hashCode = getHashCode(bytes);
 	}
 	
@@ -130,11 +166,16 @@ public class Dna implements Comparable<Dna> {
 			bytes[position] = xChar;
 		}
 		
+		this.packed = null;
 		this.hashCode = getHashCode(bytes);
 	}
 	
 	
+	/**
+	 * Recompute the DNA`s hash code after the byte array has been changed directly.
+	 * */
 	protected void updateHashCode(){
+		this.packed = null;
 		this.hashCode = getHashCode(this.bytes);
 	}
 	
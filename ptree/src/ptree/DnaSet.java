@@ -0,0 +1,220 @@
+package ptree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Set of DNA sequences that finds a sequence equal to a given sequence in terms of {@link Dna#equals(Object)}.
+ *
+ * If a gap is counted as a change, the sequences are compared via their hash codes.
+ * Otherwise a gap is equal to any character and all DNAs have the same hash code,
+ * then the sites are split into blocks and for each block the sequences that don`t have a gap
+ * in the block are indexed by the hash of the block. The sequences equal to a given sequence
+ * are either in the bucket of a block without gaps of the given sequence or they have a gap in this block,
+ * the block with the least such candidates is used. A candidate is compared with the given sequence
+ * only if the hashes of all blocks without gaps in both sequences are the same.
+ * */
+final class DnaSet {
+
+	/* the maximum number of blocks of a sequence */
+	private static final int BLOCK_COUNT = 16;
+
+	/* the hash of a block with a gap */
+	private static final long GAP_HASH = Long.MIN_VALUE;
+
+	/* the sequences in the order in which they were added */
+	private final List<Dna> sequences = new ArrayList<Dna>();
+
+	/* gap is a change: sequence -> index of the first equal sequence */
+	private final Map<Dna, Integer> exact = new HashMap<Dna, Integer>();
+
+	/* gap is not a change: the length of a block, the buckets of the blocks and the sequences with gaps in the blocks
+	 * (indices of the sequences in the increasing order) */
+	private int blockLength = -1;
+	private List<Map<Long, List<Integer>>> buckets;
+	private List<List<Integer>> gapped;
+
+	/* the hashes of the blocks of the sequences (GAP_HASH ~ the block contains a gap) */
+	private final List<long[]> blockHashes = new ArrayList<long[]>();
+
+
+	/**
+	 * Add a sequence to the set (even if an equal sequence is already in the set).
+	 * */
+	protected void add(Dna dna){
+
+		int index = sequences.size();
+		sequences.add(dna);
+
+		if (dna.getGapIsChange()){
+			if (!exact.containsKey(dna)){
+				exact.put(dna, index);
+			}
+			return;
+		}
+
+		if (blockLength == -1){
+			initBlocks(dna.getBytes().length);
+		}
+
+		long hashes[] = blockHashes(dna);
+		blockHashes.add(hashes);
+
+		List<Integer> bucket;
+		for (int b=0; b<hashes.length; b++){
+			if (hashes[b] == GAP_HASH){
+				gapped.get(b).add(index);
+			} else {
+				bucket = buckets.get(b).get(hashes[b]);
+				if (bucket == null){
+					bucket = new ArrayList<Integer>(1);
+					buckets.get(b).put(hashes[b], bucket);
+				}
+				bucket.add(index);
+			}
+		}
+	}
+
+
+	/**
+	 * Whether the set contains a sequence equal to the given sequence.
+	 * */
+	protected boolean contains(Dna dna){
+		return indexOf(dna) != -1;
+	}
+
+
+	/**
+	 * Get the index of the first added sequence that is equal to the given sequence.
+	 *
+	 * @return the index (in the order in which the sequences were added) or -1
+	 * */
+	protected int indexOf(Dna dna){
+
+		if (dna.getGapIsChange()){
+			Integer index = exact.get(dna);
+			return (index == null) ? -1 : index;
+		}
+
+		if (blockLength == -1){
+			return -1;
+		}
+
+		/* the block without gaps with the least candidates */
+		long hashes[] = blockHashes(dna);
+		List<Integer> bucket = null;
+		List<Integer> gappedInBlock = null;
+		List<Integer> candidates;
+		int count;
+		int minCount = Integer.MAX_VALUE;
+		for (int b=0; b<hashes.length; b++){
+			if (hashes[b] != GAP_HASH){
+				candidates = buckets.get(b).get(hashes[b]);
+				count = gapped.get(b).size() + ((candidates == null) ? 0 : candidates.size());
+				if (count < minCount){
+					minCount = count;
+					bucket = candidates;
+					gappedInBlock = gapped.get(b);
+				}
+			}
+		}
+
+		if (gappedInBlock == null){
+
+			/* gaps in all blocks */
+			for (int i=0; i<sequences.size(); i++){
+				if (compatible(hashes, blockHashes.get(i)) && dna.equals(sequences.get(i))){
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/* compare the candidates in the increasing order of their indices (merge of two sorted lists) */
+		int i = 0;
+		int j = 0;
+		int bucketSize = (bucket == null) ? 0 : bucket.size();
+		int index;
+		while ((i < bucketSize) || (j < gappedInBlock.size())){
+			if ((j == gappedInBlock.size()) || ((i < bucketSize) && (bucket.get(i) < gappedInBlock.get(j)))){
+				index = bucket.get(i++);
+			} else {
+				index = gappedInBlock.get(j++);
+			}
+			if (compatible(hashes, blockHashes.get(index)) && dna.equals(sequences.get(index))){
+				return index;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Get the sequence at the given index (in the order in which the sequences were added).
+	 * */
+	protected Dna get(int index){
+		return sequences.get(index);
+	}
+
+
+	private void initBlocks(int length){
+
+		int blockCount = Math.max(1, Math.min(BLOCK_COUNT, length));
+		blockLength = Math.max(1, (length + blockCount - 1) / blockCount);
+		blockCount = (length + blockLength - 1) / blockLength;
+
+		buckets = new ArrayList<Map<Long, List<Integer>>>(blockCount);
+		gapped = new ArrayList<List<Integer>>(blockCount);
+		for (int b=0; b<blockCount; b++){
+			buckets.add(new HashMap<Long, List<Integer>>());
+			gapped.add(new ArrayList<Integer>());
+		}
+	}
+
+
+	/**
+	 * Compute the hashes of the blocks of a sequence.
+	 * */
+	private long[] blockHashes(Dna dna){
+
+		byte bytes[] = dna.getBytes();
+		byte gapChar = dna.getGapChar();
+		long hashes[] = new long[buckets.size()];
+		long hash;
+		int to;
+		for (int b=0; b<hashes.length; b++){
+			to = Math.min(bytes.length, (b + 1)*blockLength);
+			hash = 1;
+			for (int i=b*blockLength; i<to; i++){
+				if (bytes[i] == gapChar){
+					hash = GAP_HASH;
+					break;
+				}
+				hash = 31*hash + bytes[i];
+				/* a block without gaps never gets the hash of a block with a gap */
+				if ((i == to - 1) && (hash == GAP_HASH)){
+					hash++;
+				}
+			}
+			hashes[b] = hash;
+		}
+		return hashes;
+	}
+
+
+	/**
+	 * Whether two sequences can be equal, i.e. their blocks without gaps have the same hashes.
+	 * */
+	private static boolean compatible(long hashes0[], long hashes1[]){
+		for (int b=0; b<hashes0.length; b++){
+			if ((hashes0[b] != hashes1[b]) && (hashes0[b] != GAP_HASH) && (hashes1[b] != GAP_HASH)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -134,7 +134,7 @@ public class GapHandler {
 							
 							for (int pos : posListMerged){
 								if ((b0[pos] != b1[pos]) && (b0[pos] != gapChar) && (b1[pos] != gapChar)){
-									counter++;
+									counter += distanceMatrix.getSiteWeight(pos);
 								}
 							}
 							
@@ -316,7 +316,7 @@ public class GapHandler {
 					counter = 0;
 					for (int pos : posListMerged){
 						if ((b0[pos] != b1[pos]) && (b0[pos] != gapChar) && (b1[pos] != gapChar)){
-							counter++;
+							counter += distanceMatrix.getSiteWeight(pos);
 						}
 					}
 					if (counter > 0){
@@ -421,7 +421,7 @@ public class GapHandler {
 						counter = 0;
 						for (int pos : posListMerged){
 							if ((b0[pos] != b1[pos]) && (b0[pos] != gapChar) && (b1[pos] != gapChar)){
-								counter++;
+								counter += distanceMatrix.getSiteWeight(pos);
 							}
 						}
 						if (counter > 0){
@@ -614,7 +614,7 @@ public class GapHandler {
 				for (int k=0; k<posList.size(); k++){
 					pos = posList.get(k);
 					if ((b1[pos] != gapChar) && (b0[pos] != b1[pos])){
-						counter++;
+						counter += distanceMatrix.getSiteWeight(pos);
 					}
 				}
 				if (counter > 0){
@@ -980,8 +980,10 @@ public class GapHandler {
 		public void setDna(byte[] dnaAsBytes) {
 			
 			vertex.getDna().getBytes()[position] = dnaAsBytes[0];
+			vertex.getDna().invalidatePacked();
 			if (vertex.getSecDna() != null){
 				vertex.getSecDna().getBytes()[position] = dnaAsBytes[0];
+				vertex.getSecDna().invalidatePacked();
 			}
 			
 		}
@@ -1,6 +1,7 @@
 package ptree;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -8,6 +9,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,6 +32,10 @@ import dmatrix.Matrix;
 
 /**
  * To infer intermediates in MST version.
+ * 
+ * The internal nodes can be processed by a pool of threads, each thread uses its own memory manager
+ * (the mutation manager of a local topology is created for the sites of the local topology). The intermediates are returned in the same order as in the sequential version
+ * (the internal nodes in the DFS order).
  * */
 public class Intermediates {
 
@@ -33,28 +44,46 @@ public class Intermediates {
 	public static final int STRATEGY_BIG_SETS = 2;
 	public static final int STRATEGY_BIGGEST_COST_DECREASE = 3;
 	
+	/* the number of blocks of internal nodes per thread (more blocks ~ better load balancing) */
+	private static final int BLOCKS_PER_THREAD = 4;
+	
+	/* if a tree has less internal nodes, the intermediates are inferred in the calling thread */
+	private static final int MIN_PARALLEL_NODE_COUNT = 64;
+	
+	/* pool of threads that is shared by all instances */
+	private static ExecutorService executor = null;
+	
+	private static int executorThreadCount = 0;
+	
 	private int strategy;
 	private double coefficient;
 	private double threshold;
 	private double thresholdLocalTopology;
 	private int minIntAtNode;
 	private boolean intFilterViaLocalTopology;
-	private long intermediatesEnterLocalTopology;
-	private long intermediatesPassedLocalTopology; 
+	private int threadCount;
 
 	private Configuration config;
-	private MutationManager mm; 
 	private MemoryManager mem;
 	
-	private Random random;
+	/* the DNA preprocessor of the input sequences (weights of the sites) or null */
+	private DNAPreprocessor dPrep;
 	
-	/* Statistics computed during the inferring process */
-	private long intermediateInferred;
-	private long intermediateChosen;
+	private Random random;
 	
 	private Log log;
 	
 	protected Intermediates(Configuration config, MemoryManager mem){
+		this(config, mem, null);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param dPrep the DNA preprocessor of the input sequences or null
+	 * */
+	protected Intermediates(Configuration config, MemoryManager mem, DNAPreprocessor dPrep){
 		log = LogFactory.getLog(Intermediates.class);
 		this.strategy = config.getIntStrategy();
 		this.coefficient = config.getIntStrategyCoefficient();
@@ -62,15 +91,25 @@ public class Intermediates {
 		this.thresholdLocalTopology = config.getIntFilterViaLocalTopologyThreshold();
 		this.minIntAtNode = config.getIntStrategyMinIntAtNode();
 		this.intFilterViaLocalTopology = config.getIntFilterViaLocalTopology();
+		this.threadCount = config.getIntThreadCount();
 		this.config = config;
-		this.mm = new MutationManager(config, true);
 		this.mem = mem;
+		this.dPrep = dPrep;
 		if (this.strategy == STRATEGY_RANDOM){
 			random = new Random();
 		} 
 	}
 	
 	
+	/**
+	 * Creates an intermediates generator that doesn`t use the weights of the sites
+	 * (e.g. to run it outside of the PTree computation).
+	 * */
+	public static Intermediates createIntermediates(Configuration config, MemoryManager mem){
+		return new Intermediates(config, mem);
+	}
+	
+	
 	/**
 	 * Search for repeated mutations and infer intermediate vertices.
 	 *
@@ -82,28 +121,36 @@ public class Intermediates {
 	public List<Vertex> getIntermediatesFromRepeatedMutations(Vertex root, int treeSize){
 		
 		List<Vertex> intermediates = new ArrayList<Vertex>();
-	
-		this.intermediateInferred = 0;
-		this.intermediateChosen = 0;
-		this.intermediatesEnterLocalTopology = 0;
-		this.intermediatesPassedLocalTopology = 0;
 		
-		dfsSearchForRepeatedMutations(root, intermediates);
+		/* internal nodes in the DFS order */
+		List<Vertex> internalNodes = new ArrayList<Vertex>();
+		dfsCollectInternalNodes(root, internalNodes);
+		
+		Context context;
+		
+		if ((this.threadCount > 1) && (internalNodes.size() >= MIN_PARALLEL_NODE_COUNT)){
+			context = searchRepeatedMutationsInParallel(internalNodes, intermediates);
+		} else {
+			context = new Context(this.mem, this.random);
+			for (int i=0; i<internalNodes.size(); i++){
+				searchRepeatedMutationsInInternalNode(internalNodes.get(i), intermediates, context);
+			}
+		}
 		
 		if (((this.strategy == STRATEGY_RANDOM) || (this.strategy == STRATEGY_BIG_SETS) 
-				|| (this.strategy == STRATEGY_BIGGEST_COST_DECREASE)) && (this.intermediateInferred > 0)){
-			double rate = ((double)this.intermediateChosen/(double)this.intermediateInferred);
+				|| (this.strategy == STRATEGY_BIGGEST_COST_DECREASE)) && (context.intermediateInferred > 0)){
+			double rate = ((double)context.intermediateChosen/(double)context.intermediateInferred);
 			Trace.print("Intermediates taken: " + (rate*100) +"%");
 			if (rate >= this.threshold){
 				this.strategy = STRATEGY_NONE;
 			}
 		}
 		
-		if ((this.intFilterViaLocalTopology) && (this.intermediatesEnterLocalTopology > 0)){
-				double rate = ((double)this.intermediatesPassedLocalTopology/(double)this.intermediatesEnterLocalTopology);
+		if ((this.intFilterViaLocalTopology) && (context.intermediatesEnterLocalTopology > 0)){
+				double rate = ((double)context.intermediatesPassedLocalTopology/(double)context.intermediatesEnterLocalTopology);
 				Trace.print("Intermediates filtered via local topology: " + (rate*100) +"%");
 				Trace.print("Tree size:  " + treeSize);
-				if (this.intermediatesEnterLocalTopology < (((double)treeSize)*(this.thresholdLocalTopology))){
+				if (context.intermediatesEnterLocalTopology < (((double)treeSize)*(this.thresholdLocalTopology))){
 					this.intFilterViaLocalTopology = false;
 				}
 		}
@@ -113,27 +160,124 @@ public class Intermediates {
 	
 	
 	/**
-	 * Traverse a tree and for each internal node search for repeated mutations pattern.
+	 * Traverse a tree and collect the internal nodes (the order in which they are searched for repeated mutations pattern).
 	 * 
 	 * @param vertex current vertex in the DFS
-	 * @param intermediates input and output list of intermediate vertices 
+	 * @param internalNodes output list of internal nodes 
 	 * 
 	 * */
-	private void dfsSearchForRepeatedMutations(Vertex vertex, List<Vertex> intermediates){
+	private void dfsCollectInternalNodes(Vertex vertex, List<Vertex> internalNodes){
 		
 		if (!vertex.isLeaf()){
 			
-			/* process this internal node */
-			 
-			searchRepeatedMutationsInInternalNode(vertex, intermediates);
+			/* this internal node */
+			internalNodes.add(vertex);
 			
 			List<Vertex> children = vertex.getOutcomingEdges();
 			
-			/* process children of this internal node */
+			/* children of this internal node */
 			for (int i=0; i< children.size(); i++){
-				dfsSearchForRepeatedMutations(children.get(i), intermediates);
+				dfsCollectInternalNodes(children.get(i), internalNodes);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Get the pool of threads that contains at least threadCount threads.
+	 * */
+	private static synchronized ExecutorService getExecutor(int threadCount){
+		
+		if ((executor == null) || (executorThreadCount < threadCount)){
+			
+			if (executor != null){
+				executor.shutdown();
 			}
+			
+			executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "intermediates");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executorThreadCount = threadCount;
 		}
+		return executor;
+	}
+	
+	
+	/**
+	 * Search for repeated mutations in the internal nodes using a pool of threads.
+	 * 
+	 * The internal nodes are split into blocks of consecutive nodes of approximately the same cost
+	 * (the cost of the local topology of a node is estimated by the square of its degree). Each block is processed
+	 * with its own memory manager, the intermediates of the blocks are merged in the order of the blocks.
+	 * 
+	 * @param internalNodes internal nodes in the DFS order
+	 * @param intermediates output list of intermediate vertices
+	 * 
+	 * @return the statistics of all blocks
+	 * */
+	private Context searchRepeatedMutationsInParallel(final List<Vertex> internalNodes, List<Vertex> intermediates){
+		
+		long cost = 0;
+		for (int i=0; i<internalNodes.size(); i++){
+			cost += ((long)internalNodes.get(i).getDegree())*internalNodes.get(i).getDegree();
+		}
+		
+		/* split the nodes into blocks of approximately the same cost */
+		long blockCost = cost/(this.threadCount*BLOCKS_PER_THREAD) + 1;
+		List<Callable<Context>> tasks = new ArrayList<Callable<Context>>(this.threadCount*BLOCKS_PER_THREAD + 1);
+		final Stat run = Stat.getRun();
+		int blockStart = 0;
+		cost = 0;
+		
+		for (int i=0; i<internalNodes.size(); i++){
+			cost += ((long)internalNodes.get(i).getDegree())*internalNodes.get(i).getDegree();
+			if ((cost >= blockCost) || (i == internalNodes.size() - 1)){
+				final int from = blockStart;
+				final int to = i + 1;
+				final long seed = (this.random != null)?(this.random.nextLong()):(0);
+				tasks.add(new Callable<Context>(){
+					@Override
+					public Context call() throws Exception {
+						Stat.joinRun(run);
+						Context context = new Context(new MemoryManager(), (random != null)?(new Random(seed)):(null));
+						for (int j=from; j<to; j++){
+							searchRepeatedMutationsInInternalNode(internalNodes.get(j), context.intermediates, context);
+						}
+						return context;
+					}
+				});
+				blockStart = i + 1;
+				cost = 0;
+			}
+		}
+		
+		Context result = new Context(this.mem, this.random);
+		Context context;
+		
+		try {
+			List<Future<Context>> futures = getExecutor(this.threadCount).invokeAll(tasks);
+			for (Future<Context> future : futures){
+				context = future.get();
+				intermediates.addAll(context.intermediates);
+				result.intermediateInferred += context.intermediateInferred;
+				result.intermediateChosen += context.intermediateChosen;
+				result.intermediatesEnterLocalTopology += context.intermediatesEnterLocalTopology;
+				result.intermediatesPassedLocalTopology += context.intermediatesPassedLocalTopology;
+			}
+		} catch (InterruptedException ex){
+			log.error("Inferring of the intermediates was interrupted.", ex);
+			System.exit(-1);
+		} catch (ExecutionException ex){
+			log.error("Inferring of the intermediates failed.", ex.getCause());
+			System.exit(-1);
+		}
+		
+		return result;
 	}
 	
 	
@@ -271,9 +415,10 @@ public class Intermediates {
 	 * 
 	 * @param vertex internal node
 	 * @param intermediates input and output list of intermediate vertices 
+	 * @param context the memory manager and statistics of the current thread
 	 * 
 	 * */
-	private void searchRepeatedMutationsInInternalNode(Vertex vertex, List<Vertex> intermediates){
+	private void searchRepeatedMutationsInInternalNode(Vertex vertex, List<Vertex> intermediates, Context context){
 		
 		List<Vertex> children = vertex.getOutcomingEdges();
 		
@@ -302,8 +447,8 @@ public class Intermediates {
 			keyLength = Math.max(Math.min(this.minIntAtNode, keys.length), 
 					Math.min((int)((double)vertex.getDegree()*this.coefficient), keyLength));
 			
-			this.intermediateInferred += keys.length;
-			this.intermediateChosen += keyLength;
+			context.intermediateInferred += keys.length;
+			context.intermediateChosen += keyLength;
 
 			/* sort the array according to the decreasing size of the mutation sets */
 			List<Mutations> mList = new ArrayList<Mutations>(keys.length);
@@ -313,7 +458,7 @@ public class Intermediates {
 			
 			switch (this.strategy){
 			case STRATEGY_RANDOM: 
-				chooseAtRandom(mList, keyLength);
+				chooseAtRandom(mList, keyLength, context.random);
 				break;
 			case STRATEGY_BIG_SETS:
 			case STRATEGY_BIGGEST_COST_DECREASE:
@@ -340,13 +485,13 @@ public class Intermediates {
 		 * considering: parent, vertex, children of the vertex
 		 * */
 		if (this.intFilterViaLocalTopology){
-			this.intermediatesEnterLocalTopology += keyLength;
-			List<Mutations> mutInt = filterIntermediatesViaLocalTopology(vertex, keys, keyLength);
+			context.intermediatesEnterLocalTopology += keyLength;
+			List<Mutations> mutInt = filterIntermediatesViaLocalTopology(vertex, keys, keyLength, context);
 			keyLength = mutInt.size();
 			for (int i=0; i<keyLength; i++){
 				keys[i] = mutInt.get(i);
 			}
-			this.intermediatesPassedLocalTopology += keyLength;
+			context.intermediatesPassedLocalTopology += keyLength;
 		}
 		
 		Dna dna;
@@ -382,7 +527,7 @@ public class Intermediates {
 	/**
 	 * Choose at random "count" elements from the list.
 	 * */
-	private void chooseAtRandom(List<Mutations> list, int count){
+	private static void chooseAtRandom(List<Mutations> list, int count, Random random){
 		 
 		if (list.size() <= count){
 			return;
@@ -413,69 +558,53 @@ public class Intermediates {
 	 * 
 	 * @return list of mutations sets that correspond to the selected intermediates
 	 * */
-	private List<Mutations> filterIntermediatesViaLocalTopology(Vertex vertex, Mutations[] keys, int keyLength){
+	private List<Mutations> filterIntermediatesViaLocalTopology(Vertex vertex, Mutations[] keys, int keyLength, Context context){
 		
 		/* get sites in the sequences that are relevant (contained in mutations) */
 		Set<Integer> relevantSites = new HashSet<Integer>();
-		List<Mutation> mutationList = new ArrayList<Mutation>();
 		Mutations mutations;
 
 		/* mutation set in the "vertex" */
 		mutations = vertex.getMutations();
 		if (mutations != null){
-			mutationList.addAll(mutations.getMutations());
+			for (int i=0; i<mutations.getMutationCount(); i++){
+				relevantSites.add(mutations.getPosition(i)-1);
+			}
 		}
 		
 		/* mutation set in children */
 		for (int i=0; i<vertex.getOutcomingEdges().size(); i++){
 			mutations = vertex.getOutcomingEdges().get(i).getMutations();
 			if (mutations != null){
-				mutationList.addAll(mutations.getMutations());
+				for (int j=0; j<mutations.getMutationCount(); j++){
+					relevantSites.add(mutations.getPosition(j)-1);
+				}
 			}
 		}
-		 
-		/* fill in the set of the relevant sites */
-		for (int i=0; i<mutationList.size(); i++){
-			relevantSites.add(mutationList.get(i).getPosition()-1);
-		}
-		mutationList.clear();
 		
 		/* mapping from the original sequences (big arrays) 
 		 * to the sequences that contain only relevant sites (small arrays)
 		 * 
-		 * the diffArrayBig[index] contains index of the same site in the small array (or -1)
-		 * the diffArraySmall[index] contains the index of the same site in the big array
+		 * the diffArraySmall[index] contains the index of the same site in the big array,
+		 * the sites are sorted, i.e. the index of a site in the small array is found by the binary search
+		 * (no array of the length of the alignment is needed, the alignment can be long)
 		 * */
-		short[] diffArrayBig = new short[vertex.getDna().getBytes().length];
-		short[] diffArraySmall = new short[relevantSites.size()];
-		short idxSmallArray = 0;
-		for (int i=0; i<diffArrayBig.length; i++){
-			if (relevantSites.contains(i)){
-				diffArrayBig[i] = idxSmallArray;
-				diffArraySmall[idxSmallArray] = (short)i;
-				idxSmallArray++;
-			} else {
-				diffArrayBig[i] = -1;
-			}
+		int[] diffArraySmall = new int[relevantSites.size()];
+		int idxSmallArray = 0;
+		for (int site : relevantSites){
+			diffArraySmall[idxSmallArray] = site;
+			idxSmallArray++;
 		}
+		Arrays.sort(diffArraySmall);
 		relevantSites.clear();
 		
 		/* set positions, according to the "small array" (relevant sites) 
 		 * in all mutations sets that correspond to the new intermediates 
 		 * */
-		List<Mutation> mutationListSrc;
-		List<Mutation> mutationListDst;
-		Mutation mutation;
 		Mutations[] keys2 = new Mutations[keyLength];
 		
 		for (int i=0; i<keyLength; i++){
-			mutationListSrc = keys[i].getMutations();
-			mutationListDst = new ArrayList<Mutation>(mutationListSrc.size());
-			for (int j=0; j<mutationListSrc.size(); j++){
-				mutation = mutationListSrc.get(j);
-				mutationListDst.add(new Mutation(mutation,diffArrayBig[mutation.getPosition()-1]+1));				
-			}
-			keys2[i] = new Mutations(mutationListDst);
+			keys2[i] = keys[i].mapPositions(diffArraySmall);
 		}
 		
 		/* vertices that create the local topology */
@@ -558,8 +687,13 @@ public class Intermediates {
 			log.error("The number of candidate intermediates is too high, choose some strategy to reduce it!");
 		}
 		
+		/* the weights of the relevant sites (site j of the local topology is site diffArraySmall[j] of the tree) */
+		DNAPreprocessor localPrep = (dPrep != null)?(dPrep.getSitesPreprocessor(diffArraySmall)):(new DNAPreprocessor(0));
+		MutationManager localMm = new MutationManager(this.config, true);
+		localMm.setSiteWeights(localPrep.getSiteWeights());
+		
 		//Matrix dMatrix = new Matrix(localTopologyTree, this.config);
-		Matrix dMatrix = new Matrix(localTopologyTree, new DNAPreprocessor(0), this.config);
+		Matrix dMatrix = new Matrix(localTopologyTree, localPrep, this.config);
 		
 		//dMatrix.computeDistanceMatrix();
 		dMatrix.computeDistanceMatrix(null, null, null);
@@ -572,21 +706,21 @@ public class Intermediates {
 			
 			if (loop == 0){
 				/* compute MST, root the graph, add mutations */
-				mst.MST.computeMST(localTopologyTree, dMatrix, this.mm, this.mem, this.config);
+				mst.MST.computeMST(localTopologyTree, dMatrix, localMm, context.mem, this.config);
 				Stat.computeMSTStandardFinished(ts);
 				//Trace.print("MST compute (i) (" + localTopologyTree.size() + ")", ts);
 			} else {
 				if (MST.getUseOptimization(config, localTopologyTree.size(), removedIntermediates.size())){
 					
-					mst.MST.repairMST(localTopologyTree, removedIntermediates, dMatrix, this.mm, 
-							this.mem, this.config);
+					mst.MST.repairMST(localTopologyTree, removedIntermediates, dMatrix, localMm, 
+							context.mem, this.config);
 					Stat.computeMSTRepairFinished(ts);
 					//Trace.print("MST repair (i) (" + localTopologyTree.size() + ", " + removedIntermediates.size() + ")", ts);
 					//Tree tempT1 = new Tree(localTopologyTree, this.config, null, dMatrix);
 					//int costT1 = Tree.getCostConsideringTheFirstDNA(localTopologyTree, this.config);
 				} else {
 					PTreeMethods.deforestation(localTopologyTree);
-					mst.MST.computeMST(localTopologyTree, dMatrix, this.mm, this.mem, this.config);
+					mst.MST.computeMST(localTopologyTree, dMatrix, localMm, context.mem, this.config);
 					Stat.computeMSTStandardFinished(ts);
 					//Trace.print("MST compute (i) (" + localTopologyTree.size() + ", " + removedIntermediates.size() + ")", ts);
 					//Tree tempT2 = new Tree(localTopologyTree, this.config, null, dMatrix);
@@ -623,6 +757,7 @@ public class Intermediates {
 		}
 		
 		dMatrix.clear();
+		localMm.clear();
 		
 		/* the end of the usual algorithm from the PTree*/
 		
@@ -645,4 +780,28 @@ public class Intermediates {
 	}
 	
 	
+	/**
+	 * The memory manager, random generator and statistics used to infer the intermediates in one thread.
+	 * */
+	private static class Context {
+		
+		private final MemoryManager mem;
+		private final Random random;
+		
+		/* intermediates inferred by the thread (parallel version) */
+		private final List<Vertex> intermediates = new ArrayList<Vertex>();
+		
+		/* Statistics computed during the inferring process */
+		private long intermediateInferred = 0;
+		private long intermediateChosen = 0;
+		private long intermediatesEnterLocalTopology = 0;
+		private long intermediatesPassedLocalTopology = 0;
+		
+		private Context(MemoryManager mem, Random random){
+			this.mem = mem;
+			this.random = random;
+		}
+	}
+	
+	
 }
@@ -4,13 +4,13 @@ package ptree;
  * Represents one point mutation.
  * (Character_from, Character_to, position)
  * 
- * Positions in DNAs are counted from 1. 
+ * Positions in DNAs are counted from 1 (int, alignments can be longer than 32767 sites). 
  * */
 public class Mutation {
 
 	private final byte fromChar;
 	private final byte toChar;
-	private short position;
+	private int position;
 	
 	/**
 	 * Constructor.
@@ -19,7 +19,7 @@ public class Mutation {
 	 * */
 	protected Mutation(byte fromChar, int position, byte toChar){
 		this.fromChar = fromChar;
-		this.position = (short)position;
+		this.position = position;
 		this.toChar = toChar;
 	}
 	
@@ -27,11 +27,11 @@ public class Mutation {
 	protected Mutation(Mutation m, int newPosition){
 		this.fromChar = m.fromChar;
 		this.toChar = m.toChar;
-		this.position = (short)newPosition;
+		this.position = newPosition;
 	}
 	
 	protected void setPosition(int position){
-		this.position = (short)position;
+		this.position = position;
 	}
 	
 	
@@ -39,7 +39,7 @@ public class Mutation {
 	 * Get the inverse mutation of this mutation.
 	 * */
 	protected Mutation getInverse(){
-		return new Mutation(this.toChar,(int)this.position,this.fromChar);
+		return new Mutation(this.toChar,this.position,this.fromChar);
 	}
 	
 	
@@ -57,7 +57,7 @@ public class Mutation {
 	 * @return the position is counted from 1
 	 * */
 	public int getPosition(){
-		return (int)this.position;
+		return this.position;
 	}
 	
 	
@@ -4,6 +4,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import common.Configuration;
 
 public class MutationManager {
@@ -12,40 +15,120 @@ public class MutationManager {
 	boolean countGapAsChange;
 	boolean bufferMutations;
 	
+	/* encoding of the DNA characters used to count mutations via packed DNA */
+	private PackedDna.Encoding encoding;
+	
 	/* mapping: edge hash(vertex from vertex to) -> mutation record */
 	private Map<Long,Mutations> vertexToMutations;
 	
+	/* weights of the sites (see DNAPreprocessor) or null if each site has weight 1 */
+	private int[] siteWeights = null;
+	
 	public MutationManager(Configuration config, boolean bufferMutations){
 		this.gapChar = config.getGapChar();
 		this.countGapAsChange = config.getCountGapAsChange();
 		this.bufferMutations = bufferMutations;
+		this.encoding = new PackedDna.Encoding(config);
 		if (this.bufferMutations){
 			vertexToMutations = new HashMap<Long,Mutations>();
 		}
 	}
 	
 	
+	/**
+	 * Set the weights of the sites, the number of mutations is then the sum of the weights 
+	 * of the positions at which two DNA sequences differ.
+	 * 
+	 * @param siteWeights weights of the sites or null (~ each site has weight 1)
+	 * */
+	public void setSiteWeights(int[] siteWeights){
+		this.siteWeights = siteWeights;
+	}
+	
+	
+	/**
+	 * @return weights of the sites or null (~ each site has weight 1)
+	 * */
+	public int[] getSiteWeights(){
+		return this.siteWeights;
+	}
+	
+	
+	/**
+	 * Get the weight of a site (position counted from 0).
+	 * */
+	public int getSiteWeight(int index){
+		if (siteWeights == null){
+			return 1;
+		}
+		if (index >= siteWeights.length){
+			Log log = LogFactory.getLog(MutationManager.class);
+			log.error("No weight for site " + index + ", the weights are given for " + siteWeights.length + " sites");
+			System.exit(-1);
+		}
+		return siteWeights[index];
+	}
+	
+	
+	/**
+	 * Get the number of positions at which two DNA sequences differ.
+	 * The sequences are compared in their packed form, 64 positions at once.
+	 * 
+	 * The distances are stored as short numbers (the distance matrices), 
+	 * the DNAs of a long alignment must not differ at more than 32767 (weighted) positions.
+	 * */
 	public short getMutationsCount(Dna dna0, Dna dna1){
 		
 		byte[] array0 = dna0.getBytes();
 		byte[] array1 = dna1.getBytes();
+		
+		if (array0.length == array1.length){
+			return toDistance(PackedDna.getDifferenceCount(dna0.getPacked(encoding), dna1.getPacked(encoding), 
+					array0, array1, countGapAsChange, this));
+		}
+		
 		int length = Math.min(array0.length, array1.length);
-		short mutationCount = (short)Math.abs(array0.length - array1.length);
+		int mutationCount = Math.abs(array0.length - array1.length);
 		for (int i=0; i<length; i++){
 			if (array0[i] != array1[i]){
 				if (countGapAsChange){
-					mutationCount++;
+					mutationCount += getSiteWeight(i);
 				} else {
 					if ((array0[i] != gapChar) && (array1[i] != gapChar)){
-						mutationCount++;
+						mutationCount += getSiteWeight(i);
 					}
 				}
 			}
 		}
-		return mutationCount;
+		return toDistance(mutationCount);
+	}
+	
+	
+	/**
+	 * Convert a (weighted) number of mutations to a distance stored in the distance matrices.
+	 * The input is checked in advance (see DNAPreprocessor.getMaxDistance()), 
+	 * therefore a distance that is out of range means an error in the computation.
+	 * */
+	public static short toDistance(int mutationCount){
+		if (mutationCount > Short.MAX_VALUE){
+			Log log = LogFactory.getLog(MutationManager.class);
+			log.error("Two sequences differ at " + mutationCount + " positions, the maximum supported distance is " 
+					+ Short.MAX_VALUE);
+			System.exit(-1);
+		}
+		return (short)mutationCount;
 	}
 
 	
+	/**
+	 * Compute the packed form of the DNA in advance, 
+	 * e.g. before the DNA is compared with other sequences from several threads.
+	 * */
+	public void pack(Dna dna){
+		dna.getPacked(encoding);
+	}
+	
+	
 	public boolean countAsChange(byte p0, byte p1){
 		
 		if (p0 != p1){
@@ -1,29 +1,53 @@
 package ptree;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
 
 /**
  * Represents a list of mutations that defines difference between two DNAs.
+ * 
+ * The mutations are packed into a long array, one mutation is: (position << 16) | (fromChar << 8) | toChar,
+ * so the array sorted according to the increasing position is also sorted as an array of numbers.
+ * The inverse mutations share the array with the original mutations (fromChar and toChar are swapped when read).
  * */
 public class Mutations implements Comparable<Mutations> {
 
-	/* mutations are sorted according to the increasing position */
-	protected List<Mutation> mutations;
+	private static final long[] EMPTY = new long[0];
 	
-	/* hash code of the list */
-	private final int hashCode;
+	/* buffer of each thread for the mutations that are being found */
+	private static final ThreadLocal<long[]> BUFFER = new ThreadLocal<long[]>(){
+		@Override
+		protected long[] initialValue(){
+			return new long[64];
+		}
+	};
+	
+	/* packed mutations, sorted according to the increasing position */
+	private final long[] mutations;
+	
+	/* whether fromChar and toChar of the packed mutations are swapped (inverse mutations) */
+	private final boolean inverse;
+	
+	/* hash code of the list (0 ~ not computed yet) */
+	private int hashCode = 0;
 	
 	private short occurrence = 2;
 	
 	
 	/**
 	 * Constructor.
+	 * 
+	 * @param mutations mutations sorted according to the increasing position
 	 *  */
 	protected Mutations(List<Mutation> mutations){
-		this.mutations = mutations;
-		hashCode = getHashCode(mutations);
+		this.mutations = new long[mutations.size()];
+		for (int i=0; i<this.mutations.length; i++){
+			this.mutations[i] = pack(mutations.get(i).getPosition(), mutations.get(i).getFromChar(), 
+					mutations.get(i).getToChar());
+		}
+		this.inverse = false;
 	}
 	
 	
@@ -31,8 +55,14 @@ public class Mutations implements Comparable<Mutations> {
 	 * Constructor.
 	 * */
 	protected Mutations(){
-		mutations = new ArrayList<Mutation>();
-		hashCode = 0;
+		this.mutations = EMPTY;
+		this.inverse = false;
+	}
+	
+	
+	private Mutations(long[] mutations, boolean inverse){
+		this.mutations = mutations;
+		this.inverse = inverse;
 	}
 	
 	
@@ -41,35 +71,66 @@ public class Mutations implements Comparable<Mutations> {
 	 * */
 	public Mutations(Dna dnaOut, Dna dnaIn, byte gapChar, boolean countGapAsChange){
 		
-		mutations = new ArrayList<Mutation>();
 		byte[] arrayOut = dnaOut.getBytes();
 		byte[] arrayIn = dnaIn.getBytes();
 		int length = Math.min(arrayOut.length, arrayIn.length);
+		
+		/* the mutations are collected in the buffer of the thread (one pass through the sequences) */
+		long[] buffer = BUFFER.get();
+		int count = 0;
+		
 		for (int i=0; i<length; i++){
-			if (arrayOut[i] != arrayIn[i]){
-				if (countGapAsChange){
-					mutations.add(new Mutation(arrayOut[i], i+1, arrayIn[i]));
-				} else {
-					if ((arrayOut[i] != gapChar) && (arrayIn[i] != gapChar)){
-						mutations.add(new Mutation(arrayOut[i], i+1, arrayIn[i]));
-					}
+			if ((arrayOut[i] != arrayIn[i]) 
+					&& (countGapAsChange || ((arrayOut[i] != gapChar) && (arrayIn[i] != gapChar)))){
+				if (count == buffer.length){
+					buffer = Arrays.copyOf(buffer, 2*count);
+					BUFFER.set(buffer);
 				}
+				buffer[count++] = pack(i+1, arrayOut[i], arrayIn[i]);
 			}
 		}
+		
+		/* mutations at different lengths of the DNAs */
+		int size = count + Math.max(arrayOut.length, arrayIn.length) - length;
+		long[] packed = (size == 0)?(EMPTY):(new long[size]);
+		System.arraycopy(buffer, 0, packed, 0, count);
+		
 		if (arrayOut.length < arrayIn.length){
 			for (int i=arrayOut.length; i<arrayIn.length; i++){
-					mutations.add(new Mutation((byte)' ', i+1, arrayIn[i]));
+				packed[count++] = pack(i+1, (byte)' ', arrayIn[i]);
 			}
 		}
 		if (arrayIn.length < arrayOut.length){
 			for (int i=arrayIn.length; i<arrayOut.length; i++){
-					mutations.add(new Mutation(arrayOut[i], i+1, (byte)' '));
+				packed[count++] = pack(i+1, arrayOut[i], (byte)' ');
 			}
 		}
-		hashCode = getHashCode(mutations);
+		
+		mutations = packed;
+		inverse = false;
 	}
 	
 	
+	private static long pack(int position, byte fromChar, byte toChar){
+		return (((long)position) << 16) | ((fromChar & 0xFF) << 8) | (toChar & 0xFF);
+	}
+	
+	
+	/**
+	 * Swap fromChar and toChar of a packed mutation.
+	 * */
+	private static long swap(long mutation){
+		return (mutation & ~0xFFFFL) | ((mutation & 0xFF) << 8) | ((mutation >>> 8) & 0xFF);
+	}
+	
+	
+	/**
+	 * Get the i-th packed mutation.
+	 * */
+	private long get(int i){
+		return (inverse)?(swap(mutations[i])):(mutations[i]);
+	}
+	
 	
 	/**
 	 * How many vertices participate in this mutation set.
@@ -89,28 +150,11 @@ public class Mutations implements Comparable<Mutations> {
 	}
 	
 	
-	private static int getHashCode(List<Mutation> list){
-		long hash = 0;
-		for (int i=0; i< list.size(); i++){
-			hash += i*(list.get(i).hashCode());
-		}
-		return (int)hash;
-	}
-	
-	
 	/**
-	 * Get inverse mutations. 
+	 * Get inverse mutations (the returned object shares the mutations with m). 
 	 * */
 	public static Mutations getInverseMutations(Mutations m){
-		
-		List<Mutation> list = m.mutations;
-		List<Mutation> inverseList = new ArrayList<Mutation>(list.size());
-		
-		for (int i=0; i<list.size(); i++){
-			inverseList.add(list.get(i).getInverse());
-		}
-		
-		return new Mutations(inverseList);
+		return new Mutations(m.mutations, !m.inverse);
 	}
 	
 	
@@ -120,24 +164,25 @@ public class Mutations implements Comparable<Mutations> {
 	 * */
 	public boolean isSubsetOf(Mutations m){
 		
-		List<Mutation> mbigger = m.getMutations(); 
+		long[] mbigger = m.mutations;
 		int i=0;
 		int j=0;
 		int match = 0;
 		
-		while (i< mutations.size() && j< mbigger.size()){
+		while (i < mutations.length && j < mbigger.length){
 			
-			if (mutations.get(i).getPosition() < mbigger.get(j).getPosition()){
+			/* the positions are not changed by the inverse view */
+			if ((mutations[i] >>> 16) < (mbigger[j] >>> 16)){
 				i++;
 				continue;
 			}
 			
-			if (mutations.get(i).getPosition() > mbigger.get(j).getPosition()){
+			if ((mutations[i] >>> 16) > (mbigger[j] >>> 16)){
 				j++;
 				continue;
 			}
 			
-			if (mutations.get(i).equals(mbigger.get(j))){
+			if (get(i) == m.get(j)){
 				/* I have found the same element in both arrays */
 				match++;
 			}
@@ -146,11 +191,7 @@ public class Mutations implements Comparable<Mutations> {
 		}
 		
 		/* the number of equal elements is equal to the number of the smaller set -> this (smaller set) is a subset of m */
-		if (match == mutations.size()){
-			return true;
-		} else {
-			return false;
-		}
+		return (match == mutations.length);
 	}
 	
 	
@@ -159,46 +200,76 @@ public class Mutations implements Comparable<Mutations> {
 	 * */
 	public static Mutations getIntersection(Mutations mut1, Mutations mut2){
 		
-		List<Mutation> list1 = mut1.mutations;
-		List<Mutation> list2 = mut2.mutations;
+		long[] list1 = mut1.mutations;
+		long[] list2 = mut2.mutations;
 		
-		if (list1.isEmpty() || list2.isEmpty()){
+		if ((list1.length == 0) || (list2.length == 0)){
 			return null;
 		}
 		
-		List<Mutation> intersectionList = null;
+		/* count the elements of the intersection, then store them (no intermediate list) */
+		long[] intersection = null;
+		int count = 0;
+		long m1;
 		
-		int i = 0;
-		int j = 0;
+		for (int pass=0; pass<2; pass++){
 		
-		while (i < list1.size() && j < list2.size()){
+			int i = 0;
+			int j = 0;
+		
+			while (i < list1.length && j < list2.length){
 			
-			if (list1.get(i).getPosition() < list2.get(j).getPosition()){
-				i++;
-				continue;
-			}
+				/* the positions are not changed by the inverse view */
+				if ((list1[i] >>> 16) < (list2[j] >>> 16)){
+					i++;
+					continue;
+				}
 			
-			if (list1.get(i).getPosition() > list2.get(j).getPosition()){
-				j++;
-				continue;
-			}
+				if ((list1[i] >>> 16) > (list2[j] >>> 16)){
+					j++;
+					continue;
+				}
 			
-			if (list1.get(i).equals(list2.get(j))){
-				/* I have found the same element in both arrays */
-				if (intersectionList == null){
-					intersectionList = new ArrayList<Mutation>();
+				m1 = mut1.get(i);
+				if (m1 == mut2.get(j)){
+					/* I have found the same element in both arrays */
+					if (intersection == null){
+						count++;
+					} else {
+						intersection[count++] = m1;
+					}
 				}
-				intersectionList.add(list1.get(i));
+				i++;
+				j++;
+			}
+		
+			if (count == 0){
+				return null;
+			}
+			if (intersection == null){
+				intersection = new long[count];
+				count = 0;
 			}
-			i++;
-			j++;
 		}
 		
-		if (intersectionList == null){
-			return null;
-		} else {
-			return new Mutations(intersectionList);
+		return new Mutations(intersection, false);
+	}
+	
+	
+	/**
+	 * Get the mutations with changed positions.
+	 * 
+	 * @param sites sorted sites (positions-1) that contain all positions of the mutations, 
+	 * 	the new position-1 of a mutation is the index of its site in the array
+	 * */
+	protected Mutations mapPositions(int[] sites){
+		long[] mapped = new long[mutations.length];
+		long mut;
+		for (int i=0; i<mapped.length; i++){
+			mut = get(i);
+			mapped[i] = (((long)Arrays.binarySearch(sites, (int)(mut >>> 16) - 1) + 1) << 16) | (mut & 0xFFFFL);
 		}
+		return new Mutations(mapped, false);
 	}
 	
 
@@ -206,17 +277,43 @@ public class Mutations implements Comparable<Mutations> {
 	 * Number of elements in a mutation set.
 	 * */
 	public int getMutationCount(){
-		return mutations.size();
+		return mutations.length;
+	}
+	
+	
+	/**
+	 * @return the position of the i-th mutation (counted from 1)
+	 * */
+	public int getPosition(int i){
+		return (int)(mutations[i] >>> 16);
 	}
 	
 	
-	protected void clear(){
-		mutations.clear();
+	/**
+	 * @return the character before the i-th mutation
+	 * */
+	public byte getFromChar(int i){
+		return (byte)(get(i) >>> 8);
+	}
+	
+	
+	/**
+	 * @return the character after the i-th mutation
+	 * */
+	public byte getToChar(int i){
+		return (byte)get(i);
 	}
 	
 	
+	/**
+	 * Get the list of mutations (a new list, changes of the list are not reflected in this object).
+	 * */
 	protected List<Mutation> getMutations(){
-		return mutations;
+		List<Mutation> list = new ArrayList<Mutation>(mutations.length);
+		for (int i=0; i<mutations.length; i++){
+			list.add(new Mutation(getFromChar(i), getPosition(i), getToChar(i)));
+		}
+		return list;
 	}
 	
 	
@@ -224,19 +321,26 @@ public class Mutations implements Comparable<Mutations> {
 	public boolean equals(Object arg){
 
 		Mutations mut = (Mutations)arg;
-		List<Mutation> m = mut.mutations;
 		
-		if (this.hashCode != mut.hashCode){
+		if (this.hashCode() != mut.hashCode()){
 			return false;
 		}
 		
-		if (mutations.size() != m.size()){
+		if (mutations.length != mut.mutations.length){
 			return false;
 		}
 		
-		for (int i=0; i< m.size(); i++){
-			if (!mutations.get(i).equals(m.get(i))){
-				return false;
+		if (inverse == mut.inverse){
+			for (int i=0; i< mutations.length; i++){
+				if (mutations[i] != mut.mutations[i]){
+					return false;
+				}
+			}
+		} else {
+			for (int i=0; i< mutations.length; i++){
+				if (mutations[i] != swap(mut.mutations[i])){
+					return false;
+				}
 			}
 		}
 		
@@ -246,6 +350,15 @@ public class Mutations implements Comparable<Mutations> {
 	
 	@Override
 	public int hashCode(){
+		if ((hashCode == 0) && (mutations.length > 0)){
+			long hash = 0;
+			long mut;
+			for (int i=0; i< mutations.length; i++){
+				mut = get(i);
+				hash = 31*hash + (mut ^ (mut >>> 32));
+			}
+			hashCode = (int)(hash ^ (hash >>> 32));
+		}
 		return hashCode;
 	}
 	
@@ -253,12 +366,13 @@ public class Mutations implements Comparable<Mutations> {
 	@Override
 	public String toString(){
 		StringBuffer buf = new StringBuffer();
-		if (mutations.size() > 0){
-			buf.append(mutations.get(0).toString());
-		}
-		for(int i=1; i<mutations.size(); i++){
-			buf.append(" ");
-			buf.append(mutations.get(i).toString());
+		for(int i=0; i<mutations.length; i++){
+			if (i > 0){
+				buf.append(" ");
+			}
+			buf.append((char)getFromChar(i));
+			buf.append(getPosition(i));
+			buf.append((char)getToChar(i));
 		}
 		return buf.toString();
 	}
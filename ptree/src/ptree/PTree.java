@@ -3,11 +3,17 @@ package ptree;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import common.Configuration;
 import common.TimeStamp;
@@ -28,6 +34,8 @@ import tests.StatInt;
 
 import dmatrix.DMatrix;
 import dmatrix.Matrix;
+import fitchcost.BitFitchAlg;
+import fitchcost.BitFitchCache;
 import fitchcost.SankoffAlg;
 
 
@@ -76,53 +84,54 @@ public class PTree {
 			List<Vertex> vertices;
 			
 			
-			/* skip first data sets according to config */
-			int skipNum = config.getSkipDatasetNum();
-			for (int i=0; i<skipNum; i++){
-				reader.getNextInputSet();
-			}
+			/* skip first data sets according to config (the skipped data sets are only scanned) */
+			int skipNum = reader.skipInputSets(config.getSkipDatasetNum());
 			if (skipNum > 0){
 				log.info("First " + skipNum + " data sets has been skipped!");
 			}
 			
-			/* an array of threads that computes the input in parallel */
-			ThreadMST thread[] = new ThreadMST[config.getThreadCount()];
+			/* a pool of threads that computes the input in parallel, a thread takes the next dataset as soon as it is free */
+			int threadCount = Math.max(1, config.getThreadCount());
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount);
 			
-			/* the number of active threads */
-			int activThreadCount;
+			/* the results of the datasets that have been read but not written yet (in the input order), 
+			 * the finished results wait here until the results of all previous datasets are written */
+			LinkedList<Future<String>> results = new LinkedList<Future<String>>();
 			
-			for (;;){
+			/* the maximum number of datasets that are read in advance and not computed yet, 
+			 * a permit is released when the computation of a dataset finishes */
+			Semaphore inFlight = new Semaphore(2*threadCount);
+			int datasetCount = 0;
 			
-				/* create threads */
-				activThreadCount = 0;
-				for (int i=0; i< thread.length; i++){
+			try {
+				
+				for (;;){
+				
+					/* wait if too many datasets are being computed */
+					inFlight.acquire();
+					
 					vertices = reader.getNextInputSet();
-					if (vertices != null){
-						thread[i] = new ThreadMST(vertices);
-						thread[i].start();
-						activThreadCount++;
-						Trace.print("Thread for dataset (" + (i+1) + ") started");
-					} else {
-						thread[i] = null;
+					if (vertices == null){
+						inFlight.release();
+						break;
+					}
+					results.add(executor.submit(new TaskMST(vertices, inFlight)));
+					datasetCount++;
+					Trace.print("Task for dataset (" + datasetCount + ") submitted");
+					
+					/* write the trees that are finished and all previous trees have been written */
+					while (!results.isEmpty() && results.getFirst().isDone()){
+						writeResult(writer, results.removeFirst());
 					}
 				}
 				
-				if (activThreadCount == 0){
-					break;
-				}
-				
-				/* joint threads & write results */
-				for (int i=0; i<thread.length; i++){
-					if (thread[i] != null){
-						try {
-							thread[i].join();
-							writer.add(thread[i].getTree());
-						} catch (Exception ex) {
-							log.error("The current thread (" + thread[i].getName() + ") was interrupted..", ex);
-						}
-					}
+				/* write the remaining trees */
+				while (!results.isEmpty()){
+					writeResult(writer, results.removeFirst());
 				}
 				
+			} finally {
+				executor.shutdown();
 			}
 			
 			reader.close();
@@ -144,18 +153,37 @@ public class PTree {
 	}
 	
 	
+	/**
+	 * Wait until the tree of a dataset is computed and write it.
+	 * */
+	private void writeResult(Writer writer, Future<String> result){
+		try {
+			writer.add(result.get());
+		} catch (Exception ex) {
+			log.error("The computation of a dataset failed or was interrupted..", ex);
+		}
+	}
+	
+	
 	/* 
-	 * One MST thread.
+	 * One MST task (computes one dataset).
 	 * */
-	class ThreadMST extends Thread {
+	class TaskMST implements Callable<String> {
 		
 		private List<Vertex> vertices;
 		
-		private ThreadMST(List<Vertex> vertices) {
+		/* released when the computation finishes */
+		private final Semaphore inFlight;
+		
+		private TaskMST(List<Vertex> vertices, Semaphore inFlight) {
             this.vertices = vertices;
+            this.inFlight = inFlight;
         }
 
-		public void run(){
+		public String call(){
+			
+			/* the statistics of this dataset, the threads started by this task share them */
+			Stat.startRun();
 			
 			try {
 				
@@ -167,6 +195,14 @@ public class PTree {
 				
 			} catch (Exception ex){
 				log.error("An exception occured..",ex);
+			} finally {
+				Stat.endRun();
+			}
+			
+			try {
+				return getTree();
+			} finally {
+				inFlight.release();
 			}
 		}
 		
@@ -201,27 +237,233 @@ public class PTree {
         	 * (but not for Jukes-Cantor and Kimura corrections) *///!!!!!!!!!!!!!!
         	DNAPreprocessor dPrep = null;
         	//if (config.getNjCorrection() == Configuration.NO_CORRECTION){//!!!!!!!
-        	dPrep = new DNAPreprocessor(vertices);
+        	dPrep = new DNAPreprocessor(vertices, config.getCompressSitePatterns());
         	//}
         	
+        	/* the distances are stored as short numbers, check them before any distance is computed */
+        	if (dPrep.getMaxDistance() > Short.MAX_VALUE){
+        		log.error("The alignment contains " + dPrep.getMaxDistance() + " variable sites, two sequences can differ at more than " 
+        				+ Short.MAX_VALUE + " sites, which is the maximum supported distance. Remove the most divergent sequences " 
+        				+ "or split the alignment into parts with at most " + Short.MAX_VALUE + " variable sites.");
+        		System.exit(-1);
+        	}
+        	
         	
         	/* remove duplicate vertices in terms of the same DNA sequence, first occurrences remain (hash based distinct) */
 			ArrayList<Vertex> duplicateOriginalVertices = PTreeMethods.removeDuplicateVertices1(vertices);
 			
+			Tree bestTree;
+			int chainCount = Math.max(1, config.getChainCount());
+			
+			if (chainCount == 1){
+				bestTree = runChain(vertices, mem, rand, stat, dPrep, null, 0);
+			} else {
+				bestTree = runChains(chainCount, dPrep);
+			}
+			
+			/* final step */
+			Trace.print("Final step started.");
+	
+			Tree currentTree = bestTree;
+			Dna dna;
+			
+			vertices.clear();
+			vertices.addAll(currentTree.getOriginalVertices());
+			vertices.addAll(currentTree.getIntermediateVertices());
+			
+			/* set vertices` DNAs to its original DNAs */
+			for (Vertex vertex : vertices){
+				dna = vertex.getSecDna();
+				if (dna != null){
+					vertex.setDna(dna);
+				}
+			}
+			
+			/* restore gaps */
+			currentTree.restoreGapSubstitutions();
+			
+			Matrix dMatrix = null;
+			
+			//test
+			//SankoffAlg sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(0): " + sa.getCost());
+			
+			for (;;){
+				
+				PTreeMethods.deforestation(vertices);
+				
+				/* compute the distance matrix */
+				
+				if (dMatrix == null){
+					dMatrix = new Matrix(vertices, dPrep, config);
+					dMatrix.computeDistanceMatrix(null, null, null);
+				} else {
+					dMatrix.restoreDistanceMatrix();
+				}
+				
+				TimeStamp ts = TimeStamp.getTimeStamp();
+				/* compute MST, root the graph, add mutations */
+				mst.MST.computeMST(vertices, dMatrix, mm, mem, config);
+				Stat.computeMSTStandardFinished(ts);
+				
+				/* delete intermediates with in-degree==1 & out-degree==1 */	
+				if (!PTreeMethods.deleteIntermediateDegree2(vertices)){
+					break;
+				} 
+			}
+			
+			//test
+			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(1): " + sa.getCost());
+			
+			/* handle original duplicate vertices */  //to have gaps in originals !!!
+			GapHandler.restoreGapsInAllOriginals(currentTree.getGapHandler());
+			
+			//Vertex vertexO = null;
+			//Vertex vertexD = null;
+			
+			/* the first vertex with an equal DNA is found via an index of the DNAs */
+			DnaSet dnaSet = new DnaSet();
+			for (Vertex vertexO : vertices){
+				dnaSet.add(vertexO.getDna());
+			}
+			
+			int index;
+			Vertex vertexO;
+			
+			for (Vertex vertexD : duplicateOriginalVertices){
+				
+				index = dnaSet.indexOf(vertexD.getDna());
+				
+				if (index != -1){
+					vertexO = vertices.get(index);
+					if (!vertexO.isOriginal()){
+						log.error("Equal to not original!!! " + vertexO.getName());
+						System.exit(-1);
+					} 
+						
+					/* vertex D will be a child of vertex O */
+					vertexO.setOutcomingEdge(vertexD);
+					vertexD.setIncomingEdge(vertexO);
+					vertexD.setMutations(new Mutations());
+				} else {
+					log.error("Haven`t found corresponding vertex for " + vertexD.getName());
+				}
+			}
+			
+			//test
+			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(2): " + sa.getCost());
+			
+			vertices.addAll(duplicateOriginalVertices);
+			duplicateOriginalVertices.clear();
+			
+			/* remove intermediates with degree 1 status 0 or 2*/
+			PTreeMethods.removeIntermediatesDegree1NodeStatus0or2(vertices);
+			
+			//test
+			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(3): " + sa.getCost());
+			
+			dMatrix.clear();
+			mm.clear();
+			mem.clear();
+			System.gc();
+			
+			/* move all internal original sequences to leaf nodes, make leaf copy for each internal original node */
+			PTreeMethods.moveOriginalsToLeaves(vertices, true);
+			
+			//test
+			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(4): " + sa.getCost());
+			
+			/* cancel gaps in internals */
+			GapHandler gapHandler = new GapHandler(config, null);
+			gapHandler.cancelGapsInInternals(vertices, true);
+			gapHandler.repairMutationSets(vertices.get(0));
+			
+			/* restore all DNAs to its original length */
+			if ((dPrep != null) && (dPrep.used())){
+				dPrep.restoreDNA(vertices);
+				dPrep.restoreMutations(vertices);
+			}
+			
+			//test
+			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
+			//System.out.println("final step cost(5): " + sa.getCost());
+			
+			/* compute the fitch cost */
+			Integer fitchCost = null;
+			if (config.getComputeFitchCost()){
+				TimeStamp ts = Trace.getTimeStamp();
+				byte[] chars = null;
+				/* set the ignore character: gap or a "mask char" that is not contained in a sequence at this point */
+				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
+				//long timeS = System.currentTimeMillis();//!!!
+				
+				/* compute fitch cost */
+				fitchCost = new BitFitchAlg(chars, ignoreChar, vertices.get(0)).getCost();
+				//log.info("cost compute: " + (System.currentTimeMillis() - timeS));//!!!
+				//timeS = System.currentTimeMillis();//!!!
+				/* reconstruct the tree according to the fitch cost */
+				if (config.getReconstructOutputTree()){	
+					SankoffAlg sankoffAlg = new SankoffAlg(chars, ignoreChar, vertices.get(0));
+					sankoffAlg.assignAndSetSequences();
+					PTreeMethods.updateMutations(vertices.get(0), config);
+					//log.info("tree reconstruct: " + (System.currentTimeMillis() - timeS));//!!!
+					sankoffAlg.clear();
+				}
+				
+				Trace.print("Sankoff alg. finished (fitch cost: " + fitchCost + ")", ts);
+			}
+			
+			/* test the output tree */
+			if (config.getTestOutputTreeStructure() && pTTest != null){
+				if (!pTTest.checkTree(vertices.get(0), config)){
+					log.error("Wrong tree..");
+				}
+				pTTest.clear();
+			}
+
+			PTreeMethods.printReport(vertices, startTS, fitchCost);
+			//log.info("\nintermediates processed: " + stat.getProcessedIntermediates() + "\n" 
+			//+ "speed: " + " " + ((double)stat.getProcessedIntermediates()/
+			//		(((double)System.currentTimeMillis() - (double)startTS.getTimeStampMillis())/1000.0)) 
+			//		+ " processed intermediates/sec");
+			//
+			//log.info(Stat.statToString(startTS));
+        }
+		
+		
+		/**
+		 * Run the search of one chain: compute the initial tree and improve it in the sampling iterations.
+		 * 
+		 * @param chainVertices the input vertices (without duplicates), the list is modified
+		 * @param exchange the best tree shared with the other chains or null if there is only one chain
+		 * @param chainIndex the index of this chain
+		 * 
+		 * @return the best tree of the chain
+		 * */
+		private Tree runChain(List<Vertex> chainVertices, MemoryManager mem, Random rand, StatInt stat, 
+				DNAPreprocessor dPrep, ChainExchange exchange, int chainIndex){
+			
 			/* compute initial tree */
 			Tree currentTree;
 			Tree newTree;
 			Tree bestTree;
 			
-			List<Vertex> temAltTreeVertices = new ArrayList<Vertex>(vertices.size());
+			List<Vertex> temAltTreeVertices = new ArrayList<Vertex>(chainVertices.size());
+			
+			/* the proposed trees share most of their subtrees, their fitch costs are computed incrementally */
+			BitFitchCache fitchCache = new BitFitchCache(2*chainVertices.size());
 			
 			if (config.getInitTreeAsNJ()){
 				/* compute init tree as NJ */
-				currentTree = NJTree.getNJTree(vertices, dPrep, config);
+				currentTree = NJTree.getNJTree(chainVertices, dPrep, config);
 				Trace.printBetterCost("Initial tree cost (NJ): " + currentTree.getCost());
 			} else {
 				/* compute a tree without masking */
-				currentTree = computePartialTree(vertices, mem, rand, stat, null, null, null, dPrep);
+				currentTree = computePartialTree(chainVertices, mem, rand, stat, null, null, null, dPrep, fitchCache);
 				Trace.printBetterCost("Initial tree cost (min tree): " + currentTree.getCost());
 			}
 			Trace.printProposedCost("Proposed tree: " + currentTree.getCost());
@@ -248,7 +490,7 @@ public class PTree {
 					temAltTreeVertices.addAll(PTreeMethods.deleteElements(currentTree.getIntermediateVertices(), 
 						config.getDeleteIntCoef(), rand));
 					PTreeMethods.deforestation(temAltTreeVertices);
-					newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, null, currentTree, null, dPrep);
+					newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, null, currentTree, null, dPrep, fitchCache);
 					Trace.printProposedCost("Proposed tree: " + newTree.getCost());
 					
 					if (bestTree.getCost() > newTree.getCost()){
@@ -283,7 +525,8 @@ public class PTree {
 			Trace.print("Compute Initial Tree finished - cost: " + currentTree.getCost());
 			
 			/* initialize the sampling manager */
-			SamplingManager sm = new SamplingManager(currentTree.getOriginalVertices(), config);
+			SamplingManager sm = new SamplingManager(currentTree.getOriginalVertices(), config, 
+					(dPrep != null)?(dPrep.getSiteWeights()):(null));
 			
 			Sampling mask;
 			Dna dna;
@@ -310,6 +553,9 @@ public class PTree {
 			
 			int iterNotAccepted = 0;
 			
+			int iterSinceExchange = 0;
+			List<Vertex> takenIntermediates;
+			
 			/* If there hasn`t been better tree in maxIterCount then stop. */
 			for (int iterCount = 0; iterCount < maxIterCount; iterCount++){
 				
@@ -349,7 +595,7 @@ public class PTree {
 					PTreeMethods.deforestation(originals);
 					
 					/* computes a new tree with masked positions */
-					semiRandomTree = computePartialTree(originals, mem, rand, stat, mask, currentTree, null, dPrep);
+					semiRandomTree = computePartialTree(originals, mem, rand, stat, mask, currentTree, null, dPrep, fitchCache);
 					Trace.printAnyCost("Compute partial tree finished (iter: " + iterCount + ") " + semiRandomTree.getCost());	
 				}
 				
@@ -368,7 +614,7 @@ public class PTree {
 						temAltTreeVertices.addAll(PTreeMethods.deleteElements(semiRandomTree.getIntermediateVertices(), 
 								config.getDeleteIntCoef(), rand));
 						PTreeMethods.deforestation(temAltTreeVertices);
-						newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, mask, semiRandomTree, null, dPrep);
+						newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, mask, semiRandomTree, null, dPrep, fitchCache);
 						if (semiRandomTree.getCost() > newTree.getCost()){
 							//System.err.println("Alternative tree has a better cost (1): loop:" + initIter + " (" 
 							//		+ (treeTemp.getCost()-treeAlt.getCost()) + ") " + treeAlt.getCost());
@@ -417,7 +663,7 @@ public class PTree {
 					PTreeMethods.deforestation(treeCombVertices);
 					
 					/* compute combined tree (with masked positions) */
-					treeComb = computePartialTree(treeCombVertices, mem, rand, stat, mask, currentTree, semiRandomTree, dPrep);
+					treeComb = computePartialTree(treeCombVertices, mem, rand, stat, mask, currentTree, semiRandomTree, dPrep, fitchCache);
 					
 					Trace.printAnyCost("Compute combined tree finished (iter: " + iterCount + ") " + treeComb.getCost());	
 					Trace.printProposedCost("Proposed tree: " + treeComb.getCost());
@@ -435,7 +681,7 @@ public class PTree {
 								temAltTreeVertices.addAll(PTreeMethods.deleteElements(treeComb.getIntermediateVertices(), 
 										config.getDeleteIntCoef(), rand));
 								PTreeMethods.deforestation(temAltTreeVertices);
-								newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, mask, treeComb, null, dPrep);
+								newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, mask, treeComb, null, dPrep, fitchCache);
 								if (treeComb.getCost() > newTree.getCost()){
 									treeComb = newTree;
 									Trace.printAnyCost("Alternative tree has a better cost: " + newTree.getCost());
@@ -486,180 +732,143 @@ public class PTree {
 					}
 					iterCount++;	
 				}
+				
+				/* exchange the best tree with the other chains */
+				if ((exchange != null) && (++iterSinceExchange >= config.getChainExchangeIterCount())){
+					
+					iterSinceExchange = 0;
+					exchange.offer(chainIndex, bestTree);
+					takenIntermediates = exchange.takeIntermediates(chainIndex, bestTree.getCost());
+					
+					if (takenIntermediates != null){
+						
+						/* compute a tree from the originals of this chain and the intermediates of the best tree */
+						for (Vertex vertex : originals){
+							dna = vertex.getSecDna().clone();
+							vertex.setDna(dna);
+						}
+						temAltTreeVertices.clear();
+						temAltTreeVertices.addAll(originals);
+						temAltTreeVertices.addAll(takenIntermediates);
+						PTreeMethods.deforestation(temAltTreeVertices);
+						newTree = computePartialTree(temAltTreeVertices, mem, rand, stat, null, null, null, dPrep, fitchCache);
+						Trace.printAnyCost("Tree taken over from another chain (chain: " + chainIndex + ") " + newTree.getCost());
+						
+						/* the taken tree replaces the current tree */
+						currentTree = newTree;
+						if (bestTree.getCost() > newTree.getCost()){
+							bestTree = newTree;
+							treeComparator.setBestTree(bestTree.getCost());
+							iterCount = 0;
+							iterNotAccepted = 0;
+							Trace.printBetterCost("Taken tree has better cost: " + newTree.getCost());
+						}
+					}
+				}
 				Trace.printCurrentCost("Current tree: " + currentTree.getCost());
 			}
 			
-			/* final step */
-			Trace.print("Final step started.");
-	
-			//System.out.println("Acceptance ratio: " + treeComparator.getOverallAcceptanceRatio());			
-			
-			currentTree = bestTree;
-			
-			vertices.clear();
-			vertices.addAll(currentTree.getOriginalVertices());
-			vertices.addAll(currentTree.getIntermediateVertices());
+			//System.out.println("Acceptance ratio: " + treeComparator.getOverallAcceptanceRatio());
 			
-			/* set vertices` DNAs to its original DNAs */
-			for (Vertex vertex : vertices){
-				dna = vertex.getSecDna();
-				if (dna != null){
-					vertex.setDna(dna);
-				}
+			if (exchange != null){
+				exchange.offer(chainIndex, bestTree);
 			}
 			
-			/* restore gaps */
-			currentTree.restoreGapSubstitutions();
-			
-			Matrix dMatrix = null;
+			return bestTree;
+		}
+		
+		
+		/**
+		 * Run several chains in parallel, each chain computes with its own copy of the input vertices
+		 * and has its own random generator, memory manager and tree comparator.
+		 * 
+		 * @return the best tree of all chains
+		 * */
+		private Tree runChains(int chainCount, DNAPreprocessor dPrep){
 			
-			//test
-			//SankoffAlg sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(0): " + sa.getCost());
+			ChainExchange exchange = new ChainExchange(chainCount);
+			ThreadChain chain[] = new ThreadChain[chainCount];
 			
-			for (;;){
-				
-				PTreeMethods.deforestation(vertices);
-				
-				/* compute the distance matrix */
-				
-				if (dMatrix == null){
-					dMatrix = new Matrix(vertices, dPrep, config);
-					dMatrix.computeDistanceMatrix(null, null, null);
-				} else {
-					dMatrix.restoreDistanceMatrix();
-				}
-				
-				TimeStamp ts = TimeStamp.getTimeStamp();
-				/* compute MST, root the graph, add mutations */
-				mst.MST.computeMST(vertices, dMatrix, mm, mem, config);
-				Stat.computeMSTStandardFinished(ts);
-				
-				/* delete intermediates with in-degree==1 & out-degree==1 */	
-				if (!PTreeMethods.deleteIntermediateDegree2(vertices)){
-					break;
-				} 
+			/* copy the vertices before any chain modifies them */
+			for (int i=0; i<chainCount; i++){
+				chain[i] = new ThreadChain(copyVertices(vertices), dPrep, exchange, i);
 			}
 			
-			//test
-			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(1): " + sa.getCost());
-			
-			/* handle original duplicate vertices */  //to have gaps in originals !!!
-			GapHandler.restoreGapsInAllOriginals(currentTree.getGapHandler());
+			for (int i=0; i<chainCount; i++){
+				chain[i].start();
+				Trace.print("Chain (" + (i+1) + ") started");
+			}
 			
-			//Vertex vertexO = null;
-			//Vertex vertexD = null;
-			boolean found;
+			Tree bestTree = null;
 			
-			for (Vertex vertexD : duplicateOriginalVertices){
-				
-				found = false;
-				for (Vertex vertexO : vertices){
-					
-					if (vertexD.getDna().equals(vertexO.getDna())){
-						if (!vertexO.isOriginal()){
-							log.error("Equal to not original!!! " + vertexO.getName());
-							System.exit(-1);
-						} 
-							
-						/* vertex D will be a child of vertex O */
-						vertexO.setOutcomingEdge(vertexD);
-						vertexD.setIncomingEdge(vertexO);
-						vertexD.setMutations(new Mutations());
-						found = true;
-						break;
-					}
+			for (int i=0; i<chainCount; i++){
+				try {
+					chain[i].join();
+				} catch (InterruptedException ex) {
+					log.error("The current chain (" + chain[i].getName() + ") was interrupted..", ex);
 				}
-				
-				if (!found){
-					log.error("Haven`t found corresponding vertex for " + vertexD.getName());
+				if ((chain[i].getTree() != null) && ((bestTree == null) || (bestTree.getCost() > chain[i].getTree().getCost()))){
+					bestTree = chain[i].getTree();
 				}
 			}
 			
-			//test
-			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(2): " + sa.getCost());
-			
-			vertices.addAll(duplicateOriginalVertices);
-			duplicateOriginalVertices.clear();
-			
-			/* remove intermediates with degree 1 status 0 or 2*/
-			PTreeMethods.removeIntermediatesDegree1NodeStatus0or2(vertices);
-			
-			//test
-			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(3): " + sa.getCost());
-			
-			dMatrix.clear();
-			mm.clear();
-			mem.clear();
-			System.gc();
+			if (bestTree == null){
+				log.error("No chain computed a tree.");
+				System.exit(-1);
+			}
 			
-			/* move all internal original sequences to leaf nodes, make leaf copy for each internal original node */
-			PTreeMethods.moveOriginalsToLeaves(vertices, true);
+			return bestTree;
+		}
+		
+		
+		/**
+		 * Copy the input vertices (a chain cannot share vertices with the other chains).
+		 * */
+		private List<Vertex> copyVertices(List<Vertex> verticesC){
+			List<Vertex> list = new ArrayList<Vertex>(verticesC.size());
+			Vertex copy;
+			for (Vertex vertex : verticesC){
+				copy = new Vertex(vertex);
+				copy.setStatus(vertex.getStatus());
+				list.add(copy);
+			}
+			return list;
+		}
+		
+		
+		/* 
+		 * One search chain of a dataset.
+		 * */
+		class ThreadChain extends Thread {
 			
-			//test
-			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(4): " + sa.getCost());
+			private List<Vertex> chainVertices;
+			private DNAPreprocessor dPrep;
+			private ChainExchange exchange;
+			private int chainIndex;
 			
-			/* cancel gaps in internals */
-			GapHandler gapHandler = new GapHandler(config, null);
-			gapHandler.cancelGapsInInternals(vertices, true);
-			gapHandler.repairMutationSets(vertices.get(0));
+			private Tree tree = null;
 			
-			/* restore all DNAs to its original length */
-			if ((dPrep != null) && (dPrep.used())){
-				dPrep.restoreDNA(vertices);
-				dPrep.restoreMutations(vertices);
+			private ThreadChain(List<Vertex> chainVertices, DNAPreprocessor dPrep, ChainExchange exchange, int chainIndex){
+				this.chainVertices = chainVertices;
+				this.dPrep = dPrep;
+				this.exchange = exchange;
+				this.chainIndex = chainIndex;
 			}
 			
-			//test
-			//sa = new SankoffAlg(null, (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar()), vertices.get(0));
-			//System.out.println("final step cost(5): " + sa.getCost());
-			
-			/* compute the fitch cost */
-			Integer fitchCost = null;
-			if (config.getComputeFitchCost()){
-				TimeStamp ts = Trace.getTimeStamp();
-				byte[] chars = null;
-				/* set the ignore character: gap or a "mask char" that is not contained in a sequence at this point */
-				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
-				//long timeS = System.currentTimeMillis();//!!!
-				SankoffAlg sankoffAlg = new SankoffAlg(chars, ignoreChar, vertices.get(0));
-				
-				/* compute fitch cost */
-				sankoffAlg.computeCosts();
-				fitchCost = sankoffAlg.getCost();
-				//log.info("cost compute: " + (System.currentTimeMillis() - timeS));//!!!
-				//timeS = System.currentTimeMillis();//!!!
-				/* reconstruct the tree according to the fitch cost */
-				if (config.getReconstructOutputTree()){	
-					sankoffAlg.assignAndSetSequences();
-					PTreeMethods.updateMutations(vertices.get(0), config);
-					//log.info("tree reconstruct: " + (System.currentTimeMillis() - timeS));//!!!
+			public void run(){
+				try {
+					MemoryManager mem = new MemoryManager();
+					tree = runChain(chainVertices, mem, new Random(), new StatInt(), dPrep, exchange, chainIndex);
+					mem.clear();
+				} catch (Exception ex){
+					log.error("An exception occured in chain " + chainIndex + "..", ex);
 				}
-				
-				sankoffAlg.clear();
-				Trace.print("Sankoff alg. finished (fitch cost: " + fitchCost + ")", ts);
 			}
 			
-			/* test the output tree */
-			if (config.getTestOutputTreeStructure() && pTTest != null){
-				if (!pTTest.checkTree(vertices.get(0), config)){
-					log.error("Wrong tree..");
-				}
-				pTTest.clear();
+			private Tree getTree(){
+				return tree;
 			}
-
-			PTreeMethods.printReport(vertices, startTS, fitchCost);
-			//log.info("\nintermediates processed: " + stat.getProcessedIntermediates() + "\n" 
-			//+ "speed: " + " " + ((double)stat.getProcessedIntermediates()/
-			//		(((double)System.currentTimeMillis() - (double)startTS.getTimeStampMillis())/1000.0)) 
-			//		+ " processed intermediates/sec");
-			//
-			//log.info(Stat.statToString(startTS));
-        }
+		}
 		
 		
 		/**
@@ -668,11 +877,12 @@ public class PTree {
 		 * @param currentSampling the current sampling
 		 * @param tree1 a tree or null
 		 * @param tree2 a tree or null
+		 * @param fitchCache a cache of the subtrees of the trees computed by the chain (fitch cost)
 		 * 
 		 * @throws UnsupportedEncodingException 
 		 * */
 		private Tree computePartialTree(List<Vertex> verticesP, MemoryManager mem, Random rand, StatInt stat,
-				Sampling currentSampling, Tree tree1, Tree tree2, DNAPreprocessor dPrep) {
+				Sampling currentSampling, Tree tree1, Tree tree2, DNAPreprocessor dPrep, BitFitchCache fitchCache) {
  
 			TimeStamp ts;
 			
@@ -714,6 +924,7 @@ public class PTree {
 			
 			GapHandler gapHandler = new GapHandler(config, dMatrix);
 			MutationManager mm = new MutationManager(config, !gapHandler.getIsActive());
+			mm.setSiteWeights(dMatrix.getSiteWeights());
 			
 			/* get the NJ matrix */
 			
@@ -753,11 +964,16 @@ public class PTree {
 			boolean vertexRemoved;
 			List<Vertex> removedVertices = null;
 			
+			/* whether the tree is an MST according to the distance matrix (the first tree is computed from the NJ matrix) */
+			boolean treeIsMST = false;
+			boolean insertIntoMST;
+			int oldVertexCount;
+			
 			int lastIntCount = Integer.MAX_VALUE;
 			Set<Integer> hashSet = new HashSet<Integer>();
 			Set<Dna> dnaSet = new HashSet<Dna>();
 			boolean corresponds = true;
-			Intermediates intGen = new Intermediates(config, mem);// get rid of it?
+			Intermediates intGen = new Intermediates(config, mem, dPrep);// get rid of it?
 			
 			for (long loop = 0;;loop++){
 				 
@@ -852,8 +1068,14 @@ public class PTree {
 						Trace.print("intermediates left to process: " + newIntStore.size());
 					}
 					
+					/* extend the tree that was constructed last time if it is an MST of the current distances */
+					oldVertexCount = verticesP.size();
+					insertIntoMST = treeIsMST && MST.getUseInsertOptimization(config, oldVertexCount, newIntermediates.size());
+					
 					/* destroy the tree that was constructed last time */
-					PTreeMethods.deforestation(verticesP);
+					if (!insertIntoMST){
+						PTreeMethods.deforestation(verticesP);
+					}
 					
 					/* set node status of new Intermediates */
 					PTreeMethods.setStatusIgnoringSampling(newIntermediates, verticesP, duplicateOriginalVertices);
@@ -875,9 +1097,15 @@ public class PTree {
 						/* compute MST, root the graph, add mutations */
 						
 						if (loop2 == 0){
-							mst.MST.computeMST(verticesP, dMatrix, mm, mem, config);
-							Stat.computeMSTStandardFinished(ts3);
-							Trace.print("MST compute (ptree) (" + verticesP.size() + ")", ts3);
+							if (insertIntoMST){
+								mst.MST.insertIntoMST(verticesP, oldVertexCount, dMatrix, mm, mem);
+								Stat.computeMSTInsertFinished(ts3);
+								Trace.print("MST insert (ptree) (" + verticesP.size() + ")", ts3);
+							} else {
+								mst.MST.computeMST(verticesP, dMatrix, mm, mem, config);
+								Stat.computeMSTStandardFinished(ts3);
+								Trace.print("MST compute (ptree) (" + verticesP.size() + ")", ts3);
+							}
 						} else {
 							
 							if (MST.getUseOptimization(config, verticesP.size(), removedVertices.size())){
@@ -905,11 +1133,19 @@ public class PTree {
 						/* restore the distance matrix (some intermediate vertices were deleted) */
 						dMatrix.restoreDistanceMatrix();
 					}
+					
+					/* the tree is an MST of the remaining vertices */
+					treeIsMST = true;
 				}
 				
 				/* cancel gaps */
 				gapHandler.cancelGapsInInternals(verticesP, false);
 				
+				/* the distances of the internal vertices could have been changed */
+				if (gapHandler.getIsActive()){
+					treeIsMST = false;
+				}
+				
 				//TEST
 				/*Matrix dMatrixTemp2 = new Matrix(verticesP, config); 
 				dMatrixTemp2.computeDistanceMatrix(null, null, null);
@@ -966,7 +1202,7 @@ public class PTree {
 				set.clear();
 			}
 			
-			return new Tree(verticesP, config, modifiedNonTreeVertices, currentSampling, dMatrix, gapHandler);
+			return new Tree(verticesP, config, modifiedNonTreeVertices, currentSampling, dMatrix, gapHandler, fitchCache);
 		}
 		
 		
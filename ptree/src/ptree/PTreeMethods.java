@@ -82,13 +82,13 @@ public class PTreeMethods {
 		
 		ArrayList<Vertex> duplicateVertices = new ArrayList<Vertex>();
 		
-		Set<Dna> hashSet = new HashSet<Dna>();
+		DnaSet dnaSet = new DnaSet();
 		Vertex vertex;
 		
 		for (int i=0; i<vertices.size();){
 			vertex = vertices.get(i);
 			
-			if (hashSet.contains(vertex.getDna())){
+			if (dnaSet.contains(vertex.getDna())){
 				// duplicate dna  
 				duplicateVertices.add(vertex);
 				if (vertex.isOriginal()){
@@ -98,11 +98,10 @@ public class PTreeMethods {
 				//System.out.println("removed name: " + vertex.getName());
 			} else {
 				//System.out.println("added dna to hash table: " + vertex.getName());
-				hashSet.add(vertex.getDna());
+				dnaSet.add(vertex.getDna());
 				i++;
 			}	
 		}
-		hashSet.clear();
 		return duplicateVertices;
 	}
 	
@@ -146,22 +145,21 @@ public class PTreeMethods {
 		
 		ArrayList<Vertex> duplicateVertices = new ArrayList<Vertex>();
 		
-		Set<Dna> hashSet = new HashSet<Dna>();
+		DnaSet dnaSet = new DnaSet();
 		Vertex vertex;
 		
 		for (int i=0; i<vertices.size();){
 			vertex = vertices.get(i);
 			
-			if (hashSet.contains(vertex.getDna())){
+			if (dnaSet.contains(vertex.getDna())){
 				/* duplicate dna */
 				duplicateVertices.add(vertex);
 				vertices.remove(i);
 			} else {
-				hashSet.add(vertex.getDna());
+				dnaSet.add(vertex.getDna());
 				i++;
 			}	
 		}
-		hashSet.clear();
 		return duplicateVertices;
 	}
 	
@@ -174,24 +172,23 @@ public class PTreeMethods {
 	 * */
 	protected static void removeDuplicateVertices11(List<Vertex> vertices){
 		
-		Set<Dna> hashSet = new HashSet<Dna>();
+		DnaSet dnaSet = new DnaSet();
 		Vertex vertex;
 		
 		for (int i=0; i<vertices.size();){
 			vertex = vertices.get(i);
 			
-			if (hashSet.contains(vertex.getDna())){
+			if (dnaSet.contains(vertex.getDna())){
 				/* duplicate dna */
 				vertices.remove(i);
 				if (vertex.isOriginal()){
 					log.error("removing original!!");
 				}
 			} else {
-				hashSet.add(vertex.getDna());
+				dnaSet.add(vertex.getDna());
 				i++;
 			}	
 		}
-		hashSet.clear();
 	}
 	
 	
@@ -203,25 +200,24 @@ public class PTreeMethods {
 	 * */
 	protected static void removeDuplicateVertices11NoOriginals(List<Vertex> vertices){
 		
-		Set<Dna> hashSet = new HashSet<Dna>();
+		DnaSet dnaSet = new DnaSet();
 		Vertex vertex;
 		
 		for (int i=0; i<vertices.size();){
 			
 			vertex = vertices.get(i);
 			
-			if (hashSet.contains(vertex.getDna())){
+			if (dnaSet.contains(vertex.getDna())){
 				if (!vertex.isOriginal()){
 					vertices.remove(i);
 				} else {
 					i++;
 				}
 			} else {
-				hashSet.add(vertex.getDna());
+				dnaSet.add(vertex.getDna());
 				i++;
 			}	
 		}
-		hashSet.clear();
 	}
 	
 	
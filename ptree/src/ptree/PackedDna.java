@@ -0,0 +1,193 @@
+package ptree;
+
+import common.Configuration;
+
+
+/**
+ * Bit-packed form of a DNA sequence that is used to count differences between
+ * two sequences via XOR and popcount over 64bit words.
+ *
+ * Each site is encoded by three bits that are stored in three separate bit planes:
+ * (flag,hi,lo) = (0,x,y) ~ A,C,G,T; (1,0,0) ~ gap; (1,0,1) ~ mask char; (1,1,1) ~ any other character.
+ * Two sites that are not marked as "other" are different iff their codes are different.
+ * Sites marked as "other" are compared via their original bytes.
+ *
+ * The words are stored interleaved, i.e. lo, hi, flag of the first 64 sites, then lo, hi, flag
+ * of the next 64 sites etc. An instance is immutable.
+ * */
+final class PackedDna {
+
+	protected static final int SITES_PER_WORD = 64;
+
+	private static final int LO = 1;
+	private static final int HI = 2;
+	private static final int FLAG = 4;
+
+	private static final byte CODE_GAP = FLAG;
+	private static final byte CODE_MASK = FLAG | LO;
+	private static final byte CODE_OTHER = FLAG | HI | LO;
+
+	/** encoding that was used to create this packed sequence */
+	protected final Encoding encoding;
+
+	/** the number of sites */
+	protected final int length;
+
+	/** bit planes (lo, hi, flag) interleaved per 64 sites */
+	protected final long words[];
+
+
+	/**
+	 * Constructor.
+	 * */
+	protected PackedDna(byte bytes[], Encoding encoding){
+
+		int wordCount = (bytes.length + SITES_PER_WORD - 1)/SITES_PER_WORD;
+		long packed[] = new long[3*wordCount];
+		byte codes[] = encoding.codes;
+
+		for (int w=0; w<wordCount; w++){
+			long lo = 0;
+			long hi = 0;
+			long flag = 0;
+			int offset = w*SITES_PER_WORD;
+			int end = Math.min(bytes.length - offset, SITES_PER_WORD);
+			for (int i=0; i<end; i++){
+				int code = codes[bytes[offset + i] & 0xff];
+				long bit = 1L << i;
+				if ((code & LO) != 0){
+					lo |= bit;
+				}
+				if ((code & HI) != 0){
+					hi |= bit;
+				}
+				if ((code & FLAG) != 0){
+					flag |= bit;
+				}
+			}
+			packed[3*w] = lo;
+			packed[3*w + 1] = hi;
+			packed[3*w + 2] = flag;
+		}
+
+		this.encoding = encoding;
+		this.length = bytes.length;
+		this.words = packed;
+	}
+
+
+	/**
+	 * Count the number of sites at which two packed sequences of the same length differ.
+	 * Sites where at least one of the sequences contains a character that is not in the
+	 * alphabet are compared using the original byte arrays and method countAsChange.
+	 * If the mutation manager has weights of the sites, the weights of the different sites are summed up.
+	 *
+	 * @param countGapAsChange whether a site where one sequence contains a gap is counted as a change
+	 * */
+	protected static int getDifferenceCount(PackedDna p0, PackedDna p1, byte bytes0[], byte bytes1[],
+			boolean countGapAsChange, MutationManager mm){
+
+		long w0[] = p0.words;
+		long w1[] = p1.words;
+		int weights[] = mm.getSiteWeights();
+		int count = 0;
+
+		for (int i=0; i<w0.length; i+=3){
+
+			long lo0 = w0[i];
+			long hi0 = w0[i+1];
+			long flag0 = w0[i+2];
+			long lo1 = w1[i];
+			long hi1 = w1[i+1];
+			long flag1 = w1[i+2];
+
+			long diff = (lo0 ^ lo1) | (hi0 ^ hi1) | (flag0 ^ flag1);
+
+			if ((flag0 | flag1) != 0){
+
+				long other = (flag0 & hi0) | (flag1 & hi1);
+
+				if (!countGapAsChange){
+					/* gap: flag set, hi and lo not set */
+					diff &= ~((flag0 & ~hi0 & ~lo0) | (flag1 & ~hi1 & ~lo1));
+				}
+
+				if (other != 0){
+					diff &= ~other;
+					int offset = (i/3)*SITES_PER_WORD;
+					while (other != 0){
+						int site = offset + Long.numberOfTrailingZeros(other);
+						if (mm.countAsChange(bytes0[site], bytes1[site])){
+							count += (weights == null) ? 1 : weights[site];
+						}
+						other &= other - 1;
+					}
+				}
+			}
+
+			if (weights == null){
+				count += Long.bitCount(diff);
+			} else {
+				int offset = (i/3)*SITES_PER_WORD;
+				while (diff != 0){
+					count += weights[offset + Long.numberOfTrailingZeros(diff)];
+					diff &= diff - 1;
+				}
+			}
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Mapping of characters to the 3bit codes.
+	 * */
+	protected static final class Encoding {
+
+		private final long key;
+
+		private final byte codes[];
+
+		/**
+		 * Constructor, takes the DNA characters from the configuration.
+		 * */
+		protected Encoding(Configuration config){
+			this(config.getA(), config.getC(), config.getG(), config.getT(), config.getGapChar(), config.getMaskChar());
+		}
+
+		/**
+		 * Constructor.
+		 * */
+		protected Encoding(byte a, byte c, byte g, byte t, byte gap, byte mask){
+
+			codes = new byte[256];
+			for (int i=0; i<codes.length; i++){
+				codes[i] = CODE_OTHER;
+			}
+			codes[a & 0xff] = 0;
+			codes[c & 0xff] = LO;
+			codes[g & 0xff] = HI;
+			codes[t & 0xff] = HI | LO;
+			codes[mask & 0xff] = CODE_MASK;
+			codes[gap & 0xff] = CODE_GAP;
+
+			key = ((long)(a & 0xff)) | ((long)(c & 0xff) << 8) | ((long)(g & 0xff) << 16)
+				| ((long)(t & 0xff) << 24) | ((long)(gap & 0xff) << 32) | ((long)(mask & 0xff) << 40);
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if (!(o instanceof Encoding)){
+				return false;
+			}
+			return this.key == ((Encoding)o).key;
+		}
+
+		@Override
+		public int hashCode(){
+			return (int)(key ^ (key >>> 32));
+		}
+	}
+
+}
@@ -19,6 +19,9 @@ public class SamplingManager {
 	/* positions that can be masked */
 	private List<Integer> candidatePositions;	
 	
+	/* weights of the sites or null (each site has weight 1) */
+	private int[] siteWeights;
+	
 	/* random generator */
 	private Random random;
 	
@@ -30,9 +33,22 @@ public class SamplingManager {
      * Constructor.
      * */
 	protected SamplingManager(List<Vertex> originalVertices, Configuration config){
+		this(originalVertices, config, null);
+	}
+	
+	
+    /** 
+     * Constructor.
+     * 
+     * @param siteWeights weights of the sites or null (each site has weight 1), 
+     * a site is masked with probability proportional to its weight
+     * */
+	protected SamplingManager(List<Vertex> originalVertices, Configuration config, int[] siteWeights){
 		
 		log = LogFactory.getLog(SamplingManager.class);
 		
+		this.siteWeights = siteWeights;
+		
 		random = new Random(123456789);
 		
 		byte[][] array = new byte[originalVertices.size()][];
@@ -119,6 +135,10 @@ public class SamplingManager {
 		int numberOfPositions = random.nextInt(numberOfPositionsMax - numberOfPositionsMin + 1) 
 								+ numberOfPositionsMin;
 		
+		if (siteWeights != null){
+			return getRandomWeightedSampling(numberOfPositions);
+		}
+		
 		List<Integer> outputList = new ArrayList<Integer>(numberOfPositions);
 		
 		/* copy the list of candidates */
@@ -143,4 +163,44 @@ public class SamplingManager {
 		return new Sampling(outputList);
 	}
 	
+	
+	/**
+	 * Get random sampling of weighted sites, a site represents as many positions as its weight.
+	 * 
+	 * @param numberOfPositions maximum number of positions to be masked (the sum of the weights of the masked sites)
+	 * */
+	private Sampling getRandomWeightedSampling(int numberOfPositions){
+		
+		List<Integer> outputList = new ArrayList<Integer>();
+		
+		/* copy the list of candidates */
+		List<Integer> candidateCopy = new ArrayList<Integer>(candidatePositions.size());
+		candidateCopy.addAll(candidatePositions);
+		
+		int totalWeight = 0;
+		for (int position : candidatePositions){
+			totalWeight += siteWeights[position];
+		}
+		
+		int maskedWeight = 0;
+		int index;
+		int r;
+		
+		while ((maskedWeight < numberOfPositions) && (!candidateCopy.isEmpty())){
+			
+			/* draw one random candidate position, proportionally to its weight */
+			r = random.nextInt(totalWeight);
+			for (index=0; r >= siteWeights[candidateCopy.get(index)]; index++){
+				r -= siteWeights[candidateCopy.get(index)];
+			}
+			
+			outputList.add(candidateCopy.get(index));
+			maskedWeight += siteWeights[candidateCopy.get(index)];
+			totalWeight -= siteWeights[candidateCopy.get(index)];
+			candidateCopy.remove(index);
+		}
+		
+		return new Sampling(outputList);
+	}
+	
 }
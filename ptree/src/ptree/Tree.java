@@ -10,7 +10,8 @@ import mst.prim.SEdge;
 
 import common.Configuration;
 import dmatrix.Matrix;
-import fitchcost.SankoffAlg;
+import fitchcost.BitFitchAlg;
+import fitchcost.BitFitchCache;
 import fitchcost.SankoffAlgVertex;
 
 
@@ -62,6 +63,19 @@ public class Tree {
 	 * */
 	public Tree(List<Vertex> allVertices, Configuration config, List<Vertex> modifiedNonTreeVertices, 
 			Sampling sampling, Matrix distanceMatrix, GapHandler gapHandler){
+		this(allVertices, config, modifiedNonTreeVertices, sampling, distanceMatrix, gapHandler, null);
+	}
+	
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sampling a sampling or null
+	 * @param distanceMatrix
+	 * @param fitchCache a cache of the subtrees of the previously computed trees (fitch cost) or null
+	 * */
+	public Tree(List<Vertex> allVertices, Configuration config, List<Vertex> modifiedNonTreeVertices, 
+			Sampling sampling, Matrix distanceMatrix, GapHandler gapHandler, BitFitchCache fitchCache){
 		
 		log = LogFactory.getLog(Tree.class);
 		
@@ -73,16 +87,21 @@ public class Tree {
 		this.countGapAsChange = config.getCountGapAsChange();
 		this.gapChar = config.getGapChar();
 		this.mutationManager = new MutationManager(config, false);
+		if (distanceMatrix != null){
+			this.mutationManager.setSiteWeights(distanceMatrix.getSiteWeights());
+		}
 		
 		switch (config.getTreeComparisonMethod()){
 		case Configuration.TREE_COMPARISON_CURRENT_COST: {
-			this.cost = getCost(allVertices,config);
+			this.cost = getCost(allVertices, config, mutationManager.getSiteWeights());
 			//this.treeCost = this.cost;//test
 		} break;
 		case Configuration.TREE_COMPARISON_CURRENT_FITCH_COST: {
 			byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
-			SankoffAlg sankoffAlg = new SankoffAlg(null, ignoreChar, new SankoffAlgUnmaskedDna(allVertices.get(0)));
-			this.cost = sankoffAlg.getCost();
+			BitFitchAlg fitchAlg = new BitFitchAlg(null, ignoreChar, new SankoffAlgUnmaskedDna(allVertices.get(0)));
+			fitchAlg.setSiteWeights(mutationManager.getSiteWeights());
+			fitchAlg.setCache(fitchCache);
+			this.cost = fitchAlg.getCost();
 			//this.partialFitchCost = sankoffAlg.getCost();//test
 		} break;
 		case Configuration.TREE_COMPARISON_CURRENT_FITCH_COST_ORIGINALS_LEAFS: {
@@ -90,8 +109,10 @@ public class Tree {
 			List<Vertex> addedVertices = PTreeMethods.moveOriginalsToLeaves(allVertices, false);
 			/* compute fitch cost */
 			byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
-			SankoffAlg sankoffAlg = new SankoffAlg(null, ignoreChar, new SankoffAlgUnmaskedDna(allVertices.get(0)));
-			this.cost = sankoffAlg.getCost();
+			BitFitchAlg fitchAlg = new BitFitchAlg(null, ignoreChar, new SankoffAlgUnmaskedDna(allVertices.get(0)));
+			fitchAlg.setSiteWeights(mutationManager.getSiteWeights());
+			fitchAlg.setCache(fitchCache);
+			this.cost = fitchAlg.getCost();
 			//this.realFitchCost = sankoffAlg.getCost();//test
 			/* delete originals that were moved to leafs */
 			Vertex parent;
@@ -103,7 +124,7 @@ public class Tree {
 		} break;
 		default:
 			log.error("Wrong configuration for the tree comparison, default (0) used.");
-			this.cost = getCost(allVertices,config);
+			this.cost = getCost(allVertices, config, mutationManager.getSiteWeights());
 		}
 		
 		this.originalVertices = new ArrayList<Vertex>();
@@ -235,7 +256,7 @@ public class Tree {
 		for (int index : positions){
 			
 			if (mutationManager.countAsChange(dna0[index], dna1[index])){
-				distance++;
+				distance = MutationManager.toDistance(distance + mutationManager.getSiteWeight(index));
 			}
 			
 			/*if (dna0[index] != dna1[index]){
@@ -281,13 +302,16 @@ public class Tree {
 	
 	/**
 	 * Computes a cost of a tree that is given as a list of vertices.
+	 * 
+	 * @param siteWeights weights of the sites or null (each site has weight 1)
 	 * */
-	private static int getCost(List<Vertex> vertices, Configuration config){
+	private static int getCost(List<Vertex> vertices, Configuration config, int[] siteWeights){
 		
 		/* collect edges */
 		List<SEdge> edges = new ArrayList<SEdge>(vertices.size()-1);
-		Tree.collectEdges(edges, vertices.get(0));
+		Tree.collectEdges(edges, vertices.get(0), siteWeights);
 		MutationManager mc = new MutationManager(config,false);
+		mc.setSiteWeights(siteWeights);
 		
 		/* compute cost */
 		int tcost = 0;
@@ -317,21 +341,38 @@ public class Tree {
 	 * Helper method that collects all edges in a tree.
 	 * */
 	public static void collectEdges(List<SEdge> edges, Vertex root){
+		collectEdges(edges, root, null);
+	}
+	
+	
+	/** 
+	 * Helper method that collects all edges in a tree, the weight of an edge is the weighted number of its mutations.
+	 * 
+	 * @param siteWeights weights of the sites or null (each site has weight 1)
+	 * */
+	public static void collectEdges(List<SEdge> edges, Vertex root, int[] siteWeights){
 		
 		List<Vertex> outcomingEdges = root.getOutcomingEdges();
 		Mutations mutations = null;
-		short weight = 0;
+		int weight = 0;
 		
 		for (Vertex child : outcomingEdges){
 			
 			mutations = child.getMutations();
-			if ((mutations != null) && (mutations.getMutations() != null)){
-				weight = (short)mutations.getMutations().size();
+			if (mutations != null){
+				if (siteWeights == null){
+					weight = mutations.getMutationCount();
+				} else {
+					weight = 0;
+					for (int i=0; i<mutations.getMutationCount(); i++){
+						weight += siteWeights[mutations.getPosition(i)-1];
+					}
+				}
 			} else {
 				weight = 0;
 			}
-			edges.add(new SEdge(root, child, weight));
-			collectEdges(edges, child);
+			edges.add(new SEdge(root, child, MutationManager.toDistance(weight)));
+			collectEdges(edges, child, siteWeights);
 		}
 	}
 	
@@ -3,6 +3,7 @@ package ptree;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.io.UnsupportedEncodingException;
 
@@ -19,8 +20,22 @@ public class Vertex implements SankoffAlgVertex {
 
 	private Log log; 
 	
-	/* used to determine unique id */
-	private static int idCount = 0;
+	/* unique ids are allocated to the threads in blocks, a thread generates the ids of its block without synchronization */
+	private static final int ID_BLOCK_SIZE = 1 << 12;
+	
+	/* the number of blocks in the range of non-negative integers */
+	private static final int ID_BLOCK_COUNT = Integer.MAX_VALUE / ID_BLOCK_SIZE;
+	
+	/* the next block that will be allocated */
+	private static final AtomicInteger idBlockNext = new AtomicInteger(0);
+	
+	/* the block of the current thread: the next id, the end of the block (exclusive) */
+	private static final ThreadLocal<int[]> idBlock = new ThreadLocal<int[]>(){
+		@Override
+		protected int[] initialValue(){
+			return new int[2];
+		}
+	};
 	
 	/* status of the vertex */
 	protected static final byte STATUS_ZERO = 0;
@@ -69,6 +84,17 @@ public class Vertex implements SankoffAlgVertex {
 	 * @param dna DNA read from the input file
 	 * */
 	public Vertex(String name, String dna){
+		this(name, toBytes(dna));
+	}
+	
+	
+	/**
+	 * Constructor for original vertices.
+	 * 
+	 * @param name name of the vertex
+	 * @param dna DNA read from the input file (the array is not copied)
+	 * */
+	public Vertex(String name, byte[] dna){
 		
 		log = LogFactory.getLog(Vertex.class);
 		
@@ -80,12 +106,19 @@ public class Vertex implements SankoffAlgVertex {
 		
 		outcomingE = new ArrayList<Vertex>();
 		
+		this.dna = new Dna(dna);
+	}
+	
+	
+	/**
+	 * Get the bytes of a DNA read from the input file.
+	 * */
+	private static byte[] toBytes(String dna){
 		try {
-			this.dna = new Dna(dna.getBytes("UTF-8"));	
-			
+			return dna.getBytes("UTF-8");
 		} catch (UnsupportedEncodingException ex){
-			this.dna = new Dna(new byte[0]);
-			log.error("Exception: ",ex);
+			LogFactory.getLog(Vertex.class).error("Exception: ",ex);
+			return new byte[0];
 		}
 	}
 	
@@ -182,14 +215,23 @@ public class Vertex implements SankoffAlgVertex {
 	
 	/**
 	 * Generate a new vertex id for a new vertex, 
-	 * whenever a new instance of a vertex is created, the counter is increased.
-	 * If the max integer is reached, sets the counter to zero. 
+	 * whenever a new instance of a vertex is created, the counter of the current thread is increased.
+	 * If the block of the thread is used up, the thread gets the next free block.
+	 * If the last block is reached, the blocks are allocated from zero again. 
 	 * */
-	private static synchronized int generateUniqueId(){
-		if (idCount == Integer.MAX_VALUE){
-			idCount = 0;
+	private static int generateUniqueId(){
+		int block[] = idBlock.get();
+		if (block[0] == block[1]){
+			int blockIndex;
+			int nextBlockIndex;
+			do {
+				blockIndex = idBlockNext.get();
+				nextBlockIndex = (blockIndex + 1 == ID_BLOCK_COUNT)?0:(blockIndex + 1);
+			} while (!idBlockNext.compareAndSet(blockIndex, nextBlockIndex));
+			block[0] = blockIndex * ID_BLOCK_SIZE;
+			block[1] = block[0] + ID_BLOCK_SIZE;
 		}
-		return idCount++;
+		return block[0]++;
 	}
 	
 	
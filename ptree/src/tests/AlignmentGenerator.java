@@ -0,0 +1,112 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ptree.Vertex;
+
+
+/**
+ * Generates synthetic alignments for the benchmarks.
+ *
+ * The first sequence is random, each next sequence is derived from a randomly chosen previous sequence,
+ * i.e. the sequences evolve along a random tree.
+ * */
+public class AlignmentGenerator {
+
+	private static final byte BASES[] = {'A','C','G','T'};
+
+	/* the number of sequences */
+	private final int size;
+
+	/* the length of the sequences */
+	private final int length;
+
+	/* probability that a position is substituted when a sequence is derived from its parent */
+	private final double divergence;
+
+	/* probability that a position of a derived sequence is a gap */
+	private final double gapRate;
+
+	private final byte gapChar;
+
+	private final Random random;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param size the number of sequences
+	 * @param length the length of the sequences
+	 * @param divergence probability that a position is substituted when a sequence is derived from its parent
+	 * @param gapRate probability that a position of a derived sequence is a gap
+	 * @param gapChar the gap character
+	 * @param seed the seed of the random generator (the same seed ~ the same alignment)
+	 * */
+	public AlignmentGenerator(int size, int length, double divergence, double gapRate, byte gapChar, long seed){
+		this.size = size;
+		this.length = length;
+		this.divergence = divergence;
+		this.gapRate = gapRate;
+		this.gapChar = gapChar;
+		this.random = new Random(seed);
+	}
+
+
+	/**
+	 * Generate the sequences of the alignment.
+	 * */
+	public List<byte[]> generateSequences(){
+
+		List<byte[]> sequences = new ArrayList<byte[]>(size);
+
+		if (size == 0){
+			return sequences;
+		}
+
+		byte root[] = new byte[length];
+		for (int i=0; i<length; i++){
+			root[i] = BASES[random.nextInt(BASES.length)];
+		}
+		sequences.add(root);
+
+		byte parent[];
+		byte seq[];
+
+		for (int s=1; s<size; s++){
+
+			parent = sequences.get(random.nextInt(s));
+			seq = parent.clone();
+
+			for (int i=0; i<length; i++){
+				if (random.nextDouble() < divergence){
+					seq[i] = BASES[random.nextInt(BASES.length)];
+				}
+				if (random.nextDouble() < gapRate){
+					seq[i] = gapChar;
+				}
+			}
+			sequences.add(seq);
+		}
+
+		return sequences;
+	}
+
+
+	/**
+	 * Generate original vertices that contain the sequences of the alignment.
+	 * */
+	public List<Vertex> generateVertices(){
+
+		List<byte[]> sequences = generateSequences();
+		List<Vertex> vertices = new ArrayList<Vertex>(sequences.size());
+
+		for (int i=0; i<sequences.size(); i++){
+			vertices.add(new Vertex("Seq" + i, new String(sequences.get(i))));
+		}
+
+		return vertices;
+	}
+
+}
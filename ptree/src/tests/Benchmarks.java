@@ -0,0 +1,460 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mst.prim.MemoryManager;
+
+import common.Configuration;
+
+import dmatrix.FloatTriangularStorage;
+import dmatrix.Matrix;
+import fitchcost.BitFitchAlg;
+import fitchcost.BitFitchCache;
+import fitchcost.FitchAlg;
+import fitchcost.SankoffAlg;
+
+import nj.NJAlgorithm;
+import nj.RapidNJAlgorithm;
+
+import ptree.DNAPreprocessor;
+import ptree.Intermediates;
+import ptree.MutationManager;
+import ptree.Mutations;
+import ptree.PTreeMethods;
+import ptree.Vertex;
+
+
+/**
+ * Micro-benchmarks of the hot paths of the program on synthetic alignments.
+ *
+ * Each benchmark is run several times without measuring (warm-up of the JIT compiler),
+ * then it is run several times and the time of each run is measured.
+ * The state of a benchmark is prepared before each run and the preparation is not measured.
+ * The results of the runs are consumed, so the JIT compiler cannot eliminate the measured code.
+ *
+ * Usage: Benchmarks [size] [length] [divergence] [gapRate] [iterations] [benchmark name filter]
+ * */
+public class Benchmarks {
+
+	/* default parameters of the synthetic alignment */
+	private static final int DEFAULT_SIZE = 500;
+	private static final int DEFAULT_LENGTH = 1000;
+	private static final double DEFAULT_DIVERGENCE = 0.01;
+	private static final double DEFAULT_GAP_RATE = 0.001;
+
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	private static final long SEED = 763447;
+
+	/* the results of the runs are added here */
+	private static long sink = 0;
+
+
+	/**
+	 * One benchmark.
+	 * */
+	private static abstract class Benchmark {
+
+		private final String name;
+
+		protected Benchmark(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Prepare the state for the next run (not measured).
+		 * */
+		protected void setUp(){
+		}
+
+		/**
+		 * The measured code.
+		 *
+		 * @return a value that depends on the result of the run
+		 * */
+		protected abstract long run();
+	}
+
+
+	public static void main(String[] args) {
+
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+		int length = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_LENGTH;
+		double divergence = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_DIVERGENCE;
+		double gapRate = (args.length > 3) ? Double.parseDouble(args[3]) : DEFAULT_GAP_RATE;
+		int iterations = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_ITERATIONS;
+		String filter = (args.length > 5) ? args[5] : null;
+
+		Configuration config = new Configuration();
+
+		System.out.println("alignment: size " + size + " length " + length + " divergence " + divergence
+				+ " gap rate " + gapRate + " | iterations: " + iterations);
+
+		for (Benchmark benchmark : createBenchmarks(config, size, length, divergence, gapRate)){
+			if ((filter == null) || (benchmark.name.contains(filter))){
+				runBenchmark(benchmark, iterations);
+			}
+		}
+
+		System.out.println("(" + sink + ")");
+	}
+
+
+	/**
+	 * Run the warm-up and the measured runs of a benchmark and print the average, minimum and maximum time of a run.
+	 * */
+	private static void runBenchmark(Benchmark benchmark, int iterations){
+
+		for (int i=0; i<iterations; i++){
+			benchmark.setUp();
+			sink += benchmark.run();
+		}
+
+		long total = 0;
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		long time;
+
+		for (int i=0; i<iterations; i++){
+			benchmark.setUp();
+			time = System.nanoTime();
+			sink += benchmark.run();
+			time = System.nanoTime() - time;
+			total += time;
+			min = Math.min(min, time);
+			max = Math.max(max, time);
+		}
+
+		System.out.println(benchmark.name + ": avg " + toMillis(total/Math.max(1, iterations)) + "ms min "
+				+ toMillis(min) + "ms max " + toMillis(max) + "ms");
+	}
+
+
+	private static String toMillis(long nanos){
+		return String.format("%.3f", nanos/1000000.0);
+	}
+
+
+	/**
+	 * Create all benchmarks, all of them use the same synthetic alignment.
+	 * */
+	private static List<Benchmark> createBenchmarks(final Configuration config, int size, int length,
+			double divergence, double gapRate){
+
+		final List<Vertex> vertices = new AlignmentGenerator(size, length, divergence, gapRate,
+				config.getGapChar(), SEED).generateVertices();
+
+		/* vertices that are added to the distance matrix (as inferred intermediates) */
+		final List<Vertex> added = new ArrayList<Vertex>();
+		for (Vertex vertex : new AlignmentGenerator(Math.max(1, size/10), length, divergence, gapRate,
+				config.getGapChar(), SEED + 1).generateVertices()){
+			added.add(new Vertex(0, vertex.getDna()));
+		}
+
+		/* the Fitch algorithm accepts only the bases, therefore its alignment doesn`t contain gaps */
+		final List<byte[]> sequences = new AlignmentGenerator(size, length, divergence, 0.0,
+				config.getGapChar(), SEED).generateSequences();
+		final List<String> labels = new ArrayList<String>(sequences.size());
+		for (int i=0; i<sequences.size(); i++){
+			labels.add("Seq" + i);
+		}
+
+		final MutationManager mm = new MutationManager(config, true);
+		final MemoryManager mem = new MemoryManager();
+
+		final Matrix matrix = new Matrix(vertices, new DNAPreprocessor(0), config);
+		matrix.computeDistanceMatrix(null, null, null);
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new Benchmark("MutationManager.getMutationsCount"){
+			@Override
+			protected long run(){
+				MutationManager mutationManager = new MutationManager(config, false);
+				long sum = 0;
+				for (int i=1; i<vertices.size(); i++){
+					sum += mutationManager.getMutationsCount(vertices.get(i-1).getDna(), vertices.get(i).getDna());
+				}
+				return sum;
+			}
+		});
+
+		benchmarks.add(new Benchmark("Matrix.computeDistanceMatrix"){
+			@Override
+			protected long run(){
+				Matrix m = new Matrix(vertices, new DNAPreprocessor(0), config);
+				m.computeDistanceMatrix(null, null, null);
+				return m.getSize();
+			}
+		});
+
+		benchmarks.add(new Benchmark("Matrix.updateDistanceMatrix"){
+			private List<Vertex> list;
+			private Matrix m;
+			@Override
+			protected void setUp(){
+				list = new ArrayList<Vertex>(vertices);
+				m = new Matrix(list, new DNAPreprocessor(0), config);
+				m.computeDistanceMatrix(null, null, null);
+				list.addAll(added);
+			}
+			@Override
+			protected long run(){
+				m.updateDistanceMatrix();
+				return m.getSize();
+			}
+		});
+
+		benchmarks.add(new Benchmark("Matrix.restoreDistanceMatrix"){
+			private List<Vertex> list;
+			private Matrix m;
+			@Override
+			protected void setUp(){
+				list = new ArrayList<Vertex>(vertices);
+				list.addAll(added);
+				m = new Matrix(list, new DNAPreprocessor(0), config);
+				m.computeDistanceMatrix(null, null, null);
+				/* remove every other added vertex */
+				for (int i=list.size()-1; i>=vertices.size(); i-=2){
+					list.remove(i);
+				}
+			}
+			@Override
+			protected long run(){
+				m.restoreDistanceMatrix();
+				return m.getSize();
+			}
+		});
+
+		benchmarks.add(new Benchmark("MSTPrim.computeMSTJarnik"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+			}
+			@Override
+			protected long run(){
+				mst.prim.MSTPrim.computeMSTJarnik(vertices, matrix, mm, mem);
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("PrimCompleteGraph.computeMST"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+			}
+			@Override
+			protected long run(){
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("PrimCompleteGraph.computeMST (buckets)"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+			}
+			@Override
+			protected long run(){
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm, 1, config.getMstBucketMaxDistance());
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		final int mstThreadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+		benchmarks.add(new Benchmark("PrimCompleteGraph.computeMST (" + mstThreadCount + " threads)"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+			}
+			@Override
+			protected long run(){
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm, mstThreadCount);
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("MSTPrim.insertIntoMST (2% vertices added)"){
+			private int oldVertexCount;
+			@Override
+			protected void setUp(){
+				/* the MST of the first vertices (their indices in the distance matrix are the same) */
+				oldVertexCount = vertices.size() - Math.max(1, vertices.size()/50);
+				PTreeMethods.deforestation(vertices);
+				mst.prim.MSTPrim.computeMSTJarnik(vertices.subList(0, oldVertexCount), matrix, mm, mem);
+			}
+			@Override
+			protected long run(){
+				mst.prim.MSTPrim.insertIntoMST(vertices, oldVertexCount, matrix, mm, mem);
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BoruvkaMST.computeMST"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+			}
+			@Override
+			protected long run(){
+				mst.boruvka.BoruvkaMST.computeMST(vertices, matrix, mm);
+				return vertices.get(0).getOutcomingEdges().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("NJAlgorithm.computeNJMatrix"){
+			private float dmatrix[][];
+			@Override
+			protected void setUp(){
+				dmatrix = new float[vertices.size()][];
+				for (int i=0; i<vertices.size(); i++){
+					dmatrix[i] = new float[i];
+					for (int j=0; j<i; j++){
+						dmatrix[i][j] = matrix.getDistance(i, j);
+					}
+				}
+			}
+			@Override
+			protected long run(){
+				FloatTriangularStorage njMatrix = FloatTriangularStorage.create(vertices.size(), false, null);
+				new NJAlgorithm().computeNJMatrix(dmatrix, njMatrix);
+				return (long)njMatrix.get(vertices.size() - 1, 0);
+			}
+		});
+
+		for (final boolean relaxed : new boolean[]{false, true}){
+			benchmarks.add(new Benchmark("RapidNJAlgorithm.computeNJMatrix" + (relaxed ? " (relaxed)" : "")){
+				private float dmatrix[][];
+				@Override
+				protected void setUp(){
+					dmatrix = new float[vertices.size()][];
+					for (int i=0; i<vertices.size(); i++){
+						dmatrix[i] = new float[i];
+						for (int j=0; j<i; j++){
+							dmatrix[i][j] = matrix.getDistance(i, j);
+						}
+					}
+				}
+				@Override
+				protected long run(){
+					FloatTriangularStorage njMatrix = FloatTriangularStorage.create(vertices.size(), false, null);
+					new RapidNJAlgorithm(relaxed).computeNJMatrix(dmatrix, njMatrix);
+					return (long)njMatrix.get(vertices.size() - 1, 0);
+				}
+			});
+		}
+
+		benchmarks.add(new Benchmark("Mutations (edges, inverse, intersections)"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+			}
+			@Override
+			protected long run(){
+				long sum = 0;
+				Vertex vertex;
+				Vertex parent;
+				Mutations inverse;
+				Mutations intersection;
+				for (int i=0; i<vertices.size(); i++){
+					vertex = vertices.get(i);
+					parent = vertex.getIncomingEdge();
+					if (parent == null){
+						continue;
+					}
+					/* the mutations of the edge and the intersections with the edges of the siblings and the parent */
+					vertex.setMutations(new Mutations(parent.getDna(), vertex.getDna(), config.getGapChar(), 
+							config.getCountGapAsChange()));
+					inverse = (parent.getMutations() != null)?(Mutations.getInverseMutations(parent.getMutations())):(null);
+					for (Vertex sibling : parent.getOutcomingEdges()){
+						if ((sibling != vertex) && (sibling.getMutations() != null)){
+							intersection = Mutations.getIntersection(vertex.getMutations(), sibling.getMutations());
+							sum += (intersection != null)?(intersection.getMutationCount()):(0);
+						}
+					}
+					if (inverse != null){
+						intersection = Mutations.getIntersection(vertex.getMutations(), inverse);
+						sum += (intersection != null)?(intersection.getMutationCount()):(0);
+					}
+				}
+				return sum;
+			}
+		});
+
+		benchmarks.add(new Benchmark("Intermediates.getIntermediatesFromRepeatedMutations"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+			}
+			@Override
+			protected long run(){
+				Intermediates intermediates = Intermediates.createIntermediates(config, mem);
+				return intermediates.getIntermediatesFromRepeatedMutations(vertices.get(0), vertices.size()).size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("SankoffAlg.getCost"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+			}
+			@Override
+			protected long run(){
+				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
+				SankoffAlg sankoffAlg = new SankoffAlg(null, ignoreChar, vertices.get(0));
+				sankoffAlg.computeCosts();
+				return sankoffAlg.getCost();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BitFitchAlg.getCost"){
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+			}
+			@Override
+			protected long run(){
+				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
+				return new BitFitchAlg(null, ignoreChar, vertices.get(0)).getCost();
+			}
+		});
+
+		benchmarks.add(new Benchmark("BitFitchAlg.getCost (cached subtrees)"){
+			private BitFitchCache cache;
+			@Override
+			protected void setUp(){
+				PTreeMethods.deforestation(vertices);
+				mst.primcompletegraph.PrimCompleteGraph.computeMST(vertices, matrix, mm);
+				/* the tree was already scored, the cache contains all its subtrees */
+				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
+				cache = new BitFitchCache(vertices.size());
+				BitFitchAlg fitchAlg = new BitFitchAlg(null, ignoreChar, vertices.get(0));
+				fitchAlg.setCache(cache);
+				fitchAlg.getCost();
+			}
+			@Override
+			protected long run(){
+				byte ignoreChar = (!config.getCountGapAsChange())?(config.getGapChar()):(config.getMaskChar());
+				BitFitchAlg fitchAlg = new BitFitchAlg(null, ignoreChar, vertices.get(0));
+				fitchAlg.setCache(cache);
+				return fitchAlg.getCost();
+			}
+		});
+
+		benchmarks.add(new Benchmark("FitchAlg.runFitchAlgorithm"){
+			@Override
+			protected long run(){
+				return new FitchAlg((byte)'A', (byte)'C', (byte)'G', (byte)'T').runFitchAlgorithm(labels, sequences, false);
+			}
+		});
+
+		return benchmarks;
+	}
+
+}
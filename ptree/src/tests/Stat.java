@@ -2,67 +2,163 @@ package tests;
 
 import common.TimeStamp;
 
+/**
+ * Run time statistics of one run (e.g. one dataset).
+ *
+ * The static methods update the statistics of the run of the current thread.
+ * A run is started via {@link #startRun()}, the threads that are started within a run inherit its statistics.
+ * */
 public class Stat {
 
+	/* the statistics of the run of the current thread */
+	private static final InheritableThreadLocal<Stat> currentRun = new InheritableThreadLocal<Stat>(){
+		@Override
+		protected Stat initialValue(){
+			return new Stat();
+		}
+	};
+	
 	/* distance matrix*/
 	
-	private static long computeDM = 0;
+	private long computeDM = 0;
 	
-	private static long updateDM = 0;
+	private long updateDM = 0;
 	
-	private static long restoreDM = 0;
+	private long restoreDM = 0;
 	
 	/* NJ algorithm */
 	
-	private static long algNJ = 0;
+	private long algNJ = 0;
 	
 	/* MST algorithm */
-	private static long algMST = 0;
+	private long algMST = 0;
+	
+	private long mstStandard = 0;
 	
-	private static long mstStandard = 0;
+	private long mstMSTRepair = 0;
 	
-	private static long mstMSTRepair = 0;
+	private long mstMSTInsert = 0;
 	
 	/* other */
-	private static long totalIterCount = 0;
+	private long totalIterCount = 0;
+	
+	
+	/**
+	 * Start a new run in the current thread, the statistics of the previous run of this thread are discarded.
+	 * */
+	public static void startRun(){
+		currentRun.set(new Stat());
+	}
+	
+	
+	/**
+	 * Get the run of the current thread (see {@link #joinRun(Stat)}).
+	 * */
+	public static Stat getRun(){
+		return currentRun.get();
+	}
+	
+	
+	/**
+	 * The current thread (e.g. a thread of a pool) works for the given run.
+	 * */
+	public static void joinRun(Stat run){
+		currentRun.set(run);
+	}
+	
+	
+	/**
+	 * End the run of the current thread.
+	 * */
+	public static void endRun(){
+		currentRun.remove();
+	}
+	
+	
+	private static long getTimeMillis(TimeStamp time){
+		return System.currentTimeMillis() - time.getTimeStampMillis();
+	}
+	
 	
 	public static void computeDMFinished(TimeStamp time){
-		computeDM += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.computeDM += getTimeMillis(time);
+		}
 	}
 	
 	
 	public static void updateDMFinished(TimeStamp time){
-		updateDM += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.updateDM += getTimeMillis(time);
+		}
 	}
 	
 	
 	public static void restoreDMFinished(TimeStamp time){
-		restoreDM += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.restoreDM += getTimeMillis(time);
+		}
 	}
 	
 	public static void computeNJFinished(TimeStamp time){
-		algNJ += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.algNJ += getTimeMillis(time);
+		}
 	}
 	
 	public static void computeMSTFinished(TimeStamp time){
-		algMST += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.algMST += getTimeMillis(time);
+		}
 	}
 	
 	public static void computeMSTStandardFinished(TimeStamp time){
-		mstStandard += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.mstStandard += getTimeMillis(time);
+		}
 	}
 	
 	public static void computeMSTRepairFinished(TimeStamp time){
-		mstMSTRepair += System.currentTimeMillis() - time.getTimeStampMillis();
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.mstMSTRepair += getTimeMillis(time);
+		}
+	}
+	
+	public static void computeMSTInsertFinished(TimeStamp time){
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.mstMSTInsert += getTimeMillis(time);
+		}
 	}
 	
 	public static void enterNextIteration(){
-		totalIterCount++;
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			stat.totalIterCount++;
+		}
 	}
 	
 	
+	/**
+	 * Get the statistics of the run of the current thread.
+	 * */
 	public static String statToString(TimeStamp programStartTimeStamp){
-		
+		Stat stat = currentRun.get();
+		synchronized (stat){
+			return stat.toString(programStartTimeStamp);
+		}
+	}
+	
+	
+	private String toString(TimeStamp programStartTimeStamp){
+	
 		double dmSum =  computeDM + updateDM + restoreDM;
 		double totalRuntime = System.currentTimeMillis() - programStartTimeStamp.getTimeStampMillis();
 		
@@ -75,19 +171,20 @@ public class Stat {
 		double njFromTotalRuntime = (((double)algNJ)/totalRuntime)*100.0;
 		
 		double mstFromTotalRuntime = (((double)algMST)/totalRuntime)*100.0;
-
-		double mstTimeTotal = mstStandard + mstMSTRepair;
+		
+		double mstTimeTotal = mstStandard + mstMSTRepair + mstMSTInsert;
 		double mstTimeStandardPart = (((double)mstStandard)/mstTimeTotal)*100.0;
 		double mstTimeRepairPart = (((double)mstMSTRepair)/mstTimeTotal)*100.0;
+		double mstTimeInsertPart = (((double)mstMSTInsert)/mstTimeTotal)*100.0;
 		
 		double otherAlg = 100.0 - dmFromTotalRuntime - njFromTotalRuntime - mstFromTotalRuntime;
 		
-		return "Stat: \n" + 
-		       "ComputeDM: " + dmFromTotalRuntime + "% (compute: " + computeDMPercentage + "% update: " 
+		return "Stat: \n" +
+		       "ComputeDM: " + dmFromTotalRuntime + "% (compute: " + computeDMPercentage + "% update: "
 		                     + updateDMPercentage + "% restore: " + restoreDMPercentage + ")\n" +
 		       "ComputeNJ: " + njFromTotalRuntime + "%\n" +
 			   "ComputeMST: " + mstFromTotalRuntime + "% (standard: " + mstTimeStandardPart + "% " +
-			   		"repair: " + mstTimeRepairPart + "%)\n" +
+			   		"repair: " + mstTimeRepairPart + "% insert: " + mstTimeInsertPart + "%)\n" +
 			   "Other alg: " + otherAlg + "%" + "\n total iter: " + totalIterCount;
 	}
 	